@@ -0,0 +1,151 @@
+package com.misternerd.djiax.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.misternerd.djiax.util.ByteBuffer;
+
+/**
+ * The get and put primitives of the ByteBuffer the information elements are
+ * parsed and built with. The positional variants work on a buffer kept for
+ * the whole run, the sequential ones wrap a fresh buffer per operation, as the
+ * information elements do.
+ *
+ * Run it with the GC profiler, either through main() or with "-prof gc".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ByteBufferBenchmark
+{
+
+	private ByteBuffer buffer;
+
+	/**
+	 * An information element: type, length and 16 bytes of data.
+	 */
+	private byte[] informationElement;
+
+	private int value;
+
+
+	@Setup
+	public void setUp()
+	{
+		buffer = new ByteBuffer(64);
+		informationElement = new byte[18];
+		informationElement[0] = 0x12;
+		informationElement[1] = 16;
+		value = 0x12345678;
+
+		for (int i = 2; i < informationElement.length; i++)
+		{
+			informationElement[i] = (byte) i;
+		}
+	}
+
+
+	@Benchmark
+	public short get8bits()
+	{
+		return buffer.get8bits(5);
+	}
+
+
+	@Benchmark
+	public int get16bits()
+	{
+		return buffer.get16bits(6);
+	}
+
+
+	@Benchmark
+	public long get32bits()
+	{
+		return buffer.get32bits(8);
+	}
+
+
+	@Benchmark
+	public ByteBuffer put8bits()
+	{
+		buffer.put8bits((short) (value & 0xFF), 5);
+		return buffer;
+	}
+
+
+	@Benchmark
+	public ByteBuffer put16bits()
+	{
+		buffer.put16bits(value & 0xFFFF, 6);
+		return buffer;
+	}
+
+
+	@Benchmark
+	public ByteBuffer put32bits()
+	{
+		buffer.put32bits(value, 8);
+		return buffer;
+	}
+
+
+	/**
+	 * Reads type, length and data of an information element.
+	 */
+	@Benchmark
+	public byte[] readInformationElement()
+	{
+		ByteBuffer elementBuffer = new ByteBuffer(informationElement);
+		elementBuffer.get8bits();
+		elementBuffer.get8bits();
+
+		return elementBuffer.getByteArray();
+	}
+
+
+	/**
+	 * Builds the data of an information element the size of an ApparentAddr.
+	 */
+	@Benchmark
+	public byte[] writeInformationElement()
+	{
+		ByteBuffer elementBuffer = new ByteBuffer(18);
+		elementBuffer.put16bits(0x0200);
+		elementBuffer.put16bits(4569);
+		elementBuffer.put32bits(value);
+
+		for (int i = 0; i < 10; i++)
+		{
+			elementBuffer.put8bits((short) 0);
+		}
+
+		return elementBuffer.getBuffer();
+	}
+
+
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder()
+				.include(ByteBufferBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+
+}
@@ -0,0 +1,126 @@
+package com.misternerd.djiax.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.misternerd.djiax.Call;
+import com.misternerd.djiax.CallExecutionMode;
+import com.misternerd.djiax.IaxPeer;
+import com.misternerd.djiax.IaxPeerFactory;
+import com.misternerd.djiax.call.AudioListener;
+import com.misternerd.djiax.io.frame.MiniFrame;
+import com.misternerd.djiax.util.MediaFormat;
+
+/**
+ * Compares the call execution modes: every invocation hands one MiniFrame to
+ * each call, just like the receiver does, and waits until all of them reached
+ * the calls' audio listeners. The score is rounds per second, multiply by
+ * numberOfCalls for frames per second.
+ * 
+ * VIRTUAL_THREAD needs the benchmarks to run on Java 21, the peer sends to a
+ * port nobody listens on, no server is required.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CallExecutionModeBenchmark
+{
+
+	@Param({ "THREAD_PER_CALL", "EVENT_LOOP", "VIRTUAL_THREAD" })
+	public CallExecutionMode mode;
+
+	@Param({ "100", "1000" })
+	public int numberOfCalls;
+
+	private IaxPeer peer;
+
+	private Call[] calls;
+
+	private MiniFrame[] frames;
+
+	private final AtomicLong framesDelivered = new AtomicLong();
+
+	private long framesExpected;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		IaxPeerFactory.setMaxNumberOfCallsPerPeer(numberOfCalls);
+		IaxPeerFactory.setCallExecutionMode(mode);
+
+		peer = IaxPeerFactory.createNewPeer("127.0.0.1", 4569, "benchmark", "benchmark", new NoopPeerObserver());
+		calls = new Call[numberOfCalls];
+		frames = new MiniFrame[numberOfCalls];
+
+		AudioListener countingListener = new AudioListener()
+		{
+			@Override
+			public void callListenerSetAudioRunning(boolean running)
+			{
+			}
+
+			@Override
+			public void callListenerReceivedAudioData(byte[] data, MediaFormat codec)
+			{
+				framesDelivered.incrementAndGet();
+			}
+		};
+
+		for (int i = 0; i < numberOfCalls; i++)
+		{
+			calls[i] = peer.createCall("benchmark", new MediaFormat[] { MediaFormat.LE_16_BIT_LINEAR });
+			calls[i].setAudioListener(countingListener);
+			calls[i].callStart();
+			frames[i] = new MiniFrame(calls[i].getSourceCallNumber(), 0, new byte[320]);
+		}
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		System.out.println();
+		System.out.println("Live platform threads: " + Thread.activeCount());
+
+		peer.stopClient();
+	}
+
+
+	@Benchmark
+	public void deliverOneFramePerCall(Blackhole blackhole)
+	{
+		framesExpected += numberOfCalls;
+
+		for (int i = 0; i < numberOfCalls; i++)
+		{
+			calls[i].receiveFrame(frames[i]);
+		}
+
+		while (framesDelivered.get() < framesExpected)
+		{
+			Thread.yield();
+		}
+
+		blackhole.consume(framesDelivered.get());
+	}
+
+}
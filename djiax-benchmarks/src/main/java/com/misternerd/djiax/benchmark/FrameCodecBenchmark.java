@@ -0,0 +1,256 @@
+package com.misternerd.djiax.benchmark;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.misternerd.djiax.io.frame.FullFrame;
+import com.misternerd.djiax.io.frame.InformationElement;
+import com.misternerd.djiax.io.frame.InformationElementFactory;
+import com.misternerd.djiax.io.frame.MiniFrame;
+import com.misternerd.djiax.io.frame.full.IaxFrame;
+import com.misternerd.djiax.io.frame.full.IaxFrameSubclass;
+import com.misternerd.djiax.io.frame.full.VoiceFrame;
+import com.misternerd.djiax.io.frame.ie.ApparentAddr;
+import com.misternerd.djiax.io.frame.ie.Authmethods;
+import com.misternerd.djiax.io.frame.ie.CalledNumber;
+import com.misternerd.djiax.io.frame.ie.CallingName;
+import com.misternerd.djiax.io.frame.ie.CallingNumber;
+import com.misternerd.djiax.io.frame.ie.Capability;
+import com.misternerd.djiax.io.frame.ie.Challenge;
+import com.misternerd.djiax.io.frame.ie.Datetime;
+import com.misternerd.djiax.io.frame.ie.Format;
+import com.misternerd.djiax.io.frame.ie.Refresh;
+import com.misternerd.djiax.io.frame.ie.SamplingRate;
+import com.misternerd.djiax.io.frame.ie.Username;
+import com.misternerd.djiax.io.frame.ie.Version;
+import com.misternerd.djiax.util.MediaFormat;
+
+/**
+ * Parsing and serializing of the frames on the hot paths. The IAX frames are
+ * built the way a server sends them during registration and call setup.
+ *
+ * Allocation matters as much as speed here, so run it with the GC profiler,
+ * either through main() or with "-prof gc":
+ *
+ * java -jar benchmarks.jar FrameCodecBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameCodecBenchmark
+{
+
+	/**
+	 * 20 msecs of G.711 audio.
+	 */
+	private static final int VOICE_PAYLOAD_LENGTH = 160;
+
+	private byte[] voiceFrameBytes;
+
+	private VoiceFrame voiceFrame;
+
+	private byte[] miniFrameBytes;
+
+	private MiniFrame miniFrame;
+
+	private ByteBuffer sendBuffer;
+
+	/**
+	 * Type and serialized form (including type and length) of each element.
+	 */
+	private short[] elementTypes;
+
+	private byte[][] elementBytes;
+
+
+	@Setup
+	public void setUp() throws Exception
+	{
+		byte[] payload = new byte[VOICE_PAYLOAD_LENGTH];
+
+		voiceFrame = new VoiceFrame((short) 1001, false, (short) 2001, 123456, (short) 7, (short) 5, MediaFormat.G711_MULAW, payload);
+		voiceFrameBytes = voiceFrame.serialize();
+		miniFrame = new MiniFrame((short) 1001, 0x1234, payload);
+		miniFrameBytes = miniFrame.serialize();
+		sendBuffer = ByteBuffer.allocateDirect(1500);
+
+		List<InformationElement> elements = new ArrayList<>();
+
+		for (IaxFrameSubclass subclass : new IaxFrameSubclass[] { IaxFrameSubclass.REGACK, IaxFrameSubclass.NEW, IaxFrameSubclass.AUTHREQ })
+		{
+			elements.addAll(createIaxFrame(subclass).getInformationElements().values());
+		}
+
+		elementTypes = new short[elements.size()];
+		elementBytes = new byte[elements.size()][];
+
+		for (int i = 0; i < elements.size(); i++)
+		{
+			elementTypes[i] = elements.get(i).getTypeRaw();
+			elementBytes[i] = elements.get(i).serialize();
+		}
+	}
+
+
+	/**
+	 * The IAX frames with their information elements, serialized.
+	 */
+	@State(Scope.Thread)
+	public static class IaxFrames
+	{
+
+		@Param({ "REGACK", "NEW", "AUTHREQ" })
+		public IaxFrameSubclass subclass;
+
+		private byte[] bytes;
+
+
+		@Setup
+		public void setUp() throws Exception
+		{
+			bytes = createIaxFrame(subclass).serialize();
+		}
+
+	}
+
+
+	static IaxFrame createIaxFrame(IaxFrameSubclass subclass) throws Exception
+	{
+		IaxFrame frame = new IaxFrame((short) 2001, false, (short) 1001, 4711, (short) 3, (short) 2, subclass);
+
+		switch (subclass)
+		{
+			case REGACK:
+			{
+				frame.addInformationElement(new Username("benchmark"));
+				frame.addInformationElement(new Datetime(Calendar.getInstance()));
+				frame.addInformationElement(new ApparentAddr((Inet4Address) InetAddress.getByName("192.168.1.10"), (short) 4569));
+				frame.addInformationElement(new Refresh((short) 60));
+				frame.addInformationElement(new CallingNumber("4930123456"));
+				break;
+			}
+			case NEW:
+			{
+				MediaFormat[] formats = new MediaFormat[] { MediaFormat.G711_MULAW, MediaFormat.G711_ALAW, MediaFormat.LE_16_BIT_LINEAR };
+
+				frame.addInformationElement(new Version((short) 2));
+				frame.addInformationElement(new CallingName("benchmark"));
+				frame.addInformationElement(new Format(formats[0]));
+				frame.addInformationElement(new Capability(formats));
+				frame.addInformationElement(new SamplingRate((short) 8000));
+				frame.addInformationElement(new Username("benchmark"));
+				frame.addInformationElement(new CalledNumber("4930123456"));
+				break;
+			}
+			case AUTHREQ:
+			{
+				frame.addInformationElement(new Authmethods(Authmethods.METHOD_MD5));
+				frame.addInformationElement(new Challenge("214748364"));
+				frame.addInformationElement(new Username("benchmark"));
+				break;
+			}
+			default:
+			{
+				throw new IllegalArgumentException("No information elements defined for " + subclass);
+			}
+		}
+
+		return frame;
+	}
+
+
+	@Benchmark
+	public FullFrame parseFullFrame() throws Exception
+	{
+		return new FullFrame(voiceFrameBytes, voiceFrameBytes.length);
+	}
+
+
+	@Benchmark
+	public IaxFrame parseIaxFrame(IaxFrames iaxFrames) throws Exception
+	{
+		return new IaxFrame(iaxFrames.bytes, iaxFrames.bytes.length);
+	}
+
+
+	/**
+	 * Creates every information element of a REGACK, a NEW and an AUTHREQ
+	 * from its raw data, i.e. 15 elements per operation.
+	 */
+	@Benchmark
+	public void createInformationElements(Blackhole blackhole) throws Exception
+	{
+		for (int i = 0; i < elementTypes.length; i++)
+		{
+			blackhole.consume(InformationElementFactory.createFromType(elementTypes[i], elementBytes[i]));
+		}
+	}
+
+
+	@Benchmark
+	public MiniFrame parseMiniFrame() throws Exception
+	{
+		return new MiniFrame(miniFrameBytes, miniFrameBytes.length);
+	}
+
+
+	@Benchmark
+	public byte[] serializeMiniFrame()
+	{
+		return miniFrame.serialize();
+	}
+
+
+	/**
+	 * Serializing into a reused buffer, as the send path does.
+	 */
+	@Benchmark
+	public int serializeMiniFrameToBuffer()
+	{
+		sendBuffer.clear();
+		miniFrame.serializeTo(sendBuffer);
+
+		return sendBuffer.position();
+	}
+
+
+	@Benchmark
+	public byte[] serializeVoiceFrame()
+	{
+		return voiceFrame.serialize();
+	}
+
+
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder()
+				.include(FrameCodecBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.misternerd.djiax.benchmark;
+
+import com.misternerd.djiax.IaxClientObserver;
+import com.misternerd.djiax.IaxPeer;
+import com.misternerd.djiax.io.frame.FrameBase;
+
+/**
+ * Peer observer for benchmarks that don't care about peer events.
+ */
+public class NoopPeerObserver implements IaxClientObserver
+{
+
+	@Override
+	public void iaxClientOnConnect(IaxPeer client)
+	{
+	}
+
+
+	@Override
+	public void iaxClientOnDisconnect(IaxPeer client)
+	{
+	}
+
+
+	@Override
+	public void iaxClientOnRetransmitError(IaxPeer client, FrameBase frame)
+	{
+	}
+
+
+	@Override
+	public void iaxClientOnReplyError(IaxPeer client, FrameBase frame)
+	{
+	}
+
+}
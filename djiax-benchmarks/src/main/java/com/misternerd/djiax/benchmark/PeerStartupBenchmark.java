@@ -0,0 +1,142 @@
+package com.misternerd.djiax.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.misternerd.djiax.CallExecutionMode;
+import com.misternerd.djiax.IaxPeer;
+import com.misternerd.djiax.IaxPeerFactory;
+import com.misternerd.djiax.TransportHub;
+import com.misternerd.djiax.simulator.IaxServerSimulator;
+import com.misternerd.djiax.state.peer.Registered;
+
+/**
+ * Measures how long it takes to create and connect a number of peers until
+ * all of them are registered with a local simulator, including the MD5
+ * authentication round trip. Each peer either opens its own socket or all of
+ * them share one transport hub.
+ *
+ * The threads of the JVM are printed once the peers are up, they should not
+ * grow with the number of idle peers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PeerStartupBenchmark
+{
+
+	private static final long REGISTRATION_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	@Param({ "100" })
+	public int numberOfPeers;
+
+	@Param({ "false", "true" })
+	public boolean sharedTransportHub;
+
+	private IaxServerSimulator server;
+
+	private TransportHub transportHub;
+
+	private IaxPeer[] peers;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		server = new IaxServerSimulator("benchmark", "benchmark");
+		server.start();
+
+		IaxPeerFactory.setCallExecutionMode(CallExecutionMode.EVENT_LOOP);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		server.stop();
+	}
+
+
+	@Setup(Level.Iteration)
+	public void setUpIteration() throws Exception
+	{
+		peers = new IaxPeer[numberOfPeers];
+
+		if (sharedTransportHub)
+		{
+			transportHub = new TransportHub("benchmark-hub", 1);
+		}
+
+		IaxPeerFactory.setSharedTransportHub(transportHub);
+	}
+
+
+	@TearDown(Level.Iteration)
+	public void tearDownIteration()
+	{
+		System.out.println();
+		System.out.println("Threads with all peers registered: " + ManagementFactory.getThreadMXBean().getThreadCount());
+
+		for (IaxPeer peer : peers)
+		{
+			if (peer != null)
+			{
+				peer.stopClient();
+			}
+		}
+
+		if (transportHub != null)
+		{
+			IaxPeerFactory.setSharedTransportHub(null);
+			transportHub.stop();
+			transportHub = null;
+		}
+	}
+
+
+	@Benchmark
+	public IaxPeer[] createAndConnect() throws Exception
+	{
+		for (int i = 0; i < numberOfPeers; i++)
+		{
+			peers[i] = IaxPeerFactory.createNewPeer("127.0.0.1", server.getPort(), "benchmark", "benchmark",
+					new NoopPeerObserver());
+			peers[i].connect();
+		}
+
+		long deadline = System.nanoTime() + REGISTRATION_TIMEOUT_NANOS;
+
+		for (IaxPeer peer : peers)
+		{
+			while (!(peer.getPeerState() instanceof Registered))
+			{
+				if (System.nanoTime() > deadline)
+				{
+					throw new IllegalStateException("Peer " + peer.getPeerName() + " did not register");
+				}
+
+				Thread.yield();
+			}
+		}
+
+		return peers;
+	}
+
+}
@@ -0,0 +1,251 @@
+package com.misternerd.djiax.benchmark;
+
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.misternerd.djiax.Call;
+import com.misternerd.djiax.CallExecutionMode;
+import com.misternerd.djiax.IaxPeer;
+import com.misternerd.djiax.IaxPeerFactory;
+import com.misternerd.djiax.call.AudioListener;
+import com.misternerd.djiax.io.frame.MiniFrame;
+import com.misternerd.djiax.io.frame.full.IaxFrame;
+import com.misternerd.djiax.io.frame.full.IaxFrameSubclass;
+import com.misternerd.djiax.util.MediaFormat;
+
+/**
+ * Measures how inbound media throughput scales with the number of receive
+ * sockets of a peer. Several sender threads play the server over loopback,
+ * each one owns a slice of the calls and sends a burst of MiniFrames per
+ * invocation to the sockets of its calls, then waits until the burst reached
+ * the calls' audio listeners. The score is bursts per second, multiply by
+ * CALLS_PER_SENDER * FRAMES_PER_CALL for frames per second.
+ *
+ * Frames that did not arrive within a second are counted as lost and printed
+ * at the end of the trial. No server is required: the senders share the
+ * "server" port the peer is configured with, so MiniFrames are routed by that
+ * address, and nobody answers the peer's own frames.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(SocketShardBenchmark.SENDERS)
+public class SocketShardBenchmark
+{
+
+	static final int SENDERS = 4;
+
+	static final int CALLS_PER_SENDER = 16;
+
+	static final int FRAMES_PER_CALL = 4;
+
+	private static final short SERVER_CALL_NUMBER_BASE = 2000;
+
+	private static final long DELIVERY_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	@Param({ "1", "2", "4" })
+	public int numberOfShards;
+
+	private DatagramChannel serverChannel;
+
+	private IaxPeer peer;
+
+	private Call[] calls;
+
+	private InetSocketAddress[] callAddresses;
+
+	private final AtomicInteger nextSender = new AtomicInteger();
+
+	private final AtomicLong framesLost = new AtomicLong();
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		int numberOfCalls = SENDERS * CALLS_PER_SENDER;
+
+		IaxPeerFactory.setMaxNumberOfCallsPerPeer(numberOfCalls);
+		IaxPeerFactory.setNumberOfSocketShardsPerPeer(numberOfShards);
+		IaxPeerFactory.setCallExecutionMode(CallExecutionMode.EVENT_LOOP);
+
+		serverChannel = openServerChannel(0);
+		int serverPort = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+
+		peer = IaxPeerFactory.createNewPeer("127.0.0.1", serverPort, "benchmark", "benchmark", new NoopPeerObserver());
+		// starts the receivers, the REGREQ goes unanswered which does not matter here
+		peer.connect();
+		calls = new Call[numberOfCalls];
+		callAddresses = new InetSocketAddress[numberOfCalls];
+
+		try (DatagramChannel channel = openServerChannel(serverPort))
+		{
+			for (int i = 0; i < numberOfCalls; i++)
+			{
+				calls[i] = peer.createCall("benchmark", new MediaFormat[] { MediaFormat.LE_16_BIT_LINEAR });
+				calls[i].callStart();
+				callAddresses[i] = new InetSocketAddress("127.0.0.1",
+						peer.getLocalAddress(calls[i].getSourceCallNumber()).getPort());
+
+				// the first FullFrame from the "server" tells the call its destination number
+				IaxFrame ack = new IaxFrame((short) (SERVER_CALL_NUMBER_BASE + i), false, calls[i].getSourceCallNumber(),
+						0, (short) 0, (short) 0, IaxFrameSubclass.ACK);
+				channel.send(ByteBuffer.wrap(ack.serialize()), callAddresses[i]);
+			}
+		}
+
+		for (Call call : calls)
+		{
+			while (call.getDestinationCallNumber() == 0)
+			{
+				Thread.sleep(1);
+			}
+		}
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		System.out.println();
+		System.out.println("Frames lost: " + framesLost.get());
+
+		peer.stopClient();
+
+		try
+		{
+			serverChannel.close();
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+
+	/**
+	 * A channel on the loopback "server" port, several of them can be bound to
+	 * the same port for sending.
+	 */
+	static DatagramChannel openServerChannel(int port) throws Exception
+	{
+		DatagramChannel channel = DatagramChannel.open();
+		channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		channel.bind(new InetSocketAddress("127.0.0.1", port));
+
+		return channel;
+	}
+
+
+	@State(Scope.Thread)
+	public static class Sender
+	{
+
+		private DatagramChannel channel;
+
+		private ByteBuffer[] frames;
+
+		private InetSocketAddress[] addresses;
+
+		private final AtomicLong framesDelivered = new AtomicLong();
+
+		private long framesExpected;
+
+
+		@Setup(Level.Trial)
+		public void setUp(SocketShardBenchmark benchmark) throws Exception
+		{
+			int firstCall = benchmark.nextSender.getAndIncrement() * CALLS_PER_SENDER;
+
+			AudioListener countingListener = new AudioListener()
+			{
+				@Override
+				public void callListenerSetAudioRunning(boolean running)
+				{
+				}
+
+				@Override
+				public void callListenerReceivedAudioData(byte[] data, MediaFormat codec)
+				{
+					framesDelivered.incrementAndGet();
+				}
+			};
+
+			channel = openServerChannel(((InetSocketAddress) benchmark.serverChannel.getLocalAddress()).getPort());
+			frames = new ByteBuffer[CALLS_PER_SENDER];
+			addresses = new InetSocketAddress[CALLS_PER_SENDER];
+
+			for (int i = 0; i < CALLS_PER_SENDER; i++)
+			{
+				int callIndex = firstCall + i;
+
+				benchmark.calls[callIndex].setAudioListener(countingListener);
+				frames[i] = ByteBuffer.wrap(new MiniFrame((short) (SERVER_CALL_NUMBER_BASE + callIndex), 0, new byte[320]).serialize());
+				addresses[i] = benchmark.callAddresses[callIndex];
+			}
+		}
+
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws Exception
+		{
+			channel.close();
+		}
+
+	}
+
+
+	@Benchmark
+	public long receiveBurst(Sender sender) throws Exception
+	{
+		sender.framesExpected += CALLS_PER_SENDER * FRAMES_PER_CALL;
+
+		for (int round = 0; round < FRAMES_PER_CALL; round++)
+		{
+			for (int i = 0; i < CALLS_PER_SENDER; i++)
+			{
+				sender.frames[i].rewind();
+				sender.channel.send(sender.frames[i], sender.addresses[i]);
+			}
+		}
+
+		long deadline = System.nanoTime() + DELIVERY_TIMEOUT_NANOS;
+
+		while (sender.framesDelivered.get() < sender.framesExpected)
+		{
+			if (System.nanoTime() > deadline)
+			{
+				framesLost.addAndGet(sender.framesExpected - sender.framesDelivered.get());
+				sender.framesExpected = sender.framesDelivered.get();
+				break;
+			}
+
+			Thread.yield();
+		}
+
+		return sender.framesDelivered.get();
+	}
+
+}
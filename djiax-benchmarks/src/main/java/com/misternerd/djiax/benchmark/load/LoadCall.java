@@ -0,0 +1,183 @@
+package com.misternerd.djiax.benchmark.load;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.misternerd.djiax.Call;
+import com.misternerd.djiax.call.AudioSource;
+import com.misternerd.djiax.call.ByteBufferAudioListener;
+import com.misternerd.djiax.call.CallObserver;
+import com.misternerd.djiax.util.MediaFormat;
+
+/**
+ * One call of the load generator: observes its setup and counts the audio it
+ * receives, reading it in place. The audio is written by the generator's
+ * media clock, or pulled by the library's when paced.
+ */
+class LoadCall implements CallObserver, ByteBufferAudioListener, AudioSource
+{
+
+	static final int STATE_SETUP = 0;
+
+	static final int STATE_UP = 1;
+
+	static final int STATE_FAILED = 2;
+
+	static final int STATE_ENDED = 3;
+
+	private final LoadGenerator generator;
+
+	private final Call call;
+
+	private final long startNanoTime;
+
+	private volatile long setupTime = -1;
+
+	private final AtomicInteger state = new AtomicInteger(STATE_SETUP);
+
+	private final AtomicLong framesReceived;
+
+
+	LoadCall(LoadGenerator generator, Call call, AtomicLong framesReceived)
+	{
+		this.generator = generator;
+		this.call = call;
+		this.framesReceived = framesReceived;
+		this.startNanoTime = System.nanoTime();
+	}
+
+
+	Call getCall()
+	{
+		return call;
+	}
+
+
+	int getState()
+	{
+		return state.get();
+	}
+
+
+	/**
+	 * Nanos from callStart() to the ANSWER, -1 while not answered.
+	 */
+	long getSetupTime()
+	{
+		return setupTime;
+	}
+
+
+	long getStartNanoTime()
+	{
+		return startNanoTime;
+	}
+
+
+	/**
+	 * The generator gave up on the call's setup.
+	 */
+	void setupTimedOut()
+	{
+		if (state.compareAndSet(STATE_SETUP, STATE_FAILED))
+		{
+			generator.callFailed(this);
+		}
+	}
+
+
+	void hangup()
+	{
+		if (state.compareAndSet(STATE_SETUP, STATE_ENDED) || state.compareAndSet(STATE_UP, STATE_ENDED))
+		{
+			call.callStop();
+		}
+	}
+
+
+	@Override
+	public void callProceeding(Call call)
+	{
+	}
+
+
+	@Override
+	public void callRinging(Call call)
+	{
+	}
+
+
+	@Override
+	public void callAnswered(Call call)
+	{
+		long answeredAfter = System.nanoTime() - startNanoTime;
+
+		if (state.compareAndSet(STATE_SETUP, STATE_UP))
+		{
+			setupTime = answeredAfter;
+			generator.callAnswered(this);
+		}
+	}
+
+
+	@Override
+	public void callCongestion(Call call)
+	{
+		failed();
+	}
+
+
+	@Override
+	public void callHangup(Call call)
+	{
+		failed();
+	}
+
+
+	@Override
+	public void callBusy(Call call)
+	{
+		failed();
+	}
+
+
+	/**
+	 * The call ended without the generator asking for it.
+	 */
+	private void failed()
+	{
+		if (state.compareAndSet(STATE_SETUP, STATE_FAILED) || state.compareAndSet(STATE_UP, STATE_FAILED))
+		{
+			generator.callFailed(this);
+		}
+	}
+
+
+	@Override
+	public void callListenerSetAudioRunning(boolean running)
+	{
+	}
+
+
+	@Override
+	public void callListenerReceivedAudioData(byte[] data, MediaFormat codec)
+	{
+		framesReceived.incrementAndGet();
+	}
+
+
+	@Override
+	public void callListenerReceivedAudioData(ByteBuffer data, MediaFormat codec)
+	{
+		framesReceived.incrementAndGet();
+	}
+
+
+	@Override
+	public void callSourceReadAudioData(ByteBuffer buffer, MediaFormat codec)
+	{
+		generator.readAudioFrame(buffer);
+	}
+
+}
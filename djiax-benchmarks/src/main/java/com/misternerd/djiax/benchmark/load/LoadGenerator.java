@@ -0,0 +1,950 @@
+package com.misternerd.djiax.benchmark.load;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.misternerd.djiax.Call;
+import com.misternerd.djiax.CallExecutionMode;
+import com.misternerd.djiax.IaxPeer;
+import com.misternerd.djiax.IaxPeerFactory;
+import com.misternerd.djiax.MediaClock;
+import com.misternerd.djiax.PeerConstants;
+import com.misternerd.djiax.TransportHub;
+import com.misternerd.djiax.TrunkMode;
+import com.misternerd.djiax.benchmark.NoopPeerObserver;
+import com.misternerd.djiax.exception.CallException;
+import com.misternerd.djiax.metrics.PeerMetrics;
+import com.misternerd.djiax.simulator.IaxServerSimulator;
+import com.misternerd.djiax.simulator.MediaSource;
+import com.misternerd.djiax.state.peer.Registered;
+import com.misternerd.djiax.util.AudioRingBuffer;
+import com.misternerd.djiax.util.MediaFormat;
+
+/**
+ * Drives many concurrent calls through the public API: ramps up to the target
+ * number of calls at the given rate, streams 20 msecs of audio per call and
+ * direction every 20 msecs, holds the calls for the soak period and hangs them
+ * up. Calls that fail on the way are replaced at the same rate.
+ *
+ * Every second it prints calls, throughput, setup latency, audio loss, CPU,
+ * threads, heap and GC. At the end it prints a summary with the calls per
+ * core: the calls held during the soak divided by the CPU cores the client
+ * used meanwhile.
+ *
+ * Without a host, it starts an IaxServerSimulator in the same JVM that echoes
+ * the audio back. The simulator's threads are not counted as client CPU.
+ *
+ * java -cp djiax-benchmarks/target/benchmarks.jar com.misternerd.djiax.benchmark.load.LoadGenerator --calls=2000 --rate=100 --soak=60
+ */
+public class LoadGenerator
+{
+
+	private static final long MEDIA_INTERVAL = 20;
+
+	private static final long CONTROL_INTERVAL = 10;
+
+	private static final long REPORT_INTERVAL = 1000;
+
+	private static final long REGISTRATION_TIMEOUT = 10000;
+
+	private static final String SIMULATOR_THREAD_PREFIX = "IaxServerSimulator";
+
+	/*
+	 * Configuration
+	 */
+
+	private int targetCalls = 100;
+
+	private double callsPerSecond = 10;
+
+	private long soakDuration = 60000;
+
+	private long setupTimeout = 10000;
+
+	private int numberOfPeers = 1;
+
+	private String host;
+
+	private int port = 4569;
+
+	private String username = "load";
+
+	private String password = "load";
+
+	private String dialString = "load";
+
+	private MediaFormat format = MediaFormat.LE_16_BIT_LINEAR;
+
+	private CallExecutionMode executionMode;
+
+	private int numberOfSocketShards = 1;
+
+	private boolean sharedTransportHub;
+
+	private TrunkMode trunkMode = TrunkMode.NONE;
+
+	private boolean paced;
+
+	private int readAudioBufferDuration;
+
+	private ByteBuffer readAudioBuffer;
+
+	private PrintStream out = System.out;
+
+	/*
+	 * Run
+	 */
+
+	private IaxServerSimulator server;
+
+	private TransportHub transportHub;
+
+	private final List<IaxPeer> peers = new ArrayList<>();
+
+	private final Set<LoadCall> callsUp = Collections.newSetFromMap(new ConcurrentHashMap<LoadCall, Boolean>());
+
+	private final ConcurrentLinkedQueue<LoadCall> callsInSetup = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger callsInProgress = new AtomicInteger();
+
+	private final AtomicLong callsStarted = new AtomicLong();
+
+	private final AtomicLong callsAnswered = new AtomicLong();
+
+	private final AtomicLong callsFailed = new AtomicLong();
+
+	private final AtomicLong framesSent = new AtomicLong();
+
+	private final AtomicLong framesReceived = new AtomicLong();
+
+	private final AtomicLong writeErrors = new AtomicLong();
+
+	/**
+	 * Highest lateness of a media clock tick since the last report, in nanos.
+	 */
+	private final AtomicLong mediaClockLag = new AtomicLong();
+
+	private long[] setupTimes = new long[1024];
+
+	private int numberOfSetupTimes;
+
+	private byte[] audioFrame;
+
+	private ScheduledExecutorService mediaClock;
+
+	private long nextMediaTick;
+
+	private int nextPeer;
+
+
+	/**
+	 * Runs ramp-up, soak and hangup, printing the reports as it goes.
+	 */
+	public void run() throws Exception
+	{
+		ProcessStatistics process = new ProcessStatistics(host == null ? SIMULATOR_THREAD_PREFIX : null);
+		audioFrame = new byte[format == MediaFormat.LE_16_BIT_LINEAR ? 320 : 160];
+		readAudioBuffer = ByteBuffer.allocateDirect(Math.max(1, readAudioBufferDuration * PeerConstants.CALL_AUDIO_BYTES_PER_MSEC));
+
+		out.printf("Load: %d calls at %.1f calls/s, %d secs soak, %d peer(s), %s, mode=%s, shards=%d%s, trunk=%s%s, %d cores%n", targetCalls,
+				callsPerSecond, soakDuration / 1000, numberOfPeers, format, executionMode != null ? executionMode : "default",
+				numberOfSocketShards, sharedTransportHub ? " shared" : " per peer", trunkMode, paced ? ", paced" : "",
+				process.getAvailableProcessors());
+
+		try
+		{
+			startServer();
+			startPeers();
+			startMediaClock();
+
+			ProcessStatistics.Sample start = process.sample();
+			Report report = new Report(start, callsStarted.get(), callsAnswered.get(), callsFailed.get(), framesSent.get(),
+					framesReceived.get());
+
+			// ramp up until all calls are up, or until it's obvious they won't get up
+			long rampTimeout = (long) (targetCalls / callsPerSecond * 1000) + 2 * setupTimeout;
+			long soakStart = drive(start.nanoTime, rampTimeout, true, report, process);
+			ProcessStatistics.Sample soakStartSample = process.sample();
+			long soakStartSent = framesSent.get();
+			long soakStartReceived = framesReceived.get();
+
+			out.printf("Ramp-up done after %.1f secs with %d calls up, soaking for %d secs%n", (soakStart - start.nanoTime) / 1e9,
+					callsUp.size(), soakDuration / 1000);
+
+			CallSum soakCalls = new CallSum();
+			report.callSum = soakCalls;
+			drive(soakStart, soakDuration, false, report, process);
+
+			ProcessStatistics.Sample soakEndSample = process.sample();
+			printSummary(start, soakStartSample, soakEndSample, soakCalls, framesSent.get() - soakStartSent,
+					framesReceived.get() - soakStartReceived, process);
+		}
+		finally
+		{
+			stop();
+		}
+	}
+
+
+	/**
+	 * Keeps the calls at the target, at most at the configured rate, and prints
+	 * a report every second.
+	 *
+	 * @param untilAllUp Returns as soon as all calls are up
+	 * @return When it returned, in nanos
+	 */
+	private long drive(long startNanoTime, long duration, boolean untilAllUp, Report report, ProcessStatistics process)
+			throws InterruptedException
+	{
+		long end = startNanoTime + duration * 1000000L;
+		long startedBefore = callsStarted.get();
+		long nextReport = report.sample.nanoTime + REPORT_INTERVAL * 1000000L;
+
+		while (true)
+		{
+			long now = System.nanoTime();
+
+			if (now >= end || (untilAllUp && callsUp.size() >= targetCalls))
+			{
+				// what the calls buffered so far counts as received
+				readAudio();
+				return now;
+			}
+
+			long allowed = (long) ((now - startNanoTime) / 1e9 * callsPerSecond) + 1;
+
+			while (callsInProgress.get() < targetCalls && callsStarted.get() - startedBefore < allowed)
+			{
+				startCall();
+			}
+
+			expireSetups(now);
+			readAudio();
+
+			if (now >= nextReport)
+			{
+				report.print(process.sample());
+				nextReport += REPORT_INTERVAL * 1000000L;
+			}
+
+			if (report.callSum != null)
+			{
+				report.callSum.add(callsUp.size());
+			}
+
+			Thread.sleep(CONTROL_INTERVAL);
+		}
+	}
+
+
+	private void startCall()
+	{
+		IaxPeer peer = peers.get(nextPeer++ % peers.size());
+		Call call = peer.createCall(dialString, new MediaFormat[] { format });
+		callsStarted.incrementAndGet();
+
+		if (call == null)
+		{
+			callsFailed.incrementAndGet();
+			return;
+		}
+
+		LoadCall loadCall = new LoadCall(this, call, framesReceived);
+		call.setCallObserver(loadCall);
+		call.setAudioListener(loadCall);
+
+		if (paced)
+		{
+			call.setAudioSource(loadCall);
+		}
+
+		callsInProgress.incrementAndGet();
+		callsInSetup.add(loadCall);
+
+		try
+		{
+			call.callStart();
+		}
+		catch (CallException e)
+		{
+			loadCall.setupTimedOut();
+		}
+	}
+
+
+	/**
+	 * Gives up on calls not answered within the setup timeout. Calls are
+	 * queued in the order they were started, so only the head needs a look.
+	 */
+	private void expireSetups(long now)
+	{
+		LoadCall head;
+
+		while ((head = callsInSetup.peek()) != null)
+		{
+			if (head.getState() != LoadCall.STATE_SETUP)
+			{
+				callsInSetup.poll();
+			}
+			else if (now - head.getStartNanoTime() > setupTimeout * 1000000L)
+			{
+				callsInSetup.poll();
+				head.setupTimedOut();
+				head.getCall().callStop();
+			}
+			else
+			{
+				return;
+			}
+		}
+	}
+
+
+	void callAnswered(LoadCall call)
+	{
+		callsAnswered.incrementAndGet();
+		callsUp.add(call);
+
+		synchronized (this)
+		{
+			if (numberOfSetupTimes == setupTimes.length)
+			{
+				setupTimes = Arrays.copyOf(setupTimes, setupTimes.length * 2);
+			}
+
+			setupTimes[numberOfSetupTimes++] = call.getSetupTime();
+		}
+	}
+
+
+	void callFailed(LoadCall call)
+	{
+		callsFailed.incrementAndGet();
+		callsUp.remove(call);
+		callsInProgress.decrementAndGet();
+	}
+
+
+	/**
+	 * Setup times of all calls answered so far in msecs, at the given
+	 * percentiles.
+	 */
+	private synchronized double[] getSetupPercentiles(double... percentiles)
+	{
+		double[] result = new double[percentiles.length];
+
+		if (numberOfSetupTimes == 0)
+		{
+			return result;
+		}
+
+		long[] sorted = Arrays.copyOf(setupTimes, numberOfSetupTimes);
+		Arrays.sort(sorted);
+
+		for (int i = 0; i < percentiles.length; i++)
+		{
+			int index = (int) Math.ceil(percentiles[i] / 100 * sorted.length) - 1;
+			result[i] = sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+		}
+
+		return result;
+	}
+
+
+	/*
+	 * Setup and teardown
+	 */
+
+	private void startServer() throws Exception
+	{
+		if (host != null)
+		{
+			return;
+		}
+
+		server = new IaxServerSimulator(username, password);
+		server.setMediaSource(MediaSource.ECHO);
+		server.start();
+
+		host = "127.0.0.1";
+		port = server.getPort();
+	}
+
+
+	private void startPeers() throws Exception
+	{
+		int callsPerPeer = (targetCalls + numberOfPeers - 1) / numberOfPeers;
+
+		// replaced calls might linger in the peer for a while
+		IaxPeerFactory.setMaxNumberOfCallsPerPeer(Math.min(PeerConstants.PEER_MAX_NUMBER_OF_CALLS, callsPerPeer * 2));
+		IaxPeerFactory.setNumberOfSocketShardsPerPeer(numberOfSocketShards);
+
+		if (sharedTransportHub)
+		{
+			transportHub = new TransportHub("LoadGenerator-hub", numberOfSocketShards);
+			IaxPeerFactory.setSharedTransportHub(transportHub);
+		}
+
+		if (executionMode != null)
+		{
+			IaxPeerFactory.setCallExecutionMode(executionMode);
+		}
+
+		for (int i = 0; i < numberOfPeers; i++)
+		{
+			IaxPeer peer = IaxPeerFactory.createNewPeer(host, port, username, password, new NoopPeerObserver());
+			peer.setTrunkMode(trunkMode);
+			peer.getPeerConfiguration().setInboundAudioBufferDuration(readAudioBufferDuration);
+			peer.connect();
+			peers.add(peer);
+		}
+
+		long deadline = System.currentTimeMillis() + REGISTRATION_TIMEOUT;
+
+		for (IaxPeer peer : peers)
+		{
+			while (!(peer.getPeerState() instanceof Registered))
+			{
+				if (System.currentTimeMillis() > deadline)
+				{
+					throw new IllegalStateException("Peer " + peer.getPeerName() + " did not register with " + host + ":" + port);
+				}
+
+				Thread.sleep(CONTROL_INTERVAL);
+			}
+		}
+	}
+
+
+	/**
+	 * Writes a frame to every call that is up, every 20 msecs. Ticks are
+	 * scheduled at a fixed rate, how late they start shows whether the client
+	 * keeps up. Paced calls are served by the library's media clock instead.
+	 */
+	private void startMediaClock()
+	{
+		if (paced)
+		{
+			return;
+		}
+
+		mediaClock = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "LoadGenerator-media");
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		});
+
+		nextMediaTick = System.nanoTime() + MEDIA_INTERVAL * 1000000L;
+
+		mediaClock.scheduleAtFixedRate(new Runnable()
+		{
+
+			@Override
+			public void run()
+			{
+				long lag = System.nanoTime() - nextMediaTick;
+				nextMediaTick += MEDIA_INTERVAL * 1000000L;
+
+				if (lag > mediaClockLag.get())
+				{
+					mediaClockLag.set(lag);
+				}
+
+				for (LoadCall call : callsUp)
+				{
+					try
+					{
+						// written into the lent buffer, so the audio is sent without a copy
+						ByteBuffer buffer = call.getCall().getAudioFrameBuffer();
+						buffer.put(audioFrame);
+						buffer.flip();
+						call.getCall().writeAudioData(buffer);
+						framesSent.incrementAndGet();
+					}
+					catch (Exception e)
+					{
+						writeErrors.incrementAndGet();
+					}
+				}
+			}
+
+		}, MEDIA_INTERVAL, MEDIA_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Drains the received audio of all calls that are up, when the calls
+	 * buffer it for reading. Counts it in whole frames.
+	 */
+	private void readAudio()
+	{
+		if (readAudioBufferDuration == 0)
+		{
+			return;
+		}
+
+		for (LoadCall call : callsUp)
+		{
+			readAudioBuffer.clear();
+			int length = call.getCall().readAudio(readAudioBuffer);
+			framesReceived.addAndGet(length / audioFrame.length);
+		}
+	}
+
+
+	/**
+	 * Provides the audio of a paced call for one interval.
+	 */
+	void readAudioFrame(ByteBuffer buffer)
+	{
+		buffer.put(audioFrame);
+		framesSent.incrementAndGet();
+	}
+
+
+	private void stop()
+	{
+		if (mediaClock != null)
+		{
+			mediaClock.shutdownNow();
+		}
+
+		for (LoadCall call : callsUp)
+		{
+			call.hangup();
+		}
+
+		for (IaxPeer peer : peers)
+		{
+			peer.stopClient();
+		}
+
+		if (transportHub != null)
+		{
+			IaxPeerFactory.setSharedTransportHub(null);
+			transportHub.stop();
+		}
+
+		if (server != null)
+		{
+			server.stop();
+		}
+	}
+
+
+	/*
+	 * Reporting
+	 */
+
+	private void printSummary(ProcessStatistics.Sample start, ProcessStatistics.Sample soakStart, ProcessStatistics.Sample soakEnd,
+			CallSum soakCalls, long soakFramesSent, long soakFramesReceived, ProcessStatistics process)
+	{
+		double[] setup = getSetupPercentiles(50, 95, 99, 100);
+		double soakSeconds = (soakEnd.nanoTime - soakStart.nanoTime) / 1e9;
+		double clientCores = soakEnd.getClientCores(soakStart);
+		double averageCalls = soakCalls.getAverage();
+
+		out.println();
+		out.println("Summary");
+		out.printf("  calls:      %d started, %d answered, %d failed, %.0f up on average during soak (min %d)%n", callsStarted.get(),
+				callsAnswered.get(), callsFailed.get(), averageCalls, soakCalls.min);
+		out.printf("  setup:      p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms%n", setup[0], setup[1], setup[2], setup[3]);
+		out.printf("  audio:      %d frames sent, %d received, %.0f/s each way during soak, write errors %d%n", framesSent.get(),
+				framesReceived.get(), soakFramesSent / soakSeconds, writeErrors.get());
+		out.printf("  loss:       %.3f%% end to end during soak%n", getLoss(soakFramesSent, soakFramesReceived));
+
+		if (server != null)
+		{
+			out.printf("  simulator:  %d frames received, %d sent, %d dropped, %.2f cores during soak%n", server.getMediaFramesReceived(),
+					server.getMediaFramesSent(), server.getDatagramsDropped(), soakEnd.getExcludedCores(soakStart));
+		}
+
+		long miniFramesReceived = 0;
+		long queueDrops = 0;
+		long retransmits = 0;
+
+		for (IaxPeer peer : peers)
+		{
+			PeerMetrics.Snapshot metrics = peer.getMetricsSnapshot();
+			miniFramesReceived += metrics.getReceived().getMiniFrames();
+			queueDrops += metrics.getQueueDrops();
+			retransmits += metrics.getRetransmits();
+		}
+
+		// frames the simulator sent that never reached the peers got lost in the socket buffers
+		out.printf("  peers:      %d MiniFrames received, %d dropped by the call queues, %d retransmits%n", miniFramesReceived,
+				queueDrops, retransmits);
+		if (transportHub != null)
+		{
+			out.printf("  hub:        %d sockets shared by %d peers, %d frames unrouted%n", transportHub.getNumberOfSockets(),
+					transportHub.getNumberOfPeers(), transportHub.getNumberOfUnroutedFrames());
+		}
+
+		if (readAudioBufferDuration > 0)
+		{
+			long overruns = 0;
+			long bytesDropped = 0;
+
+			for (LoadCall call : callsUp)
+			{
+				AudioRingBuffer inboundAudio = call.getCall().getInboundAudioBuffer();
+				overruns += inboundAudio.getNumberOfOverruns();
+				bytesDropped += inboundAudio.getNumberOfBytesDropped();
+			}
+
+			out.printf("  read:       %d overruns dropping %d bytes in the calls still up%n", overruns, bytesDropped);
+		}
+
+		if (paced && !peers.isEmpty())
+		{
+			MediaClock clock = peers.get(0).getMediaClock();
+			out.printf("  clock:      %d ticks, %d skipped, max lateness %.1fms%n", clock.getNumberOfTicks(),
+					clock.getNumberOfSkippedTicks(), clock.getMaxLateness() / 1e6);
+		}
+
+		out.printf("  jvm:        %d threads, %d MB heap, %d GCs taking %d ms during soak%n", soakEnd.threadCount,
+				soakEnd.heapUsed >> 20, soakEnd.gcCount - soakStart.gcCount, soakEnd.gcTime - soakStart.gcTime);
+
+		if (clientCores > 0)
+		{
+			out.printf("  client cpu: %.2f cores during soak, %.0f calls per core%n", clientCores, averageCalls / clientCores);
+		}
+		else
+		{
+			out.println("  client cpu: not available on this JVM");
+		}
+	}
+
+
+	private static double getLoss(long sent, long received)
+	{
+		return sent == 0 ? 0 : Math.max(0, 100.0 * (sent - received) / sent);
+	}
+
+
+	/**
+	 * The values of the last report, for the rates since.
+	 */
+	private class Report
+	{
+
+		private ProcessStatistics.Sample sample;
+
+		private long started;
+
+		private long answered;
+
+		private long failed;
+
+		private long sent;
+
+		private long received;
+
+		private CallSum callSum;
+
+
+		Report(ProcessStatistics.Sample sample, long started, long answered, long failed, long sent, long received)
+		{
+			this.sample = sample;
+			this.started = started;
+			this.answered = answered;
+			this.failed = failed;
+			this.sent = sent;
+			this.received = received;
+		}
+
+
+		void print(ProcessStatistics.Sample now)
+		{
+			long nowStarted = callsStarted.get();
+			long nowAnswered = callsAnswered.get();
+			long nowFailed = callsFailed.get();
+			long nowSent = framesSent.get();
+			long nowReceived = framesReceived.get();
+			double seconds = (now.nanoTime - sample.nanoTime) / 1e9;
+			double[] setup = getSetupPercentiles(50, 95, 99);
+
+			out.printf("up=%5d setup=%4d started/s=%5.0f answered/s=%5.0f failed/s=%4.0f tx/s=%7.0f rx/s=%7.0f loss=%6.3f%% "
+					+ "setup p50/p95/p99=%.1f/%.1f/%.1fms lag=%3dms cpu=%5.2f threads=%4d heap=%4dMB gc=%d/%dms%n",
+					callsUp.size(), callsInProgress.get() - callsUp.size(), (nowStarted - started) / seconds,
+					(nowAnswered - answered) / seconds, (nowFailed - failed) / seconds, (nowSent - sent) / seconds,
+					(nowReceived - received) / seconds, getLoss(nowSent - sent, nowReceived - received), setup[0], setup[1], setup[2],
+					mediaClockLag.getAndSet(0) / 1000000, now.getClientCores(sample), now.threadCount, now.heapUsed >> 20,
+					now.gcCount - sample.gcCount, now.gcTime - sample.gcTime);
+
+			this.sample = now;
+			this.started = nowStarted;
+			this.answered = nowAnswered;
+			this.failed = nowFailed;
+			this.sent = nowSent;
+			this.received = nowReceived;
+		}
+
+	}
+
+
+	/**
+	 * Samples of the number of calls up, for the average during the soak.
+	 */
+	private static class CallSum
+	{
+
+		private long sum;
+
+		private long count;
+
+		private int min = Integer.MAX_VALUE;
+
+
+		void add(int calls)
+		{
+			sum += calls;
+			count++;
+			min = Math.min(min, calls);
+		}
+
+
+		double getAverage()
+		{
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+	}
+
+
+	/*
+	 * Configuration
+	 */
+
+	public void setTargetCalls(int targetCalls)
+	{
+		this.targetCalls = targetCalls;
+	}
+
+
+	public void setCallsPerSecond(double callsPerSecond)
+	{
+		this.callsPerSecond = callsPerSecond;
+	}
+
+
+	/**
+	 * @param soakDuration Msecs to hold the calls once all are up
+	 */
+	public void setSoakDuration(long soakDuration)
+	{
+		this.soakDuration = soakDuration;
+	}
+
+
+	/**
+	 * @param setupTimeout Msecs after which an unanswered call counts as
+	 *            failed
+	 */
+	public void setSetupTimeout(long setupTimeout)
+	{
+		this.setupTimeout = setupTimeout;
+	}
+
+
+	public void setNumberOfPeers(int numberOfPeers)
+	{
+		this.numberOfPeers = numberOfPeers;
+	}
+
+
+	/**
+	 * @param host The server to call, null (the default) starts a simulator
+	 */
+	public void setServer(String host, int port)
+	{
+		this.host = host;
+		this.port = port;
+	}
+
+
+	public void setCredentials(String username, String password)
+	{
+		this.username = username;
+		this.password = password;
+	}
+
+
+	public void setDialString(String dialString)
+	{
+		this.dialString = dialString;
+	}
+
+
+	/**
+	 * @param format LE_16_BIT_LINEAR, G711_MULAW or G711_ALAW, the frames are
+	 *            sized for 20 msecs of it
+	 */
+	public void setFormat(MediaFormat format)
+	{
+		this.format = format;
+	}
+
+
+	public void setExecutionMode(CallExecutionMode executionMode)
+	{
+		this.executionMode = executionMode;
+	}
+
+
+	public void setNumberOfSocketShards(int numberOfSocketShards)
+	{
+		this.numberOfSocketShards = numberOfSocketShards;
+	}
+
+
+	/**
+	 * Lets all peers share one transport hub with the configured number of
+	 * sockets, instead of each opening its own.
+	 */
+	public void setSharedTransportHub(boolean sharedTransportHub)
+	{
+		this.sharedTransportHub = sharedTransportHub;
+	}
+
+
+	/**
+	 * Lets the calls buffer the given msecs of received audio, which the
+	 * generator reads in batches instead of getting it through the listener.
+	 * 0 turns it off.
+	 */
+	public void setReadAudioBufferDuration(int readAudioBufferDuration)
+	{
+		this.readAudioBufferDuration = readAudioBufferDuration;
+	}
+
+
+	/**
+	 * Lets the library's media clock pull the audio from the calls, instead of
+	 * the generator writing it.
+	 */
+	public void setPaced(boolean paced)
+	{
+		this.paced = paced;
+	}
+
+
+	public void setTrunkMode(TrunkMode trunkMode)
+	{
+		this.trunkMode = trunkMode;
+	}
+
+
+	public void setOut(PrintStream out)
+	{
+		this.out = out;
+	}
+
+
+	public static void main(String[] args) throws Exception
+	{
+		LoadGenerator generator = new LoadGenerator();
+		String host = null;
+		int port = 4569;
+		String username = "load";
+		String password = "load";
+
+		for (String arg : args)
+		{
+			int separator = arg.indexOf('=');
+			String name = separator > 0 ? arg.substring(0, separator) : arg;
+			String value = separator > 0 ? arg.substring(separator + 1) : "";
+
+			switch (name)
+			{
+				case "--calls":
+					generator.setTargetCalls(Integer.parseInt(value));
+					break;
+				case "--rate":
+					generator.setCallsPerSecond(Double.parseDouble(value));
+					break;
+				case "--soak":
+					generator.setSoakDuration(Long.parseLong(value) * 1000);
+					break;
+				case "--setup-timeout":
+					generator.setSetupTimeout(Long.parseLong(value) * 1000);
+					break;
+				case "--peers":
+					generator.setNumberOfPeers(Integer.parseInt(value));
+					break;
+				case "--host":
+					host = value;
+					break;
+				case "--port":
+					port = Integer.parseInt(value);
+					break;
+				case "--user":
+					username = value;
+					break;
+				case "--password":
+					password = value;
+					break;
+				case "--dial":
+					generator.setDialString(value);
+					break;
+				case "--format":
+					generator.setFormat(MediaFormat.valueOf(value));
+					break;
+				case "--mode":
+					generator.setExecutionMode(CallExecutionMode.valueOf(value));
+					break;
+				case "--shards":
+					generator.setNumberOfSocketShards(Integer.parseInt(value));
+					break;
+				case "--shared-hub":
+					generator.setSharedTransportHub(true);
+					break;
+				case "--read-audio":
+					generator.setReadAudioBufferDuration(value.isEmpty() ? 200 : Integer.parseInt(value));
+					break;
+				case "--paced":
+					generator.setPaced(true);
+					break;
+				case "--trunk":
+					generator.setTrunkMode(value.isEmpty() ? TrunkMode.TRUNK : TrunkMode.valueOf(value));
+					break;
+				default:
+					System.err.println("Unknown option " + arg);
+					System.err.println("Options: --calls=N --rate=CPS --soak=SECS --setup-timeout=SECS --peers=N --host=HOST --port=PORT "
+							+ "--user=USER --password=PASSWORD --dial=NUMBER --format=LE_16_BIT_LINEAR|G711_MULAW|G711_ALAW "
+							+ "--mode=THREAD_PER_CALL|EVENT_LOOP|VIRTUAL_THREAD --shards=N --shared-hub --trunk[=TRUNK|TRUNK_TIMESTAMPED] --paced --read-audio[=MSECS]");
+					System.exit(1);
+			}
+		}
+
+		if (host != null)
+		{
+			generator.setServer(host, port);
+		}
+
+		generator.setCredentials(username, password);
+		generator.run();
+		System.exit(0);
+	}
+
+}
@@ -0,0 +1,147 @@
+package com.misternerd.djiax.benchmark.load;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Samples CPU time, threads, heap and GC of the running JVM. The CPU time of
+ * threads whose name starts with the excluded prefix is reported separately,
+ * so an embedded server doesn't count as load of the client.
+ */
+class ProcessStatistics
+{
+
+	private final String excludedThreadPrefix;
+
+	private final OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+
+	/**
+	 * @param excludedThreadPrefix Name prefix of the threads not to count as
+	 *            client, null to count all
+	 */
+	ProcessStatistics(String excludedThreadPrefix)
+	{
+		this.excludedThreadPrefix = excludedThreadPrefix;
+	}
+
+
+	Sample sample()
+	{
+		Sample sample = new Sample();
+		sample.nanoTime = System.nanoTime();
+		sample.processCpuTime = getProcessCpuTime();
+		sample.excludedCpuTime = getExcludedCpuTime();
+		sample.threadCount = threads.getThreadCount();
+		sample.heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			sample.gcCount += Math.max(0, collector.getCollectionCount());
+			sample.gcTime += Math.max(0, collector.getCollectionTime());
+		}
+
+		return sample;
+	}
+
+
+	int getAvailableProcessors()
+	{
+		return operatingSystem.getAvailableProcessors();
+	}
+
+
+	/**
+	 * CPU time of the whole process in nanos, -1 if the JVM doesn't tell.
+	 */
+	private long getProcessCpuTime()
+	{
+		if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean)
+		{
+			return ((com.sun.management.OperatingSystemMXBean) operatingSystem).getProcessCpuTime();
+		}
+
+		return -1;
+	}
+
+
+	private long getExcludedCpuTime()
+	{
+		if (excludedThreadPrefix == null || !threads.isThreadCpuTimeSupported())
+		{
+			return 0;
+		}
+
+		long total = 0;
+
+		for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds()))
+		{
+			if (info != null && info.getThreadName().startsWith(excludedThreadPrefix))
+			{
+				total += Math.max(0, threads.getThreadCpuTime(info.getThreadId()));
+			}
+		}
+
+		return total;
+	}
+
+
+	/**
+	 * The values at one point in time, differences of two samples give the
+	 * rates in between.
+	 */
+	static class Sample
+	{
+
+		long nanoTime;
+
+		long processCpuTime;
+
+		long excludedCpuTime;
+
+		int threadCount;
+
+		long heapUsed;
+
+		long gcCount;
+
+		long gcTime;
+
+
+		/**
+		 * CPU cores used by the client since the earlier sample, -1 if unknown.
+		 */
+		double getClientCores(Sample earlier)
+		{
+			if (processCpuTime < 0 || earlier.processCpuTime < 0 || nanoTime == earlier.nanoTime)
+			{
+				return -1;
+			}
+
+			long cpu = (processCpuTime - earlier.processCpuTime) - (excludedCpuTime - earlier.excludedCpuTime);
+
+			return (double) cpu / (nanoTime - earlier.nanoTime);
+		}
+
+
+		/**
+		 * CPU cores used by the excluded threads since the earlier sample.
+		 */
+		double getExcludedCores(Sample earlier)
+		{
+			if (nanoTime == earlier.nanoTime)
+			{
+				return 0;
+			}
+
+			return (double) (excludedCpuTime - earlier.excludedCpuTime) / (nanoTime - earlier.nanoTime);
+		}
+
+	}
+
+}
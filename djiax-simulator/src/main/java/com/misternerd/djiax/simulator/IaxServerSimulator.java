@@ -0,0 +1,1078 @@
+package com.misternerd.djiax.simulator;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.misternerd.djiax.exception.InvalidArgumentException;
+import com.misternerd.djiax.io.frame.FrameBase;
+import com.misternerd.djiax.io.frame.FrameDecoder;
+import com.misternerd.djiax.io.frame.FullFrame;
+import com.misternerd.djiax.io.frame.full.IaxFrame;
+import com.misternerd.djiax.io.frame.ie.Md5Result;
+
+/**
+ * A local stand-in for an IAX2 server, so tests and benchmarks can run without
+ * an Asterisk. It speaks the part of the protocol djiax uses: registration
+ * with MD5 challenge (REGREQ, REGAUTH, REGACK, REGREJ, REGREL), calls (NEW,
+ * AUTHREQ, AUTHREP, ACCEPT, RINGING, ANSWER, REJECT, HANGUP), audio as
+ * VoiceFrames, MiniFrames and trunk frames, PING, POKE and LAGRQ. The frames
+ * are parsed and built with the library's own codecs.
+ *
+ * The simulator binds to the loopback interface. All protocol handling runs
+ * on a single worker thread, a second thread only reads from the socket. Its
+ * behaviour can be changed while it is running: registrations and calls can
+ * be rejected, and the network conditions of either direction add loss, delay,
+ * jitter and reordering.
+ *
+ * <pre>
+ * IaxServerSimulator server = new IaxServerSimulator("user", "secret");
+ * server.setMediaSource(MediaSource.ECHO);
+ * server.getInboundConditions().setLossProbability(0.01);
+ * server.start();
+ * IaxPeer peer = IaxPeerFactory.createNewPeer("127.0.0.1", server.getPort(), "user", "secret", observer);
+ * </pre>
+ */
+public class IaxServerSimulator
+{
+
+	private static final Logger logger = LoggerFactory.getLogger(IaxServerSimulator.class);
+
+	private static final int MAX_DATAGRAM_LENGTH = 4096;
+
+	/**
+	 * All calls send their audio at the same 20 msec beat, the default buffer
+	 * overflows at a few hundred calls.
+	 */
+	private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+	private static final long MEDIA_INTERVAL = 20;
+
+	private static final long RETRANSMIT_INTERVAL = 100;
+
+	private static final int MAX_CALL_NUMBER = 0x7FFF;
+
+	private final String username;
+
+	private final String password;
+
+	private final NetworkConditions inboundConditions = new NetworkConditions();
+
+	private final NetworkConditions outboundConditions = new NetworkConditions();
+
+	private final Random random = new Random();
+
+	private volatile int port;
+
+	private volatile boolean authenticationRequired = true;
+
+	private volatile boolean registrationRejected;
+
+	private volatile double callRejectProbability;
+
+	private volatile long answerDelay;
+
+	private volatile MediaSource mediaSource = MediaSource.ECHO;
+
+	private volatile double toneFrequency = 440;
+
+	private volatile long pingInterval;
+
+	private DatagramChannel channel;
+
+	private Thread receiverThread;
+
+	private ScheduledExecutorService worker;
+
+	private volatile boolean running;
+
+	/*
+	 * Owned by the worker thread
+	 */
+
+	private final Map<Short, ServerDialog> dialogsByServerCallNumber = new HashMap<>();
+
+	private final Map<ClientKey, ServerDialog> dialogsByClient = new HashMap<>();
+
+	private final FrameDecoder decoder = new FrameDecoder();
+
+	private final MessageDigest messageDigest;
+
+	private int nextCallNumber = 1;
+
+	private InetSocketAddress trunkSource;
+
+	private final FrameDecoder.TrunkEntryHandler trunkEntryHandler = new FrameDecoder.TrunkEntryHandler()
+	{
+
+		@Override
+		public void handleTrunkEntry(short sourceCallNumber, int timestamp, ByteBuffer buffer, int offset, int length)
+		{
+			ServerCall call = findCall(trunkSource, sourceCallNumber);
+
+			if (call != null)
+			{
+				byte[] data = new byte[length];
+
+				for (int i = 0; i < length; i++)
+				{
+					data[i] = buffer.get(offset + i);
+				}
+
+				call.receiveMedia(data);
+			}
+		}
+
+	};
+
+	/*
+	 * Statistics
+	 */
+
+	private final AtomicLong registrations = new AtomicLong();
+
+	private final AtomicLong callsAccepted = new AtomicLong();
+
+	private final AtomicLong callsRejected = new AtomicLong();
+
+	private final AtomicLong callsAnswered = new AtomicLong();
+
+	private final AtomicInteger activeCalls = new AtomicInteger();
+
+	private final AtomicLong mediaFramesReceived = new AtomicLong();
+
+	private final AtomicLong mediaFramesSent = new AtomicLong();
+
+	private final AtomicLong receiverReports = new AtomicLong();
+
+	private final AtomicLong datagramsDropped = new AtomicLong();
+
+
+	/**
+	 * @param username The only peer the simulator accepts
+	 * @param password Its password for the MD5 challenges
+	 */
+	public IaxServerSimulator(String username, String password)
+	{
+		this.username = username;
+		this.password = password;
+
+		try
+		{
+			this.messageDigest = MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException("Failed to init MD5-Digest", e);
+		}
+	}
+
+
+	/**
+	 * Binds the socket and starts the threads.
+	 */
+	public synchronized void start() throws IOException
+	{
+		if (running)
+		{
+			return;
+		}
+
+		channel = DatagramChannel.open();
+		channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+		channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		port = channel.socket().getLocalPort();
+
+		worker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "IaxServerSimulator-" + port);
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		});
+
+		worker.scheduleAtFixedRate(new Runnable()
+		{
+
+			@Override
+			public void run()
+			{
+				tick();
+			}
+
+		}, MEDIA_INTERVAL, MEDIA_INTERVAL, TimeUnit.MILLISECONDS);
+
+		worker.scheduleAtFixedRate(new Runnable()
+		{
+
+			@Override
+			public void run()
+			{
+				retransmit();
+			}
+
+		}, RETRANSMIT_INTERVAL, RETRANSMIT_INTERVAL, TimeUnit.MILLISECONDS);
+
+		running = true;
+
+		receiverThread = new Thread(new Runnable()
+		{
+
+			@Override
+			public void run()
+			{
+				receive();
+			}
+
+		}, "IaxServerSimulator-" + port + "-receiver");
+		receiverThread.setDaemon(true);
+		receiverThread.start();
+
+		logger.info("IAX2 server simulator listening on {}", getAddress());
+	}
+
+
+	/**
+	 * Stops the threads and closes the socket, all dialogs are dropped without
+	 * notice to the clients.
+	 */
+	public synchronized void stop()
+	{
+		if (!running)
+		{
+			return;
+		}
+
+		running = false;
+		worker.shutdownNow();
+
+		try
+		{
+			channel.close();
+			receiverThread.join(1000);
+			worker.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		catch (IOException e)
+		{
+			logger.warn("Failed to close socket:", e);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		dialogsByServerCallNumber.clear();
+		dialogsByClient.clear();
+		activeCalls.set(0);
+	}
+
+
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+
+	/**
+	 * Sends a HANGUP to every call.
+	 */
+	public void hangupAllCalls()
+	{
+		execute(new Runnable()
+		{
+
+			@Override
+			public void run()
+			{
+				for (ServerDialog dialog : dialogsByServerCallNumber.values())
+				{
+					if (dialog instanceof ServerCall)
+					{
+						((ServerCall) dialog).hangup();
+					}
+				}
+			}
+
+		});
+	}
+
+
+	/*
+	 * Socket
+	 */
+
+	private void receive()
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_LENGTH);
+
+		while (running)
+		{
+			try
+			{
+				buffer.clear();
+				final InetSocketAddress from = (InetSocketAddress) channel.receive(buffer);
+				buffer.flip();
+
+				final byte[] data = new byte[buffer.remaining()];
+				buffer.get(data);
+
+				long delay = inboundConditions.nextDelay();
+
+				if (delay < 0)
+				{
+					datagramsDropped.incrementAndGet();
+					continue;
+				}
+
+				schedule(new Runnable()
+				{
+
+					@Override
+					public void run()
+					{
+						handleDatagram(data, from);
+					}
+
+				}, delay);
+			}
+			catch (ClosedChannelException e)
+			{
+				break;
+			}
+			catch (IOException e)
+			{
+				logger.warn("Failed to receive datagram:", e);
+			}
+		}
+	}
+
+
+	/**
+	 * Sends a frame to a client, subject to the outbound network conditions.
+	 * The frame is serialized right away, so it can be changed afterwards.
+	 */
+	void send(FrameBase frame, final InetSocketAddress to)
+	{
+		final byte[] data = frame.serialize();
+		long delay = outboundConditions.nextDelay();
+
+		if (delay < 0)
+		{
+			datagramsDropped.incrementAndGet();
+			return;
+		}
+
+		if (delay == 0)
+		{
+			sendDatagram(data, to);
+			return;
+		}
+
+		schedule(new Runnable()
+		{
+
+			@Override
+			public void run()
+			{
+				sendDatagram(data, to);
+			}
+
+		}, delay);
+	}
+
+
+	private void sendDatagram(byte[] data, InetSocketAddress to)
+	{
+		try
+		{
+			channel.send(ByteBuffer.wrap(data), to);
+		}
+		catch (IOException e)
+		{
+			if (running)
+			{
+				logger.warn("Failed to send datagram to " + to + ":", e);
+			}
+		}
+	}
+
+
+	private void execute(Runnable task)
+	{
+		schedule(task, 0);
+	}
+
+
+	private void schedule(Runnable task, long delay)
+	{
+		if (!running)
+		{
+			return;
+		}
+
+		try
+		{
+			if (delay > 0)
+			{
+				worker.schedule(task, delay, TimeUnit.MILLISECONDS);
+			}
+			else
+			{
+				worker.execute(task);
+			}
+		}
+		catch (RejectedExecutionException e)
+		{
+			// stopped in the meantime
+		}
+	}
+
+
+	/*
+	 * Dispatching, all on the worker thread
+	 */
+
+	private void handleDatagram(byte[] data, InetSocketAddress from)
+	{
+		decoder.wrap(ByteBuffer.wrap(data), 0, data.length);
+
+		if (!decoder.hasCompleteHeader())
+		{
+			logger.debug("Discarding short datagram of {} bytes from {}", data.length, from);
+			return;
+		}
+
+		try
+		{
+			if (decoder.isMetaFrame())
+			{
+				if (decoder.isTrunkFrame())
+				{
+					trunkSource = from;
+					decoder.forEachTrunkEntry(trunkEntryHandler);
+				}
+
+				return;
+			}
+
+			if (decoder.isMiniFrame())
+			{
+				ServerCall call = findCall(from, decoder.getSourceCallNumber());
+
+				if (call != null)
+				{
+					call.receiveMedia(decoder.getPayload());
+				}
+
+				return;
+			}
+
+			handleFullFrame(decoder.toFullFrame(), from);
+		}
+		catch (InvalidArgumentException e)
+		{
+			logger.debug("Discarding invalid datagram from {}: {}", from, e.getMessage());
+		}
+		catch (RuntimeException e)
+		{
+			logger.error("Failed to handle datagram from " + from + ":", e);
+		}
+	}
+
+
+	private void handleFullFrame(FullFrame frame, InetSocketAddress from)
+	{
+		ServerDialog dialog;
+
+		if (frame.getDestinationCallNumber() != 0)
+		{
+			dialog = dialogsByServerCallNumber.get(frame.getDestinationCallNumber());
+		}
+		else
+		{
+			dialog = dialogsByClient.get(new ClientKey(from, frame.getSourceCallNumber()));
+
+			// a new request from the same call number starts a new dialog, e.g. a registration refresh
+			if (dialog == null || !frame.isRetransmitted())
+			{
+				dialog = createDialog(frame, from);
+			}
+		}
+
+		if (dialog == null)
+		{
+			logger.debug("No dialog for {} from {}", frame, from);
+			return;
+		}
+
+		dialog.receiveFrame(frame, from);
+	}
+
+
+	private ServerDialog createDialog(FullFrame frame, InetSocketAddress from)
+	{
+		if (!(frame instanceof IaxFrame))
+		{
+			return null;
+		}
+
+		short serverCallNumber = allocateCallNumber();
+
+		if (serverCallNumber < 0)
+		{
+			logger.warn("No call number left for {} from {}", frame, from);
+			return null;
+		}
+
+		ServerDialog dialog;
+
+		switch (((IaxFrame) frame).getIaxClass())
+		{
+			case NEW:
+			{
+				dialog = new ServerCall(this, serverCallNumber, frame.getSourceCallNumber(), from);
+				break;
+			}
+			case REGREQ:
+			case REGREL:
+			case PING:
+			case POKE:
+			case LAGRQ:
+			{
+				dialog = new ServerRegistration(this, serverCallNumber, frame.getSourceCallNumber(), from);
+				break;
+			}
+			default:
+			{
+				return null;
+			}
+		}
+
+		ServerDialog replaced = dialogsByClient.put(new ClientKey(from, frame.getSourceCallNumber()), dialog);
+
+		if (replaced != null)
+		{
+			removeDialog(replaced);
+		}
+
+		dialogsByServerCallNumber.put(serverCallNumber, dialog);
+
+		return dialog;
+	}
+
+
+	private short allocateCallNumber()
+	{
+		for (int i = 0; i < MAX_CALL_NUMBER; i++)
+		{
+			short candidate = (short) nextCallNumber;
+			nextCallNumber = nextCallNumber % MAX_CALL_NUMBER + 1;
+
+			if (!dialogsByServerCallNumber.containsKey(candidate))
+			{
+				return candidate;
+			}
+		}
+
+		return -1;
+	}
+
+
+	private void removeDialog(ServerDialog dialog)
+	{
+		dialogsByServerCallNumber.remove(dialog.getServerCallNumber());
+
+		ClientKey key = new ClientKey(dialog.getClientAddress(), dialog.getClientCallNumber());
+
+		if (dialogsByClient.get(key) == dialog)
+		{
+			dialogsByClient.remove(key);
+		}
+
+		// a replaced call doesn't get a HANGUP, but it's not active anymore
+		if (!dialog.isEnded())
+		{
+			dialog.end();
+		}
+	}
+
+
+	private ServerCall findCall(InetSocketAddress from, short clientCallNumber)
+	{
+		ServerDialog dialog = dialogsByClient.get(new ClientKey(from, clientCallNumber));
+
+		return dialog instanceof ServerCall ? (ServerCall) dialog : null;
+	}
+
+
+	private void tick()
+	{
+		for (ServerDialog dialog : dialogsByServerCallNumber.values())
+		{
+			try
+			{
+				dialog.tick();
+			}
+			catch (RuntimeException e)
+			{
+				// an exception would cancel the periodic task
+				logger.error("Failed to tick call " + dialog.getServerCallNumber() + ":", e);
+			}
+		}
+	}
+
+
+	private void retransmit()
+	{
+		long now = System.currentTimeMillis();
+
+		for (ServerDialog dialog : new ArrayList<>(dialogsByServerCallNumber.values()))
+		{
+			dialog.retransmit(now);
+
+			if (dialog.isFinished())
+			{
+				removeDialog(dialog);
+			}
+		}
+	}
+
+
+	/*
+	 * Callbacks of the dialogs
+	 */
+
+	String getUsername()
+	{
+		return username;
+	}
+
+
+	String nextChallenge()
+	{
+		return String.valueOf(100000000 + random.nextInt(900000000));
+	}
+
+
+	boolean isValidMd5Result(String challenge, Md5Result md5Result)
+	{
+		try
+		{
+			byte[] digest = messageDigest.digest((challenge + password).getBytes("UTF-8"));
+			StringBuilder expected = new StringBuilder();
+
+			for (byte value : digest)
+			{
+				expected.append(String.format("%02x", value & 0xFF));
+			}
+
+			return expected.toString().equals(md5Result.getMd5Result());
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			return false;
+		}
+	}
+
+
+	boolean nextCallRejected()
+	{
+		double probability = callRejectProbability;
+
+		return probability > 0 && random.nextDouble() < probability;
+	}
+
+
+	void peerRegistered()
+	{
+		registrations.incrementAndGet();
+	}
+
+
+	void callRejected()
+	{
+		callsRejected.incrementAndGet();
+	}
+
+
+	void callAccepted(final ServerCall call)
+	{
+		callsAccepted.incrementAndGet();
+
+		Runnable answer = new Runnable()
+		{
+
+			@Override
+			public void run()
+			{
+				call.answer();
+			}
+
+		};
+
+		if (answerDelay > 0)
+		{
+			schedule(answer, answerDelay);
+		}
+		else
+		{
+			answer.run();
+		}
+	}
+
+
+	void callAnswered()
+	{
+		callsAnswered.incrementAndGet();
+		activeCalls.incrementAndGet();
+	}
+
+
+	void callEnded()
+	{
+		activeCalls.decrementAndGet();
+	}
+
+
+	void mediaFrameReceived()
+	{
+		mediaFramesReceived.incrementAndGet();
+	}
+
+
+	void mediaFrameSent()
+	{
+		mediaFramesSent.incrementAndGet();
+	}
+
+
+	void receiverReportReceived(IaxFrame pong)
+	{
+		receiverReports.incrementAndGet();
+	}
+
+
+	/*
+	 * Configuration
+	 */
+
+	public int getPort()
+	{
+		return port;
+	}
+
+
+	/**
+	 * @param port The UDP port to bind to, 0 (the default) picks a free one.
+	 *            Only takes effect with the next start().
+	 */
+	public void setPort(int port)
+	{
+		this.port = port;
+	}
+
+
+	public InetSocketAddress getAddress()
+	{
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+	}
+
+
+	/**
+	 * Conditions of the datagrams from the clients to the simulator.
+	 */
+	public NetworkConditions getInboundConditions()
+	{
+		return inboundConditions;
+	}
+
+
+	/**
+	 * Conditions of the datagrams from the simulator to the clients.
+	 */
+	public NetworkConditions getOutboundConditions()
+	{
+		return outboundConditions;
+	}
+
+
+	public boolean isAuthenticationRequired()
+	{
+		return authenticationRequired;
+	}
+
+
+	/**
+	 * @param authenticationRequired Whether registrations and calls need to
+	 *            pass an MD5 challenge first, true by default
+	 */
+	public void setAuthenticationRequired(boolean authenticationRequired)
+	{
+		this.authenticationRequired = authenticationRequired;
+	}
+
+
+	public boolean isRegistrationRejected()
+	{
+		return registrationRejected;
+	}
+
+
+	/**
+	 * @param registrationRejected Whether every REGREQ is answered with a
+	 *            REGREJ
+	 */
+	public void setRegistrationRejected(boolean registrationRejected)
+	{
+		this.registrationRejected = registrationRejected;
+	}
+
+
+	public double getCallRejectProbability()
+	{
+		return callRejectProbability;
+	}
+
+
+	/**
+	 * @param callRejectProbability Share of the NEWs answered with a REJECT,
+	 *            between 0 and 1
+	 */
+	public void setCallRejectProbability(double callRejectProbability)
+	{
+		this.callRejectProbability = callRejectProbability;
+	}
+
+
+	public long getAnswerDelay()
+	{
+		return answerDelay;
+	}
+
+
+	/**
+	 * @param answerDelay Msecs between ACCEPT and ANSWER, the client sees the
+	 *            call ringing meanwhile
+	 */
+	public void setAnswerDelay(long answerDelay)
+	{
+		this.answerDelay = answerDelay;
+	}
+
+
+	public MediaSource getMediaSource()
+	{
+		return mediaSource;
+	}
+
+
+	/**
+	 * @param mediaSource What to send to answered calls, applies to calls
+	 *            answered afterwards
+	 */
+	public void setMediaSource(MediaSource mediaSource)
+	{
+		this.mediaSource = mediaSource;
+	}
+
+
+	public double getToneFrequency()
+	{
+		return toneFrequency;
+	}
+
+
+	public void setToneFrequency(double toneFrequency)
+	{
+		this.toneFrequency = toneFrequency;
+	}
+
+
+	public long getPingInterval()
+	{
+		return pingInterval;
+	}
+
+
+	/**
+	 * @param pingInterval Msecs between the PINGs sent to answered calls, 0
+	 *            (the default) sends none. The PONGs carry the clients'
+	 *            receiver reports.
+	 */
+	public void setPingInterval(long pingInterval)
+	{
+		this.pingInterval = pingInterval;
+	}
+
+
+	/*
+	 * Statistics
+	 */
+
+	/**
+	 * Successful REGREQs, refreshes included.
+	 */
+	public long getRegistrations()
+	{
+		return registrations.get();
+	}
+
+
+	public long getCallsAccepted()
+	{
+		return callsAccepted.get();
+	}
+
+
+	public long getCallsRejected()
+	{
+		return callsRejected.get();
+	}
+
+
+	public long getCallsAnswered()
+	{
+		return callsAnswered.get();
+	}
+
+
+	/**
+	 * Calls answered and not hung up yet.
+	 */
+	public int getActiveCalls()
+	{
+		return activeCalls.get();
+	}
+
+
+	public long getMediaFramesReceived()
+	{
+		return mediaFramesReceived.get();
+	}
+
+
+	public long getMediaFramesSent()
+	{
+		return mediaFramesSent.get();
+	}
+
+
+	/**
+	 * PONGs that carried receiver statistics.
+	 */
+	public long getReceiverReports()
+	{
+		return receiverReports.get();
+	}
+
+
+	/**
+	 * Datagrams of both directions lost to the network conditions.
+	 */
+	public long getDatagramsDropped()
+	{
+		return datagramsDropped.get();
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return String.format("IaxServerSimulator(port=%d, registrations=%d, calls=%d/%d/%d, active=%d, media=%d/%d, dropped=%d)", port,
+				getRegistrations(), getCallsAccepted(), getCallsRejected(), getCallsAnswered(), getActiveCalls(),
+				getMediaFramesReceived(), getMediaFramesSent(), getDatagramsDropped());
+	}
+
+
+	/**
+	 * Runs the simulator until it gets killed:
+	 *
+	 * java IaxServerSimulator [port [username [password [NONE|ECHO|TONE]]]]
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		IaxServerSimulator server = new IaxServerSimulator(args.length > 1 ? args[1] : "djiax", args.length > 2 ? args[2] : "djiax");
+		server.setPort(args.length > 0 ? Integer.parseInt(args[0]) : 4569);
+
+		if (args.length > 3)
+		{
+			server.setMediaSource(MediaSource.valueOf(args[3]));
+		}
+
+		server.start();
+
+		while (true)
+		{
+			Thread.sleep(10000);
+			logger.info("{}", server);
+		}
+	}
+
+
+	/**
+	 * A client's call number is only unique together with its address.
+	 */
+	private static final class ClientKey
+	{
+
+		private final InetSocketAddress address;
+
+		private final short callNumber;
+
+
+		ClientKey(InetSocketAddress address, short callNumber)
+		{
+			this.address = address;
+			this.callNumber = callNumber;
+		}
+
+
+		@Override
+		public int hashCode()
+		{
+			return address.hashCode() * 31 + callNumber;
+		}
+
+
+		@Override
+		public boolean equals(Object other)
+		{
+			if (!(other instanceof ClientKey))
+			{
+				return false;
+			}
+
+			ClientKey key = (ClientKey) other;
+
+			return callNumber == key.callNumber && address.equals(key.address);
+		}
+
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.misternerd.djiax.simulator;
+
+/**
+ * What the simulator sends as audio once a call has been answered.
+ */
+public enum MediaSource
+{
+
+	/**
+	 * No audio at all, received audio is only counted.
+	 */
+	NONE,
+
+	/**
+	 * Every received audio frame is sent back to the client as it arrives.
+	 */
+	ECHO,
+
+	/**
+	 * A 20 msec frame of a sine tone every 20 msecs, in the call's format.
+	 */
+	TONE;
+
+}
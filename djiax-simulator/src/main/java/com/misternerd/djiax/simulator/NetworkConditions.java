@@ -0,0 +1,161 @@
+package com.misternerd.djiax.simulator;
+
+import java.util.Random;
+
+/**
+ * Impairments the simulator applies to the datagrams of one direction. Every
+ * datagram is dropped with the loss probability, or else held back for the
+ * delay plus a random share of the jitter. With the reorder probability, a
+ * datagram is held back for the reorder delay on top, so the ones after it
+ * overtake it.
+ *
+ * The values can be changed while the simulator is running, they apply to the
+ * datagrams that pass afterwards.
+ */
+public class NetworkConditions
+{
+
+	private final Random random = new Random();
+
+	private volatile double lossProbability;
+
+	private volatile long delay;
+
+	private volatile long jitter;
+
+	private volatile double reorderProbability;
+
+	private volatile long reorderDelay = 40;
+
+
+	/**
+	 * Decides the fate of the next datagram.
+	 *
+	 * @return -1 to drop the datagram, otherwise the msecs to hold it back
+	 */
+	long nextDelay()
+	{
+		if (lossProbability > 0 && random.nextDouble() < lossProbability)
+		{
+			return -1;
+		}
+
+		long result = delay;
+
+		if (jitter > 0)
+		{
+			result += (long) (random.nextDouble() * jitter);
+		}
+
+		if (reorderProbability > 0 && random.nextDouble() < reorderProbability)
+		{
+			result += reorderDelay;
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Passes every datagram on right away.
+	 */
+	public void reset()
+	{
+		this.lossProbability = 0;
+		this.delay = 0;
+		this.jitter = 0;
+		this.reorderProbability = 0;
+	}
+
+
+	/**
+	 * Makes the random decisions repeatable.
+	 */
+	public void setSeed(long seed)
+	{
+		random.setSeed(seed);
+	}
+
+
+	public double getLossProbability()
+	{
+		return lossProbability;
+	}
+
+
+	/**
+	 * @param lossProbability Between 0 (no loss) and 1 (drop everything)
+	 */
+	public void setLossProbability(double lossProbability)
+	{
+		this.lossProbability = lossProbability;
+	}
+
+
+	public long getDelay()
+	{
+		return delay;
+	}
+
+
+	/**
+	 * @param delay One-way delay in msecs
+	 */
+	public void setDelay(long delay)
+	{
+		this.delay = delay;
+	}
+
+
+	public long getJitter()
+	{
+		return jitter;
+	}
+
+
+	/**
+	 * @param jitter Upper bound of the random delay added to each datagram,
+	 *            in msecs
+	 */
+	public void setJitter(long jitter)
+	{
+		this.jitter = jitter;
+	}
+
+
+	public double getReorderProbability()
+	{
+		return reorderProbability;
+	}
+
+
+	public void setReorderProbability(double reorderProbability)
+	{
+		this.reorderProbability = reorderProbability;
+	}
+
+
+	public long getReorderDelay()
+	{
+		return reorderDelay;
+	}
+
+
+	/**
+	 * @param reorderDelay Msecs a reordered datagram is held back, 40 by
+	 *            default, i.e. two frames of audio overtake it
+	 */
+	public void setReorderDelay(long reorderDelay)
+	{
+		this.reorderDelay = reorderDelay;
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return String.format("NetworkConditions(loss=%.3f, delay=%d, jitter=%d, reorder=%.3f/%d)", lossProbability, delay, jitter,
+				reorderProbability, reorderDelay);
+	}
+
+}
@@ -0,0 +1,343 @@
+package com.misternerd.djiax.simulator;
+
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.misternerd.djiax.exception.InvalidArgumentException;
+import com.misternerd.djiax.io.frame.FullFrame;
+import com.misternerd.djiax.io.frame.InformationElementType;
+import com.misternerd.djiax.io.frame.MiniFrame;
+import com.misternerd.djiax.io.frame.full.ControlFrameSubclass;
+import com.misternerd.djiax.io.frame.full.IaxFrame;
+import com.misternerd.djiax.io.frame.full.IaxFrameSubclass;
+import com.misternerd.djiax.io.frame.full.VoiceFrame;
+import com.misternerd.djiax.io.frame.ie.Authmethods;
+import com.misternerd.djiax.io.frame.ie.Capability;
+import com.misternerd.djiax.io.frame.ie.CauseCode;
+import com.misternerd.djiax.io.frame.ie.Challenge;
+import com.misternerd.djiax.io.frame.ie.Format;
+import com.misternerd.djiax.io.frame.ie.Md5Result;
+import com.misternerd.djiax.io.frame.ie.Username;
+import com.misternerd.djiax.util.MediaFormat;
+
+/**
+ * The server side of a call: NEW, AUTHREQ and AUTHREP, ACCEPT, RINGING and
+ * ANSWER after the configured delay, then audio from the media source until
+ * either side hangs up.
+ */
+class ServerCall extends ServerDialog
+{
+
+	private static final Logger logger = LoggerFactory.getLogger(ServerCall.class);
+
+	private MediaFormat format;
+
+	private String challenge;
+
+	private boolean accepted;
+
+	private boolean answered;
+
+	private ToneGenerator toneGenerator;
+
+	private boolean voiceStarted;
+
+	private long lastMediaTimestamp;
+
+	private long lastPingTime;
+
+
+	ServerCall(IaxServerSimulator server, short serverCallNumber, short clientCallNumber, InetSocketAddress clientAddress)
+	{
+		super(server, serverCallNumber, clientCallNumber, clientAddress);
+	}
+
+
+	@Override
+	protected boolean handleFrame(FullFrame frame)
+	{
+		if (frame instanceof VoiceFrame)
+		{
+			receiveMedia(frame.getData());
+			return false;
+		}
+
+		if (frame instanceof IaxFrame)
+		{
+			IaxFrame iaxFrame = (IaxFrame) frame;
+
+			switch (iaxFrame.getIaxClass())
+			{
+				case NEW:
+				{
+					handleNew(iaxFrame);
+					return true;
+				}
+				case AUTHREP:
+				{
+					handleAuthRep(iaxFrame);
+					return true;
+				}
+				case HANGUP:
+				{
+					logger.debug("Call {} hung up by client", serverCallNumber);
+					end();
+					return false;
+				}
+				default:
+				{
+					break;
+				}
+			}
+		}
+
+		return handleCommonFrame(frame);
+	}
+
+
+	private void handleNew(IaxFrame frame)
+	{
+		if (accepted || challenge != null)
+		{
+			return;
+		}
+
+		this.format = negotiateFormat(frame);
+
+		if (format == null)
+		{
+			sendHangup(IaxFrameSubclass.REJECT, "No compatible format", CauseCode.Cause.BEARER_CAPABILITY_NOT_AVAILABLE);
+			server.callRejected();
+			return;
+		}
+
+		if (server.nextCallRejected())
+		{
+			sendHangup(IaxFrameSubclass.REJECT, "Call rejected", CauseCode.Cause.CALL_REJECTED);
+			server.callRejected();
+			return;
+		}
+
+		if (!server.isAuthenticationRequired())
+		{
+			accept();
+			return;
+		}
+
+		challenge = server.nextChallenge();
+
+		IaxFrame authreq = newIaxFrame(IaxFrameSubclass.AUTHREQ);
+		authreq.addInformationElement(new Authmethods(Authmethods.METHOD_MD5));
+
+		try
+		{
+			authreq.addInformationElement(new Challenge(challenge));
+			authreq.addInformationElement(new Username(server.getUsername()));
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			logger.error("Failed to encode challenge {}", challenge);
+		}
+
+		reply(authreq);
+	}
+
+
+	private void handleAuthRep(IaxFrame frame)
+	{
+		if (accepted || challenge == null)
+		{
+			return;
+		}
+
+		Md5Result md5Result = getOptionalElement(frame, InformationElementType.MD5_RESULT, Md5Result.class);
+
+		if (md5Result == null || !server.isValidMd5Result(challenge, md5Result))
+		{
+			sendHangup(IaxFrameSubclass.REJECT, "Authentication failed", CauseCode.Cause.CALL_REJECTED);
+			server.callRejected();
+			return;
+		}
+
+		accept();
+	}
+
+
+	/**
+	 * Takes the client's preferred format, unless the tone can't be generated
+	 * in it, then the first of its capabilities the tone supports.
+	 */
+	private MediaFormat negotiateFormat(IaxFrame frame)
+	{
+		Format preferred = getOptionalElement(frame, InformationElementType.FORMAT, Format.class);
+
+		if (server.getMediaSource() != MediaSource.TONE)
+		{
+			return preferred != null ? preferred.getFormat() : MediaFormat.LE_16_BIT_LINEAR;
+		}
+
+		if (preferred != null && ToneGenerator.isSupported(preferred.getFormat()))
+		{
+			return preferred.getFormat();
+		}
+
+		Capability capability = getOptionalElement(frame, InformationElementType.CAPABILITY, Capability.class);
+
+		if (capability != null)
+		{
+			for (MediaFormat candidate : capability.getCapabilites())
+			{
+				if (ToneGenerator.isSupported(candidate))
+				{
+					return candidate;
+				}
+			}
+		}
+
+		return null;
+	}
+
+
+	private void accept()
+	{
+		accepted = true;
+		challenge = null;
+
+		IaxFrame acceptFrame = newIaxFrame(IaxFrameSubclass.ACCEPT);
+		acceptFrame.addInformationElement(new Format(format));
+		reply(acceptFrame);
+		send(newControlFrame(ControlFrameSubclass.RINGING));
+
+		server.callAccepted(this);
+	}
+
+
+	/**
+	 * Called by the simulator once the answer delay has passed.
+	 */
+	void answer()
+	{
+		if (isEnded() || answered)
+		{
+			return;
+		}
+
+		answered = true;
+		lastPingTime = System.currentTimeMillis();
+
+		if (server.getMediaSource() == MediaSource.TONE)
+		{
+			toneGenerator = new ToneGenerator(format, server.getToneFrequency(), 0.5);
+		}
+
+		send(newControlFrame(ControlFrameSubclass.ANSWER));
+		server.callAnswered();
+	}
+
+
+	/**
+	 * Hangs up from the server's side.
+	 */
+	void hangup()
+	{
+		if (!isEnded())
+		{
+			sendHangup(IaxFrameSubclass.HANGUP, "Normal clearing", CauseCode.Cause.NORMAL_CALL_CLEARING);
+		}
+	}
+
+
+	/**
+	 * Audio of the client, from a VoiceFrame, a MiniFrame or a trunk entry.
+	 */
+	void receiveMedia(byte[] data)
+	{
+		server.mediaFrameReceived();
+
+		if (answered && !isEnded() && data != null && server.getMediaSource() == MediaSource.ECHO)
+		{
+			sendMedia(data);
+		}
+	}
+
+
+	@Override
+	void tick()
+	{
+		if (!answered || isEnded())
+		{
+			return;
+		}
+
+		if (toneGenerator != null)
+		{
+			sendMedia(toneGenerator.nextFrame());
+		}
+
+		long pingInterval = server.getPingInterval();
+		long now = System.currentTimeMillis();
+
+		if (pingInterval > 0 && now - lastPingTime >= pingInterval)
+		{
+			lastPingTime = now;
+			send(newIaxFrame(IaxFrameSubclass.PING));
+		}
+	}
+
+
+	/**
+	 * The first frame of audio is a VoiceFrame, which tells the client the
+	 * format, the following are MiniFrames. When the lower 16 bits of the
+	 * timestamp wrap, another VoiceFrame carries the full timestamp.
+	 */
+	private void sendMedia(byte[] data)
+	{
+		long timestamp = Math.max(getTimestamp(), lastMediaTimestamp + 1);
+
+		if (!voiceStarted || (timestamp & 0xFFFF) < (lastMediaTimestamp & 0xFFFF))
+		{
+			try
+			{
+				send(new VoiceFrame(serverCallNumber, false, clientCallNumber, timestamp, nextOSeqNo(), getISeqNo(), format, data));
+				voiceStarted = true;
+			}
+			catch (InvalidArgumentException e)
+			{
+				logger.error("Failed to create VoiceFrame in format {}", format);
+				return;
+			}
+		}
+		else
+		{
+			server.send(new MiniFrame(serverCallNumber, (int) (timestamp & 0xFFFF), data), clientAddress);
+		}
+
+		lastMediaTimestamp = timestamp;
+		server.mediaFrameSent();
+	}
+
+
+	boolean isAnswered()
+	{
+		return answered;
+	}
+
+
+	@Override
+	protected void end()
+	{
+		boolean wasAnswered = answered && !isEnded();
+
+		super.end();
+		answered = false;
+
+		if (wasAnswered)
+		{
+			server.callEnded();
+		}
+	}
+
+}
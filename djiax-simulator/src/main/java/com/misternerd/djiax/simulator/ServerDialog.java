@@ -0,0 +1,427 @@
+package com.misternerd.djiax.simulator;
+
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.misternerd.djiax.exception.InformationElementNotFoundException;
+import com.misternerd.djiax.io.frame.FullFrame;
+import com.misternerd.djiax.io.frame.InformationElementType;
+import com.misternerd.djiax.io.frame.full.ControlFrame;
+import com.misternerd.djiax.io.frame.full.ControlFrameSubclass;
+import com.misternerd.djiax.io.frame.full.IaxFrame;
+import com.misternerd.djiax.io.frame.full.IaxFrameSubclass;
+import com.misternerd.djiax.io.frame.ie.Cause;
+import com.misternerd.djiax.io.frame.ie.CauseCode;
+
+/**
+ * The server side of one exchange with a client call number, i.e. a peer's
+ * registration or a call. Keeps the sequence numbers and the timestamps,
+ * answers retransmitted requests with the reply sent before and retransmits
+ * the frames the client has not acknowledged.
+ *
+ * Dialogs are only touched by the simulator's worker thread, so nothing in
+ * here is synchronized.
+ */
+abstract class ServerDialog
+{
+
+	private static final Logger logger = LoggerFactory.getLogger(ServerDialog.class);
+
+	private static final long RETRANSMIT_TIMEOUT = 500;
+
+	private static final int MAX_RETRANSMITS = 5;
+
+	protected final IaxServerSimulator server;
+
+	protected final short serverCallNumber;
+
+	protected final short clientCallNumber;
+
+	protected InetSocketAddress clientAddress;
+
+	private final long startTimestamp;
+
+	private int oSeqNo;
+
+	private int iSeqNo;
+
+	private final List<FullFrame> unacknowledgedFrames = new ArrayList<>();
+
+	/**
+	 * The oSeqNo of the last request handled and the reply sent to it, a
+	 * retransmission of the request gets the same reply again.
+	 */
+	private int lastRequestSeqNo = -1;
+
+	private FullFrame lastReply;
+
+	private boolean ended;
+
+
+	protected ServerDialog(IaxServerSimulator server, short serverCallNumber, short clientCallNumber, InetSocketAddress clientAddress)
+	{
+		this.server = server;
+		this.serverCallNumber = serverCallNumber;
+		this.clientCallNumber = clientCallNumber;
+		this.clientAddress = clientAddress;
+		this.startTimestamp = System.currentTimeMillis();
+	}
+
+
+	/**
+	 * Handles a FullFrame that passed the sequence checks.
+	 *
+	 * @return true if a reply has been sent, which acknowledges the frame,
+	 *         false if it still needs an ACK
+	 */
+	protected abstract boolean handleFrame(FullFrame frame);
+
+
+	/**
+	 * Called every 20 msecs by the simulator's media clock.
+	 */
+	void tick()
+	{
+	}
+
+
+	void receiveFrame(FullFrame frame, InetSocketAddress from)
+	{
+		this.clientAddress = from;
+
+		IaxFrameSubclass subclass = frame instanceof IaxFrame ? ((IaxFrame) frame).getIaxClass() : null;
+
+		// the client doesn't fill in the iSeqNo of its ACKs reliably, only their timestamp
+		if (subclass == IaxFrameSubclass.ACK)
+		{
+			releaseByTimestamp(frame.getTimestamp());
+			return;
+		}
+
+		releaseAcknowledged(frame.getISeqNo());
+
+		if (subclass == IaxFrameSubclass.VNAK)
+		{
+			resendUnacknowledged();
+			return;
+		}
+
+		int frameSeqNo = frame.getOSeqNo() & 0xFF;
+		int behind = (iSeqNo - frameSeqNo) & 0xFF;
+
+		// already handled: ACK it again, and repeat the reply if it was the last request
+		if (behind > 0 && behind < 128)
+		{
+			if (frameSeqNo == lastRequestSeqNo && lastReply != null)
+			{
+				lastReply.setRetransmitted(true);
+				server.send(lastReply, clientAddress);
+			}
+			else
+			{
+				sendAck(frame);
+			}
+
+			return;
+		}
+
+		iSeqNo = (frameSeqNo + 1) & 0xFF;
+		lastRequestSeqNo = frameSeqNo;
+		lastReply = null;
+
+		if (!handleFrame(frame))
+		{
+			sendAck(frame);
+		}
+	}
+
+
+	/**
+	 * Handles the frames every dialog understands.
+	 *
+	 * @return true if a reply has been sent
+	 */
+	protected boolean handleCommonFrame(FullFrame frame)
+	{
+		if (!(frame instanceof IaxFrame))
+		{
+			return false;
+		}
+
+		IaxFrame iaxFrame = (IaxFrame) frame;
+
+		switch (iaxFrame.getIaxClass())
+		{
+			case PING:
+			case POKE:
+			{
+				IaxFrame pong = newIaxFrame(IaxFrameSubclass.PONG, frame.getTimestamp());
+				reply(pong);
+				return true;
+			}
+			case LAGRQ:
+			{
+				IaxFrame lagrp = newIaxFrame(IaxFrameSubclass.LAGRP, frame.getTimestamp());
+				reply(lagrp);
+				return true;
+			}
+			case PONG:
+			{
+				if (iaxFrame.getInformationElements().size() > 0)
+				{
+					server.receiverReportReceived(iaxFrame);
+				}
+
+				return false;
+			}
+			default:
+			{
+				return false;
+			}
+		}
+	}
+
+
+	/**
+	 * Sends a frame that needs to be acknowledged by the client.
+	 */
+	protected void send(FullFrame frame)
+	{
+		frame.setRetransmitCount(0);
+		frame.updateNextRetransmitTimestamp(RETRANSMIT_TIMEOUT);
+		unacknowledgedFrames.add(frame);
+		server.send(frame, clientAddress);
+	}
+
+
+	/**
+	 * Sends the reply to the request just received.
+	 */
+	protected void reply(FullFrame frame)
+	{
+		lastReply = frame;
+		send(frame);
+	}
+
+
+	protected void sendAck(FullFrame frame)
+	{
+		IaxFrame ack = new IaxFrame(serverCallNumber, false, clientCallNumber, frame.getTimestamp(), (short) oSeqNo, (short) iSeqNo,
+				IaxFrameSubclass.ACK);
+		server.send(ack, clientAddress);
+	}
+
+
+	/**
+	 * Sends a HANGUP or a REJECT and ends the dialog.
+	 */
+	protected void sendHangup(IaxFrameSubclass subclass, String reason, CauseCode.Cause cause)
+	{
+		IaxFrame frame = newIaxFrame(subclass);
+
+		try
+		{
+			frame.addInformationElement(new Cause(reason));
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			logger.error("Failed to encode cause {}", reason);
+		}
+
+		frame.addInformationElement(new CauseCode(cause));
+
+		if (subclass == IaxFrameSubclass.REJECT)
+		{
+			reply(frame);
+		}
+		else
+		{
+			send(frame);
+		}
+
+		end();
+	}
+
+
+	protected IaxFrame newIaxFrame(IaxFrameSubclass subclass)
+	{
+		return newIaxFrame(subclass, getTimestamp());
+	}
+
+
+	protected IaxFrame newIaxFrame(IaxFrameSubclass subclass, long timestamp)
+	{
+		return new IaxFrame(serverCallNumber, false, clientCallNumber, timestamp, nextOSeqNo(), (short) iSeqNo, subclass);
+	}
+
+
+	protected ControlFrame newControlFrame(ControlFrameSubclass subclass)
+	{
+		return new ControlFrame(serverCallNumber, false, clientCallNumber, getTimestamp(), nextOSeqNo(), (short) iSeqNo, subclass);
+	}
+
+
+	protected short nextOSeqNo()
+	{
+		short result = (short) oSeqNo;
+		oSeqNo = (oSeqNo + 1) & 0xFF;
+
+		return result;
+	}
+
+
+	protected short getISeqNo()
+	{
+		return (short) iSeqNo;
+	}
+
+
+	/**
+	 * Msecs since the dialog started, starting at 1, since the client discards
+	 * frames with a timestamp of 0.
+	 */
+	protected long getTimestamp()
+	{
+		return System.currentTimeMillis() - startTimestamp + 1;
+	}
+
+
+	/**
+	 * Retransmits the frames not acknowledged in time, gives up on them after
+	 * MAX_RETRANSMITS.
+	 */
+	void retransmit(long now)
+	{
+		Iterator<FullFrame> iterator = unacknowledgedFrames.iterator();
+
+		while (iterator.hasNext())
+		{
+			FullFrame frame = iterator.next();
+
+			if (frame.getNextRetransmitTimestamp() > now)
+			{
+				continue;
+			}
+
+			if (frame.getRetransmitCount() >= MAX_RETRANSMITS)
+			{
+				logger.debug("Giving up on {} to {}", frame, clientAddress);
+				iterator.remove();
+				continue;
+			}
+
+			frame.setRetransmitted(true);
+			frame.incRetransmitCount();
+			frame.updateNextRetransmitTimestamp(RETRANSMIT_TIMEOUT);
+			server.send(frame, clientAddress);
+		}
+	}
+
+
+	private void resendUnacknowledged()
+	{
+		for (FullFrame frame : unacknowledgedFrames)
+		{
+			frame.setRetransmitted(true);
+			server.send(frame, clientAddress);
+		}
+	}
+
+
+	/**
+	 * The client has received everything before its iSeqNo.
+	 */
+	private void releaseAcknowledged(short clientISeqNo)
+	{
+		Iterator<FullFrame> iterator = unacknowledgedFrames.iterator();
+
+		while (iterator.hasNext())
+		{
+			int ahead = (clientISeqNo - iterator.next().getOSeqNo()) & 0xFF;
+
+			if (ahead > 0 && ahead < 128)
+			{
+				iterator.remove();
+			}
+		}
+	}
+
+
+	/**
+	 * An ACK carries the timestamp of the frame it acknowledges.
+	 */
+	private void releaseByTimestamp(long timestamp)
+	{
+		Iterator<FullFrame> iterator = unacknowledgedFrames.iterator();
+
+		while (iterator.hasNext())
+		{
+			if (iterator.next().getTimestamp() == timestamp)
+			{
+				iterator.remove();
+			}
+		}
+	}
+
+
+	protected void end()
+	{
+		this.ended = true;
+	}
+
+
+	/**
+	 * An ended dialog is kept until the client acknowledged its last frames.
+	 */
+	boolean isFinished()
+	{
+		return ended && unacknowledgedFrames.isEmpty();
+	}
+
+
+	boolean isEnded()
+	{
+		return ended;
+	}
+
+
+	short getServerCallNumber()
+	{
+		return serverCallNumber;
+	}
+
+
+	short getClientCallNumber()
+	{
+		return clientCallNumber;
+	}
+
+
+	InetSocketAddress getClientAddress()
+	{
+		return clientAddress;
+	}
+
+
+	/**
+	 * Reads an information element the client might have left out.
+	 */
+	protected static <T> T getOptionalElement(IaxFrame frame, InformationElementType type, Class<T> cls)
+	{
+		try
+		{
+			return cls.cast(frame.getInformationElement(type));
+		}
+		catch (InformationElementNotFoundException e)
+		{
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+package com.misternerd.djiax.simulator;
+
+import java.io.UnsupportedEncodingException;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.util.Calendar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.misternerd.djiax.io.frame.FullFrame;
+import com.misternerd.djiax.io.frame.InformationElementType;
+import com.misternerd.djiax.io.frame.full.IaxFrame;
+import com.misternerd.djiax.io.frame.full.IaxFrameSubclass;
+import com.misternerd.djiax.io.frame.ie.ApparentAddr;
+import com.misternerd.djiax.io.frame.ie.Authmethods;
+import com.misternerd.djiax.io.frame.ie.Cause;
+import com.misternerd.djiax.io.frame.ie.CauseCode;
+import com.misternerd.djiax.io.frame.ie.Challenge;
+import com.misternerd.djiax.io.frame.ie.Datetime;
+import com.misternerd.djiax.io.frame.ie.Md5Result;
+import com.misternerd.djiax.io.frame.ie.Refresh;
+import com.misternerd.djiax.io.frame.ie.Username;
+
+/**
+ * The server side of a peer: REGREQ and REGREL, plus the PINGs, POKEs and
+ * LAGRQs a peer sends outside of a call.
+ */
+class ServerRegistration extends ServerDialog
+{
+
+	private static final Logger logger = LoggerFactory.getLogger(ServerRegistration.class);
+
+	private static final short DEFAULT_REFRESH = 60;
+
+	private String challenge;
+
+
+	ServerRegistration(IaxServerSimulator server, short serverCallNumber, short clientCallNumber, InetSocketAddress clientAddress)
+	{
+		super(server, serverCallNumber, clientCallNumber, clientAddress);
+	}
+
+
+	@Override
+	protected boolean handleFrame(FullFrame frame)
+	{
+		if (frame instanceof IaxFrame)
+		{
+			IaxFrame iaxFrame = (IaxFrame) frame;
+
+			switch (iaxFrame.getIaxClass())
+			{
+				case REGREQ:
+				{
+					handleRegistration(iaxFrame, false);
+					return true;
+				}
+				case REGREL:
+				{
+					handleRegistration(iaxFrame, true);
+					return true;
+				}
+				default:
+				{
+					break;
+				}
+			}
+		}
+
+		return handleCommonFrame(frame);
+	}
+
+
+	private void handleRegistration(IaxFrame frame, boolean release)
+	{
+		Username username = getOptionalElement(frame, InformationElementType.USERNAME, Username.class);
+
+		if (server.isRegistrationRejected() || username == null || !server.getUsername().equals(username.getUsername()))
+		{
+			sendRegistrationReject(frame, "Registration refused");
+			return;
+		}
+
+		if (server.isAuthenticationRequired())
+		{
+			Md5Result md5Result = getOptionalElement(frame, InformationElementType.MD5_RESULT, Md5Result.class);
+
+			if (md5Result == null || challenge == null)
+			{
+				sendRegistrationAuth();
+				return;
+			}
+
+			if (!server.isValidMd5Result(challenge, md5Result))
+			{
+				challenge = null;
+				sendRegistrationReject(frame, "Authentication failed");
+				return;
+			}
+
+			challenge = null;
+		}
+
+		IaxFrame regack = newIaxFrame(IaxFrameSubclass.REGACK);
+
+		try
+		{
+			regack.addInformationElement(new Username(server.getUsername()));
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			logger.error("Failed to encode username {}", server.getUsername());
+		}
+
+		if (!release)
+		{
+			Refresh refresh = getOptionalElement(frame, InformationElementType.REFRESH, Refresh.class);
+
+			regack.addInformationElement(new Datetime(Calendar.getInstance()));
+			regack.addInformationElement(new Refresh(refresh != null ? (short) refresh.getRefresh() : DEFAULT_REFRESH));
+
+			if (clientAddress.getAddress() instanceof Inet4Address)
+			{
+				regack.addInformationElement(new ApparentAddr((Inet4Address) clientAddress.getAddress(), (short) clientAddress.getPort()));
+			}
+
+			server.peerRegistered();
+		}
+
+		logger.debug("{} {} from {}", new Object[] { release ? "Released" : "Registered", server.getUsername(), clientAddress });
+		reply(regack);
+	}
+
+
+	private void sendRegistrationAuth()
+	{
+		challenge = server.nextChallenge();
+
+		IaxFrame regauth = newIaxFrame(IaxFrameSubclass.REGAUTH);
+		regauth.addInformationElement(new Authmethods(Authmethods.METHOD_MD5));
+
+		try
+		{
+			regauth.addInformationElement(new Challenge(challenge));
+			regauth.addInformationElement(new Username(server.getUsername()));
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			logger.error("Failed to encode challenge {}", challenge);
+		}
+
+		reply(regauth);
+	}
+
+
+	private void sendRegistrationReject(IaxFrame frame, String reason)
+	{
+		logger.debug("Rejecting {} from {}: {}", new Object[] { frame.getIaxClass(), clientAddress, reason });
+
+		IaxFrame regrej = newIaxFrame(IaxFrameSubclass.REGREJ);
+
+		try
+		{
+			regrej.addInformationElement(new Cause(reason));
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			logger.error("Failed to encode cause {}", reason);
+		}
+
+		regrej.addInformationElement(new CauseCode(CauseCode.Cause.FACILITY_REJECTED));
+		reply(regrej);
+	}
+
+}
@@ -0,0 +1,148 @@
+package com.misternerd.djiax.simulator;
+
+import com.misternerd.djiax.util.MediaFormat;
+
+/**
+ * Generates a sine tone, one 20 msec frame at 8kHz per call, encoded as 16 bit
+ * little endian linear, G.711 mu-law or G.711 a-law.
+ */
+class ToneGenerator
+{
+
+	public static final int SAMPLE_RATE = 8000;
+
+	public static final int SAMPLES_PER_FRAME = 160;
+
+	private static final int MULAW_BIAS = 0x84;
+
+	private static final int MULAW_CLIP = 32635;
+
+	private final MediaFormat format;
+
+	private final double amplitude;
+
+	private final double phaseIncrement;
+
+	private double phase;
+
+
+	/**
+	 * @param amplitude Between 0 and 1, relative to full scale
+	 */
+	public ToneGenerator(MediaFormat format, double frequency, double amplitude)
+	{
+		if (!isSupported(format))
+		{
+			throw new IllegalArgumentException("Can't generate a tone in format " + format);
+		}
+
+		this.format = format;
+		this.amplitude = amplitude * Short.MAX_VALUE;
+		this.phaseIncrement = 2 * Math.PI * frequency / SAMPLE_RATE;
+	}
+
+
+	public static boolean isSupported(MediaFormat format)
+	{
+		return format == MediaFormat.LE_16_BIT_LINEAR || format == MediaFormat.G711_MULAW || format == MediaFormat.G711_ALAW;
+	}
+
+
+	/**
+	 * The next 20 msecs of the tone.
+	 */
+	public byte[] nextFrame()
+	{
+		byte[] frame = new byte[format == MediaFormat.LE_16_BIT_LINEAR ? SAMPLES_PER_FRAME * 2 : SAMPLES_PER_FRAME];
+
+		for (int i = 0; i < SAMPLES_PER_FRAME; i++)
+		{
+			int sample = (int) (amplitude * Math.sin(phase));
+			phase += phaseIncrement;
+
+			switch (format)
+			{
+				case LE_16_BIT_LINEAR:
+				{
+					frame[2 * i] = (byte) sample;
+					frame[2 * i + 1] = (byte) (sample >> 8);
+					break;
+				}
+				case G711_MULAW:
+				{
+					frame[i] = linearToMulaw(sample);
+					break;
+				}
+				default:
+				{
+					frame[i] = linearToAlaw(sample);
+					break;
+				}
+			}
+		}
+
+		// keep the phase small, so it doesn't lose precision on long calls
+		phase %= 2 * Math.PI;
+
+		return frame;
+	}
+
+
+	static byte linearToMulaw(int sample)
+	{
+		int sign = (sample >> 8) & 0x80;
+
+		if (sign != 0)
+		{
+			sample = -sample;
+		}
+
+		sample = Math.min(sample, MULAW_CLIP) + MULAW_BIAS;
+
+		int exponent = 7;
+
+		for (int mask = 0x4000; (sample & mask) == 0 && exponent > 0; mask >>= 1)
+		{
+			exponent--;
+		}
+
+		int mantissa = (sample >> (exponent + 3)) & 0x0F;
+
+		return (byte) ~(sign | (exponent << 4) | mantissa);
+	}
+
+
+	static byte linearToAlaw(int sample)
+	{
+		int sign = sample >= 0 ? 0x80 : 0x00;
+
+		if (sign == 0)
+		{
+			sample = -sample - 1;
+		}
+
+		sample = Math.min(sample, Short.MAX_VALUE) >> 3;
+
+		int encoded;
+
+		if (sample < 32)
+		{
+			encoded = sample >> 1;
+		}
+		else
+		{
+			int exponent = 1;
+
+			while (sample >= 64 && exponent < 7)
+			{
+				sample >>= 1;
+				exponent++;
+			}
+
+			encoded = (exponent << 4) | ((sample >> 1) & 0x0F);
+		}
+
+		return (byte) ((sign | encoded) ^ 0x55);
+	}
+
+}
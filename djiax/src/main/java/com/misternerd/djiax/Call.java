@@ -0,0 +1,1281 @@
+package com.misternerd.djiax;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.misternerd.djiax.call.AudioListener;
+import com.misternerd.djiax.call.AudioSource;
+import com.misternerd.djiax.call.ByteBufferAudioListener;
+import com.misternerd.djiax.call.CallStatistics;
+import com.misternerd.djiax.call.CallObserver;
+import com.misternerd.djiax.exception.CallException;
+import com.misternerd.djiax.exception.InvalidArgumentException;
+import com.misternerd.djiax.exception.InvalidMediaFormatException;
+import com.misternerd.djiax.io.frame.FrameDecoder;
+import com.misternerd.djiax.io.frame.FullFrame;
+import com.misternerd.djiax.io.frame.FullFrameType;
+import com.misternerd.djiax.io.frame.MiniFrame;
+import com.misternerd.djiax.io.frame.full.IaxFrame;
+import com.misternerd.djiax.io.frame.full.IaxFrameSubclass;
+import com.misternerd.djiax.io.frame.full.VoiceFrame;
+import com.misternerd.djiax.io.frame.ie.CalledNumber;
+import com.misternerd.djiax.io.frame.ie.CallingName;
+import com.misternerd.djiax.io.frame.ie.Capability;
+import com.misternerd.djiax.io.frame.ie.Format;
+import com.misternerd.djiax.io.frame.ie.SamplingRate;
+import com.misternerd.djiax.io.frame.ie.Username;
+import com.misternerd.djiax.io.frame.ie.Version;
+import com.misternerd.djiax.metrics.CallMetrics;
+import com.misternerd.djiax.state.AbstractCallState;
+import com.misternerd.djiax.state.call.Initial;
+import com.misternerd.djiax.state.call.Waiting;
+import com.misternerd.djiax.util.AudioRingBuffer;
+import com.misternerd.djiax.util.JitterBuffer;
+import com.misternerd.djiax.util.MediaFormat;
+import com.misternerd.djiax.util.MediaFormat.FormatType;
+import com.misternerd.djiax.util.MediaRingQueue;
+import com.misternerd.djiax.util.OverflowPolicy;
+import com.misternerd.djiax.util.QueueStatistics;
+import com.misternerd.djiax.util.RetransmitTimeoutEstimator;
+import com.misternerd.djiax.util.RingQueue;
+import com.misternerd.djiax.util.TimerWheel;
+
+/**
+ * This class represents an IAX2 call leg between two peers. The call is
+ * associated with a peer, through which it receives and sends all data traffic.
+ */
+public class Call implements Runnable
+{
+	
+	private static final Logger logger = LoggerFactory.getLogger(Call.class);
+
+	private String callName;
+
+	private IaxPeer peer;
+
+	private short sourceCallNumber;
+
+	private volatile short destinationCallNumber;
+
+	private String calledNumber;
+
+	private MediaFormat[] preferredAudioCodecs;
+
+	private MediaFormat usedAudioCodec;
+
+	private short samplingRate;
+
+	private AbstractCallState abstractCallState;
+
+	private long timestampCall;
+
+	private long timestampLastFrameReceived = 0;
+
+	/**
+	 * Inbound sequence number, increases incrementally as Full Frames are
+	 * received. At any time, it represents the next expected inbound stream
+	 * sequence number.
+	 */
+	private AtomicInteger iSeqNumber = new AtomicInteger();
+
+	private AtomicInteger oSeqNumber = new AtomicInteger();
+
+	private FrameSendWindow sendWindow;
+
+	private RetransmitTimeoutEstimator retransmitTimeoutEstimator;
+
+	private KeepAliveTask pingTask;
+
+	private KeepAliveTask lagRqTask;
+
+	/**
+	 * Filled by the peer's receiver, drained by the call thread. Signaling is
+	 * never dropped, media is dropped according to the configured policy.
+	 */
+	private RingQueue<FullFrame> inboundFullFrames;
+
+	private MediaRingQueue inboundMiniFrames;
+
+	private MediaRingQueue.Handler inboundAudioHandler;
+
+	/**
+	 * Null unless enabled in the peer's configuration.
+	 */
+	private JitterBuffer jitterBuffer;
+
+	/**
+	 * Received audio waiting for readAudio(), null unless enabled.
+	 */
+	private AudioRingBuffer inboundAudio;
+
+	private PlayoutTask playoutTask;
+
+	private MediaRingQueue.Handler playoutHandler;
+
+	private CallStatistics statistics;
+
+	private CallMetrics metrics;
+
+	/**
+	 * Full timestamp of the last received audio frame, the reference for
+	 * extending the 16 bit timestamps of MiniFrames.
+	 */
+	private long lastAudioTimestamp;
+
+	private boolean hasAudioTimestamp;
+
+	/**
+	 * Local time (millis) the server's timestamps of this call count from,
+	 * measured with every received VoiceFrame. Until the first one arrives,
+	 * the call's own start.
+	 */
+	private volatile long remoteTimeBase;
+
+	/**
+	 * Maps the sender's trunk time onto the server's time of this call, for
+	 * trunk entries without their own timestamp. Taken with the first entry
+	 * after each VoiceFrame, so the entries keep the sender's spacing in
+	 * between. Only used by the receiving thread.
+	 */
+	private long trunkTimeOffset;
+
+	private volatile boolean trunkTimeOffsetValid;
+
+	private CallScheduler callScheduler;
+
+	/**
+	 * Set while the call is queued for or being run by an event loop, or
+	 * while its own thread has been woken up and not yet checked the queues.
+	 */
+	private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+	/**
+	 * The thread executing run(), if the call has one of its own.
+	 */
+	private volatile Thread runThread;
+
+	private MiniFrame voiceTransmitFrame;
+
+	private volatile boolean running;
+
+	private CallObserver callObserver;
+
+	private AudioListener audioListener;
+
+	private volatile AudioSource audioSource;
+
+	private final MediaClock mediaClock;
+
+	private boolean audioRunning;
+
+
+	/**
+	 * Create a new call. The call must be associated with a peer, the number to
+	 * dial must be specified and a list of supported audio codecs (in
+	 * descending preference) must be provided.
+
+	 * @param audioCodecs List ordered by priority, first one is highest
+	 * @param samplingRate The sampling rate in hz
+	 */
+	public Call(IaxPeer peer, short sourceCallNumber, String number, MediaFormat[] audioCodecs, short samplingRate) 
+	{
+		this.callName = String.format("peer-%d-call-%d", peer.getSourceCallNumber(), sourceCallNumber);
+		this.peer = peer;
+		this.sourceCallNumber = sourceCallNumber;
+		this.destinationCallNumber = 0;
+		this.calledNumber = number;
+		this.preferredAudioCodecs = audioCodecs;
+		this.usedAudioCodec = audioCodecs[0];
+		this.samplingRate = samplingRate;
+		this.abstractCallState = new Initial(this);
+		this.timestampCall = System.currentTimeMillis() - 5;
+		this.remoteTimeBase = timestampCall;
+
+		PeerConfiguration peerConfiguration = peer.getPeerConfiguration();
+		this.inboundFullFrames = new RingQueue<>(peerConfiguration.getInboundSignalingQueueCapacity(), OverflowPolicy.SPILL);
+		this.inboundMiniFrames = new MediaRingQueue(peerConfiguration.getInboundMediaQueueCapacity(), 
+				peerConfiguration.getInboundMediaOverflowPolicy());
+		this.inboundAudioHandler = new InboundAudioHandler();
+
+		if (peerConfiguration.isJitterBufferEnabled())
+		{
+			this.jitterBuffer = new JitterBuffer(PeerConstants.CALL_JITTER_BUFFER_SIZE, PeerConstants.CALL_PACKETIZATION_INTERVAL, 
+					PeerConstants.CALL_JITTER_BUFFER_MIN_DELAY, PeerConstants.CALL_JITTER_BUFFER_MAX_DELAY);
+			this.playoutTask = new PlayoutTask(PeerConstants.CALL_PACKETIZATION_INTERVAL);
+			this.playoutHandler = new PlayoutHandler();
+		}
+
+		if (peerConfiguration.getInboundAudioBufferDuration() > 0)
+		{
+			this.inboundAudio = new AudioRingBuffer(peerConfiguration.getInboundAudioBufferDuration() 
+					* PeerConstants.CALL_AUDIO_BYTES_PER_MSEC);
+		}
+
+		this.statistics = new CallStatistics(PeerConstants.CALL_PACKETIZATION_INTERVAL, jitterBuffer);
+
+		this.callScheduler = peer.getCallScheduler();
+		this.mediaClock = peer.getMediaClock();
+
+		this.metrics = new CallMetrics(peer.getMetrics(), inboundFullFrames, inboundMiniFrames);
+		this.retransmitTimeoutEstimator = new RetransmitTimeoutEstimator(peer.getRetransmitTimeoutEstimator());
+		this.sendWindow = new FrameSendWindow(peer, peer.getTimerWheel(), null, retransmitTimeoutEstimator, metrics);
+		this.pingTask = new KeepAliveTask(IaxFrameSubclass.PING, PeerConstants.CALL_TIME_BETWEEN_PINGS);
+		this.lagRqTask = new KeepAliveTask(IaxFrameSubclass.LAGRQ, PeerConstants.CALL_TIME_BETWEEN_LAGRQS);
+	}
+
+
+	/**
+	 * Once the call has been created, it can be started via this method. This
+	 * will send the initial frame to the peer and put the call in waiting
+	 * state.
+	 */
+	public void callStart() throws CallException
+	{
+		this.running = true;
+		setCallState(new Waiting(this));
+		callScheduler.callStarted(this);
+
+		if (audioSource != null)
+		{
+			mediaClock.register(this);
+		}
+
+		pingTask.schedule();
+		lagRqTask.schedule();
+
+		if (playoutTask != null)
+		{
+			playoutTask.start();
+		}
+
+		try
+		{
+			IaxFrame newFrame = new IaxFrame(sourceCallNumber, false, (short) 0, this.getTimestampFull(), this.getOSeqNoAndIncrement(), this.getISeqNo(), IaxFrameSubclass.NEW);
+			newFrame.addInformationElement(new Version((short) 2));
+			newFrame.addInformationElement(new CallingName(peer.getPeerConfiguration().username));
+			newFrame.addInformationElement(new Format(preferredAudioCodecs[0]));
+			newFrame.addInformationElement(new Capability(preferredAudioCodecs));
+			newFrame.addInformationElement(new SamplingRate(samplingRate));
+			newFrame.addInformationElement(new Username(peer.getPeerConfiguration().username));
+			newFrame.addInformationElement(new CalledNumber(calledNumber));
+			
+			metrics.callStarted();
+			this.sendFrame(newFrame, false, true);
+		}
+		catch (InvalidArgumentException | UnsupportedEncodingException e)
+		{
+			logger.error("Failed to create new call with exception:", e);
+			throw new CallException("Failed to start call");
+		}
+
+	}
+
+
+	/**
+	 * Stop the current call. Retry- and Ping-Timer will be stopped and a hangup
+	 * frame sent to the server.
+	 */
+	public void callStop()
+	{
+		this.running = false;
+		LockSupport.unpark(runThread);
+
+		setCallState(new Waiting(this));
+		sendFrame(new IaxFrame(sourceCallNumber, false, destinationCallNumber, this.getTimestampFull(), this.getOSeqNoAndIncrement(), this.getISeqNo(), IaxFrameSubclass.HANGUP), true, false);
+
+		stopTimers();
+		peer.callStopped(this);
+
+		if (callObserver != null)
+		{
+			callObserver.callHangup(this);
+		}
+	}
+
+
+	/**
+	 * This gets called by state to let the call know it has been stopped. We
+	 * need to perform some cleanup here, like stopping timers or clearing the
+	 * queue.
+	 */
+	public void callStoppedByState()
+	{
+		this.running = false;
+		LockSupport.unpark(runThread);
+		setAudioRunning(false);
+
+		stopTimers();
+		peer.callStopped(this);
+
+		if (callObserver != null)
+		{
+			callObserver.callHangup(this);
+		}
+	}
+
+
+	/**
+	 * The loop of a call running on its own thread. When the queues have been
+	 * drained, the thread parks until wakeUp() gets called for new work.
+	 */
+	@Override
+	public void run()
+	{
+		Thread.currentThread().setName(callName + "-ReceiverThread");
+		this.runThread = Thread.currentThread();
+
+		while (running == true && !Thread.currentThread().isInterrupted())
+		{
+			if (processInbound(PeerConstants.CALL_FRAMES_PER_RUN))
+			{
+				continue;
+			}
+
+			wakeupHandled();
+
+			// work offered after the last poll has either been seen here or will unpark us
+			if (!hasInboundWork())
+			{
+				LockSupport.parkNanos(this, PeerConstants.CALL_THREAD_MAX_PARK_TIME * 1000000L);
+			}
+		}
+
+		this.runThread = null;
+
+		logger.debug("Main thread for call={} is exiting", callName);
+	}
+
+
+	/**
+	 * Handles up to budget queued frames, FullFrames first. Must only be
+	 * called by one thread at a time. Returns true if there is work left.
+	 */
+	public boolean processInbound(int budget)
+	{
+		for (int handled = 0; handled < budget && running; handled++)
+		{
+			FullFrame fullFrame = inboundFullFrames.poll();
+
+			if (fullFrame != null)
+			{
+				handleIncomingFullFrame(fullFrame);
+			}
+			else if (inboundMiniFrames.poll(inboundAudioHandler))
+			{
+				continue;
+			}
+			else if (playoutTask != null && playoutTask.takeInterval())
+			{
+				jitterBuffer.poll(playoutHandler);
+			}
+			else
+			{
+				return false;
+			}
+		}
+
+		return hasInboundWork();
+	}
+
+
+	public boolean hasInboundWork()
+	{
+		return running && (!inboundFullFrames.isEmpty() || !inboundMiniFrames.isEmpty() 
+				|| (playoutTask != null && playoutTask.hasIntervalDue()));
+	}
+
+
+	/**
+	 * Used by the event loop scheduler, returns true if the caller is the one
+	 * to put the call into the run queue.
+	 */
+	boolean requestWakeup()
+	{
+		return wakeupPending.compareAndSet(false, true);
+	}
+
+
+	void wakeupHandled()
+	{
+		wakeupPending.set(false);
+	}
+
+
+	/**
+	 * Unparks the call's own thread if it might be waiting for work.
+	 */
+	void wakeUp()
+	{
+		if (requestWakeup())
+		{
+			LockSupport.unpark(runThread);
+		}
+	}
+
+
+	private void handleIncomingFullFrame(FullFrame fullFrame)
+	{
+		if (fullFrame != null)
+		{
+			boolean receivedInOrder = false;
+
+			if (fullFrame.getReceivedNanoTime() != 0)
+			{
+				peer.getMetrics().frameDispatched(fullFrame.getReceivedNanoTime());
+			}
+
+			// every FullFrame implicitly acknowledges our frames below its iSeqNo
+			sendWindow.acknowledge(fullFrame.getISeqNo());
+
+			if (fullFrame instanceof IaxFrame)
+			{
+				IaxFrame iaxFrame = (IaxFrame) fullFrame;
+
+				if (iaxFrame.getIaxClass() == IaxFrameSubclass.ACK)
+				{
+					receivedInOrder = true;
+				}
+				else if (iaxFrame.getIaxClass() == IaxFrameSubclass.VNAK)
+				{
+					metrics.vnakReceived();
+					sendWindow.retransmitFrom(iaxFrame.getISeqNo());
+					receivedInOrder = true;
+				}
+				// The following don't need to change the sequence counter
+				else if (iaxFrame.getIaxClass() == IaxFrameSubclass.INVAL || iaxFrame.getIaxClass() == IaxFrameSubclass.TXACC 
+						|| iaxFrame.getIaxClass() == IaxFrameSubclass.TXCNT)
+				{
+					receivedInOrder = true;
+				}
+				else
+				{
+					if (iaxFrame.getTimestamp() < timestampLastFrameReceived)
+					{
+						receivedInOrder = false;
+					}
+					else
+					{
+						receivedInOrder = true;
+						iSeqNumber.incrementAndGet();
+					}
+				}
+			}
+			else
+			{
+				if (fullFrame.getTimestamp() < timestampLastFrameReceived)
+				{
+					receivedInOrder = false;
+				}
+				else
+				{
+					receivedInOrder = true;
+					iSeqNumber.incrementAndGet();
+				}
+			}
+
+			if (!receivedInOrder)
+			{
+				// notify peer via VNAK
+				sendFrame(
+						new IaxFrame(sourceCallNumber, false, destinationCallNumber, 
+								fullFrame.getTimestamp(), getOSeqNoAndIncrement(), (short)iSeqNumber.get(), IaxFrameSubclass.VNAK),
+						true, false);
+
+				metrics.outOfOrderDiscarded();
+				metrics.vnakSent();
+
+				logger.debug("Received out of order frame {} with sequenceNumber<{}", fullFrame, iSeqNumber);
+
+				return;
+			}
+
+			abstractCallState.receiveFrame(fullFrame);
+		}
+	}
+
+
+	/**
+	 * Cancels the keep alive timers and all pending retransmissions.
+	 */
+	private void stopTimers()
+	{
+		pingTask.cancel();
+		lagRqTask.cancel();
+		sendWindow.stop();
+		mediaClock.unregister(this);
+
+		if (playoutTask != null)
+		{
+			playoutTask.cancel();
+		}
+	}
+
+
+	public IaxPeer getPeer()
+	{
+		return peer;
+	}
+
+
+	public RetransmitTimeoutEstimator getRetransmitTimeoutEstimator()
+	{
+		return retransmitTimeoutEstimator;
+	}
+
+
+	public short getISeqNo()
+	{
+		return (short)iSeqNumber.get();
+	}
+
+
+	public void resetISeqNo()
+	{
+		iSeqNumber.set(0);
+	}
+
+
+	public short getOSeqNoAndIncrement()
+	{
+		return (short)oSeqNumber.getAndIncrement();
+	}
+
+
+	/**
+	 * Retrieve the outbound sequence number without tampering it (for ACK).
+	 */
+	public short getOSeqNoUnchanged()
+	{
+		return (short)oSeqNumber.get();
+	}
+
+
+	public void resetOSeqNo()
+	{
+		oSeqNumber.set(0);
+		sendWindow.reset();
+	}
+
+
+	public short getSourceCallNumber()
+	{
+		return sourceCallNumber;
+	}
+
+
+	public short getDestinationCallNumber()
+	{
+		return destinationCallNumber;
+	}
+
+
+	public void setDestinationCallNumber(short destinationCallNumber) throws IllegalStateException
+	{
+		if (this.destinationCallNumber != 0)
+		{
+			logger.error("Tried setting sourceCallNumber={} for callName={}, already has one", destinationCallNumber, callName);
+			throw new IllegalStateException("Failed to set new destinationCallNumber, call already has one");
+		}
+
+		this.destinationCallNumber = destinationCallNumber;
+	}
+
+
+	public AbstractCallState getCallState()
+	{
+		return abstractCallState;
+	}
+
+
+	public synchronized void setCallState(AbstractCallState state)
+	{
+		this.abstractCallState = state;
+	}
+
+
+	/**
+	 * Sets the codec this call takes place in. This must be an audio codec and
+	 * should only be called from Up state.
+	 */
+	public void setCodec(MediaFormat usedAudioCodec) throws InvalidMediaFormatException
+	{
+		if (usedAudioCodec == null || usedAudioCodec.getType() != FormatType.AUDIO)
+		{
+			throw new InvalidMediaFormatException(usedAudioCodec);
+		}
+
+		this.usedAudioCodec = usedAudioCodec;
+	}
+
+
+	public void setCallObserver(CallObserver callObserver)
+	{
+		this.callObserver = callObserver;
+	}
+
+
+	public CallObserver getCallObserver()
+	{
+		return callObserver;
+	}
+
+
+	public void setAudioListener(AudioListener audioListener)
+	{
+		this.audioListener = audioListener;
+	}
+
+
+	public AudioListener getAudioListener()
+	{
+		return audioListener;
+	}
+
+
+	/**
+	 * Writes a chunk of audio data into this call. The data needs to be in the
+	 * correct format, since no transcoding takes place.
+	 */
+	public void writeAudioData(byte[] data) throws IOException, IllegalStateException, InvalidArgumentException
+	{
+		if (audioRunning == false)
+		{
+			throw new IllegalStateException("The call " + sourceCallNumber + " is currently not accepting audio.");
+		}
+
+		sendAudio(data, getTimestampFull());
+	}
+
+
+	/**
+	 * Writes the remaining bytes of the buffer into this call as one chunk of
+	 * audio and moves its position to the limit. The data needs to be in the
+	 * correct format, since no transcoding takes place.
+	 *
+	 * The bytes are sent before this method returns, so the buffer can be
+	 * reused right away. If it is the buffer returned by
+	 * getAudioFrameBuffer() on the same thread, the audio is sent from where
+	 * it was written without being copied.
+	 */
+	public void writeAudioData(ByteBuffer data) throws IOException, IllegalStateException, InvalidArgumentException
+	{
+		if (audioRunning == false)
+		{
+			throw new IllegalStateException("The call " + sourceCallNumber + " is currently not accepting audio.");
+		}
+
+		sendAudio(data, getTimestampFull());
+	}
+
+
+	/**
+	 * Sets the source the peer's media clock pulls this call's audio from,
+	 * one frame per packetization interval while audio is running. Null stops
+	 * pulling. Audio should either come from a source or be written, not both.
+	 */
+	public void setAudioSource(AudioSource audioSource)
+	{
+		this.audioSource = audioSource;
+
+		if (audioSource != null && running)
+		{
+			mediaClock.register(this);
+		}
+		else
+		{
+			mediaClock.unregister(this);
+		}
+	}
+
+
+	public AudioSource getAudioSource()
+	{
+		return audioSource;
+	}
+
+
+	/**
+	 * Called by the media clock once per tick: reads a frame from the audio
+	 * source into the buffer lent to the clock's thread and sends it, stamped
+	 * with the tick's time.
+	 *
+	 * @param tickTime The time (millis) the tick was due
+	 */
+	void pullAudio(long tickTime) throws IOException, InvalidArgumentException
+	{
+		AudioSource source = audioSource;
+
+		if (source == null || audioRunning == false)
+		{
+			return;
+		}
+
+		ByteBuffer buffer = TransportHub.getAudioFrameBuffer();
+		source.callSourceReadAudioData(buffer, usedAudioCodec);
+		buffer.flip();
+
+		// nothing for this interval, e.g. silence
+		if (buffer.hasRemaining())
+		{
+			sendAudio(buffer, tickTime - timestampCall);
+		}
+	}
+
+
+	private void sendAudio(byte[] data, long timestamp) throws IOException, InvalidArgumentException
+	{
+		// first audio frame needs to be a full frame
+		if (voiceTransmitFrame == null)
+		{
+			this.sendFrame(new VoiceFrame(sourceCallNumber, false, destinationCallNumber, timestamp, this.getOSeqNoAndIncrement(), this.getISeqNo(), usedAudioCodec, data), true, false);
+
+			voiceTransmitFrame = new MiniFrame();
+			voiceTransmitFrame.setSourceCallNumber(sourceCallNumber);
+		}
+		// preceeding frames can be mini frames
+		else
+		{
+			voiceTransmitFrame.setTimestamp((int) (timestamp & 0xFFFF));
+			voiceTransmitFrame.setData(data);
+
+			if (peer.sendFrame(voiceTransmitFrame))
+			{
+				metrics.frameSent(voiceTransmitFrame.getSerializedLength());
+			}
+		}
+	}
+
+
+	private void sendAudio(ByteBuffer data, long timestamp) throws IOException, InvalidArgumentException
+	{
+		// the first audio frame is a full frame, which needs its own array
+		if (voiceTransmitFrame == null)
+		{
+			byte[] audioData = new byte[data.remaining()];
+			data.get(audioData);
+			sendAudio(audioData, timestamp);
+			return;
+		}
+
+		voiceTransmitFrame.setTimestamp((int) (timestamp & 0xFFFF));
+		voiceTransmitFrame.setPayload(data);
+
+		try
+		{
+			if (peer.sendFrame(voiceTransmitFrame))
+			{
+				metrics.frameSent(voiceTransmitFrame.getSerializedLength());
+			}
+		}
+		finally
+		{
+			// don't keep the caller's buffer beyond this call
+			voiceTransmitFrame.setData(null);
+			data.position(data.limit());
+		}
+	}
+
+
+	/**
+	 * Lends the calling thread a buffer to write a chunk of audio into, to be
+	 * passed to writeAudioData(ByteBuffer) after flipping it. Audio written
+	 * this way goes out without being copied. The buffer belongs to the
+	 * library: it must only be used on the calling thread and only until this
+	 * method is called again, which clears it.
+	 */
+	public ByteBuffer getAudioFrameBuffer()
+	{
+		return TransportHub.getAudioFrameBuffer();
+	}
+
+
+	public void receiveFrame(FullFrame frame)
+	{
+		// only VoiceFrames carry the server's audio time, ACKs and replies echo ours
+		if (frame.getFrameType() == FullFrameType.VOICE)
+		{
+			this.remoteTimeBase = System.currentTimeMillis() - frame.getTimestamp();
+			this.trunkTimeOffsetValid = false;
+		}
+
+		metrics.frameReceived(frame.getSerializedLength());
+		inboundFullFrames.offer(frame);
+		callScheduler.callHasWork(this);
+	}
+
+
+	public void receiveFrame(MiniFrame frame)
+	{
+		metrics.frameReceived(frame.getSerializedLength());
+		inboundMiniFrames.offer(frame.getTimestamp(), frame.getData(), 0, frame.getData().length);
+		callScheduler.callHasWork(this);
+	}
+
+
+	/**
+	 * Takes a MiniFrame straight from the receive buffer. Its payload is copied
+	 * into a preallocated queue slot, no frame object gets created.
+	 */
+	public void receiveFrame(FrameDecoder decoder)
+	{
+		metrics.frameReceived(decoder.getLength());
+		inboundMiniFrames.offer(decoder);
+		callScheduler.callHasWork(this);
+	}
+
+
+	/**
+	 * Takes an entry of a received trunk frame straight from the receive
+	 * buffer, its media gets copied into a preallocated queue slot.
+	 */
+	public void receiveMedia(int timestamp, ByteBuffer buffer, int offset, int length)
+	{
+		metrics.frameReceived(MiniFrame.HEADER_LENGTH + length);
+		inboundMiniFrames.offer(timestamp, buffer, offset, length);
+		callScheduler.callHasWork(this);
+	}
+
+
+	/**
+	 * Takes an entry of a received trunk frame without its own timestamp. The
+	 * trunk's timestamp counts from the sender's trunk start, so it gets
+	 * mapped onto the call's time first, the way Asterisk does.
+	 *
+	 * @param trunkTimestamp The 32 bit timestamp of the trunk frame
+	 * @param arrivalTime Local time (millis) the trunk frame arrived
+	 */
+	public void receiveTrunkMedia(long trunkTimestamp, long arrivalTime, ByteBuffer buffer, int offset, int length)
+	{
+		if (!trunkTimeOffsetValid)
+		{
+			// the entry is stamped with its arrival in the server's time of the call
+			trunkTimeOffset = arrivalTime - remoteTimeBase - trunkTimestamp;
+			trunkTimeOffsetValid = true;
+		}
+
+		receiveMedia((int) ((trunkTimestamp + trunkTimeOffset) & 0xFFFF), buffer, offset, length);
+	}
+
+
+	/**
+	 * Counters of the queue holding received FullFrames for the call thread.
+	 */
+	public QueueStatistics getInboundSignalingQueueStatistics()
+	{
+		return inboundFullFrames;
+	}
+
+
+	/**
+	 * Counters of the queue holding received MiniFrames for the call thread.
+	 */
+	public QueueStatistics getInboundMediaQueueStatistics()
+	{
+		return inboundMiniFrames;
+	}
+
+
+	/**
+	 * Sends a FullFrame to the server. The second parameter defines, if this
+	 * frame must be ack'd. If the second parameter is true, the frame will be
+	 * retried until it has either been ack'd or the maximum retry count has
+	 * been reached.
+	 */
+	public void sendFrame(FullFrame frame, boolean requiresAck, boolean requiresReply)
+	{
+		if (peer.sendFrame(frame, false, false))
+		{
+			metrics.frameSent(frame.getSerializedLength());
+			sendWindow.frameSent(frame, requiresAck, requiresReply);
+		}
+	}
+
+
+	/**
+	 * This will set a frame of a specific subclass as replied, thus removing it
+	 * from the list of frames to retransmit.
+	 */
+	public void setFrameReplied(long subclass)
+	{
+		sendWindow.setFrameReplied(subclass);
+	}
+
+
+	/**
+	 * This returns the time in millis since this peer has registered. It is
+	 * used for sending FullFrames.
+	 */
+	public long getTimestampFull()
+	{
+		return (System.currentTimeMillis() - timestampCall);
+	}
+
+
+	/**
+	 * Timestamp for miniframes, carries the lower 16 bits of the calls full
+	 * timestamp.
+	 */
+	public int getTimestampMini()
+	{
+		return (int) ((System.currentTimeMillis() - timestampCall) & 0xFFFF);
+	}
+
+
+	public boolean isAudioRunning()
+	{
+		return audioRunning;
+	}
+
+
+	public void setAudioRunning(boolean audioRunning)
+	{
+		this.audioRunning = audioRunning;
+
+		// a call reading its audio or pulling it from a source needs no listener
+		if (audioListener != null)
+		{
+			audioListener.callListenerSetAudioRunning(audioRunning);
+		}
+	}
+
+
+	/**
+	 * Passes the audio of a received VoiceFrame to the audio listener, through
+	 * the jitter buffer if there is one. Its timestamp becomes the reference for
+	 * the following MiniFrames.
+	 */
+	public void receiveAudio(long timestamp, byte[] data)
+	{
+		long arrivalTime = getTimestampFull();
+
+		this.lastAudioTimestamp = timestamp;
+		this.hasAudioTimestamp = true;
+		statistics.frameReceived(timestamp, arrivalTime);
+
+		if (jitterBuffer != null)
+		{
+			jitterBuffer.put(timestamp, arrivalTime, data, 0, data.length);
+		}
+		else if (inboundAudio != null)
+		{
+			inboundAudio.write(ByteBuffer.wrap(data));
+		}
+		else if (audioListener instanceof ByteBufferAudioListener)
+		{
+			((ByteBufferAudioListener) audioListener).callListenerReceivedAudioData(ByteBuffer.wrap(data), usedAudioCodec);
+		}
+		else if (audioListener != null)
+		{
+			audioListener.callListenerReceivedAudioData(data, usedAudioCodec);
+		}
+	}
+
+
+	/**
+	 * Counters of the call, updated in place.
+	 */
+	public CallMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+
+	/**
+	 * Takes a snapshot of the call's counters without pausing it.
+	 */
+	public CallMetrics.Snapshot getMetricsSnapshot()
+	{
+		return metrics.snapshot();
+	}
+
+
+	/**
+	 * Quality of the received audio, also reported to the server with every
+	 * PONG.
+	 */
+	public CallStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+
+	/**
+	 * Null unless enabled in the peer's configuration.
+	 */
+	public JitterBuffer getJitterBuffer()
+	{
+		return jitterBuffer;
+	}
+
+
+	/**
+	 * Moves received audio into the buffer, as much as there is up to its
+	 * remaining space, without waiting for more. The audio is in the call's
+	 * format. Needs the inbound audio buffer to be enabled in the peer's
+	 * configuration, and only one thread may read.
+	 *
+	 * @return Number of bytes read
+	 */
+	public int readAudio(ByteBuffer buffer) throws IllegalStateException
+	{
+		if (inboundAudio == null)
+		{
+			throw new IllegalStateException("The call " + sourceCallNumber + " has no inbound audio buffer.");
+		}
+
+		return inboundAudio.read(buffer);
+	}
+
+
+	/**
+	 * Holds the received audio for readAudio(), with its overrun and underrun
+	 * counters. Null unless enabled in the peer's configuration.
+	 */
+	public AudioRingBuffer getInboundAudioBuffer()
+	{
+		return inboundAudio;
+	}
+
+
+	/**
+	 * Extends the 16 bit timestamp of a MiniFrame to 32 bits, choosing the
+	 * value closest to the last audio timestamp. This also covers the wrap.
+	 */
+	private long extendMiniTimestamp(int miniTimestamp)
+	{
+		miniTimestamp &= 0xFFFF;
+
+		if (!hasAudioTimestamp)
+		{
+			return miniTimestamp;
+		}
+
+		long timestamp = (lastAudioTimestamp & ~0xFFFFL) | miniTimestamp;
+
+		if (timestamp - lastAudioTimestamp > 0x8000)
+		{
+			timestamp -= 0x10000;
+		}
+		else if (lastAudioTimestamp - timestamp > 0x8000)
+		{
+			timestamp += 0x10000;
+		}
+
+		return (timestamp < 0) ? timestamp + 0x10000 : timestamp;
+	}
+
+
+	/**
+	 * Hands a queued payload to the inbound audio buffer if there is one, else
+	 * to the audio listener. A ByteBufferAudioListener reads it in place, any
+	 * other listener takes ownership of the array, so it gets a copy.
+	 */
+	private void deliverAudio(ByteBuffer media)
+	{
+		AudioListener listener = audioListener;
+
+		if (inboundAudio != null)
+		{
+			inboundAudio.write(media);
+		}
+		else if (listener instanceof ByteBufferAudioListener)
+		{
+			((ByteBufferAudioListener) listener).callListenerReceivedAudioData(media, usedAudioCodec);
+		}
+		else if (listener != null)
+		{
+			byte[] audioData = new byte[media.remaining()];
+			media.get(audioData);
+			listener.callListenerReceivedAudioData(audioData, usedAudioCodec);
+		}
+	}
+
+
+	/**
+	 * Accounts queued MiniFrame payloads and hands them to the audio listener
+	 * or the jitter buffer.
+	 */
+	private class InboundAudioHandler implements MediaRingQueue.Handler
+	{
+
+		@Override
+		public void handleMedia(ByteBuffer media, int miniTimestamp)
+		{
+			long timestamp = extendMiniTimestamp(miniTimestamp);
+			long arrivalTime = getTimestampFull();
+
+			lastAudioTimestamp = timestamp;
+			hasAudioTimestamp = true;
+			statistics.frameReceived(timestamp, arrivalTime);
+
+			if (jitterBuffer != null)
+			{
+				jitterBuffer.put(timestamp, arrivalTime, media);
+			}
+			else
+			{
+				deliverAudio(media);
+			}
+		}
+
+	}
+
+
+	/**
+	 * Receives the frame the jitter buffer releases for an interval.
+	 */
+	private class PlayoutHandler implements MediaRingQueue.Handler
+	{
+
+		@Override
+		public void handleMedia(ByteBuffer media, int timestamp)
+		{
+			deliverAudio(media);
+		}
+
+	}
+
+
+	/**
+	 * Ticks the jitter buffer's playout once per interval. The timer wheel
+	 * only counts the intervals and wakes the call, the frames are released
+	 * by the call's own thread.
+	 */
+	private class PlayoutTask implements Runnable
+	{
+
+		private final long interval;
+
+		private final AtomicInteger intervalsDue = new AtomicInteger();
+
+		private volatile TimerWheel.Timeout timeout;
+
+
+		public PlayoutTask(long interval)
+		{
+			this.interval = interval;
+		}
+
+
+		public void start()
+		{
+			this.timeout = peer.getTimerWheel().scheduleAtFixedRate(this, interval);
+		}
+
+
+		public void cancel()
+		{
+			if (timeout != null)
+			{
+				timeout.cancel();
+			}
+		}
+
+
+		public boolean hasIntervalDue()
+		{
+			return intervalsDue.get() > 0;
+		}
+
+
+		public boolean takeInterval()
+		{
+			while (true)
+			{
+				int due = intervalsDue.get();
+
+				if (due == 0)
+				{
+					return false;
+				}
+
+				if (intervalsDue.compareAndSet(due, due - 1))
+				{
+					return true;
+				}
+			}
+		}
+
+
+		@Override
+		public void run()
+		{
+			if (running == false)
+			{
+				return;
+			}
+
+			intervalsDue.incrementAndGet();
+			callScheduler.callHasWork(Call.this);
+		}
+
+	}
+
+
+	/**
+	 * Periodically sends a frame requiring a reply (PING, LAGRQ) while the
+	 * call is running. Each period is a single timeout on the timer wheel.
+	 */
+	private class KeepAliveTask implements Runnable
+	{
+
+		private final IaxFrameSubclass subclass;
+
+		private final long period;
+
+		private volatile TimerWheel.Timeout timeout;
+
+
+		public KeepAliveTask(IaxFrameSubclass subclass, long period)
+		{
+			this.subclass = subclass;
+			this.period = period;
+		}
+
+
+		public void schedule()
+		{
+			this.timeout = peer.getTimerWheel().schedule(this, period);
+		}
+
+
+		public void cancel()
+		{
+			if (timeout != null)
+			{
+				timeout.cancel();
+			}
+		}
+
+
+		@Override
+		public void run()
+		{
+			if (running == false)
+			{
+				return;
+			}
+
+			sendFrame(new IaxFrame(sourceCallNumber, false, destinationCallNumber, getTimestampFull(), 
+					getOSeqNoAndIncrement(), getISeqNo(), subclass), false, true);
+
+			schedule();
+		}
+
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return String.format("Call(callName=%s, calledNumber=%s)", callName, calledNumber);
+	}
+
+}
@@ -0,0 +1,28 @@
+package com.misternerd.djiax;
+
+/**
+ * How the calls of newly created peers are executed.
+ */
+public enum CallExecutionMode
+{
+
+	/**
+	 * Every call gets a pooled platform thread of its peer, which blocks while
+	 * the call's queues are empty.
+	 */
+	THREAD_PER_CALL,
+
+	/**
+	 * Like THREAD_PER_CALL, but every call runs on a virtual thread of its
+	 * own, so the number of calls is not limited by OS threads. Requires
+	 * Java 21 at runtime.
+	 */
+	VIRTUAL_THREAD,
+
+	/**
+	 * All calls share one event loop per core. A call is pinned to a loop by
+	 * its source call number and only runs when it has work.
+	 */
+	EVENT_LOOP;
+
+}
@@ -0,0 +1,24 @@
+package com.misternerd.djiax;
+
+/**
+ * Decides which thread runs the inbound processing of a call. A scheduler is
+ * told when a call starts and whenever one of its inbound queues receives
+ * work, the actual processing happens in Call.processInbound().
+ */
+public interface CallScheduler
+{
+
+	/**
+	 * The call has been started and needs to process its queues from now on
+	 * until it stops running.
+	 */
+	public void callStarted(Call call);
+
+
+	/**
+	 * Something was put into one of the call's inbound queues. Called by the
+	 * receiver thread, so this must not block.
+	 */
+	public void callHasWork(Call call);
+
+}
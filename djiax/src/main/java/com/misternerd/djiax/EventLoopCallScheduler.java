@@ -0,0 +1,298 @@
+package com.misternerd.djiax;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.misternerd.djiax.util.OverflowPolicy;
+import com.misternerd.djiax.util.RingQueue;
+
+/**
+ * Runs the calls of all peers on up to a fixed number of event loop threads.
+ * Each call is pinned to one loop by its source call number, so its frames are
+ * processed in order by one thread at a time. A call is only put into its
+ * loop's run queue when it has work, and every run is limited to a budget of
+ * frames, after which the call goes to the back of the queue if it still has
+ * work left.
+ *
+ * The loops are elastic: calls are spread over a single loop at first, and
+ * one more loop is added whenever a loop did not run out of work for
+ * CALL_EVENT_LOOP_GROW_AFTER. A loop's thread is started with its first work
+ * and exits after CALL_EVENT_LOOP_IDLE_TIMEOUT without any, the last loop is
+ * removed from the spread then. An idle scheduler has no threads at all.
+ *
+ * A call may move to another loop when the number of loops changes, but only
+ * while it isn't queued, so it never runs on two loops at the same time.
+ */
+class EventLoopCallScheduler implements CallScheduler
+{
+
+	private static final Logger logger = LoggerFactory.getLogger(EventLoopCallScheduler.class);
+
+	private final String name;
+
+	private final EventLoop[] eventLoops;
+
+	private final int framesPerRun;
+
+	private final long growAfterNanos = TimeUnit.MILLISECONDS.toNanos(PeerConstants.CALL_EVENT_LOOP_GROW_AFTER);
+
+	private final long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(PeerConstants.CALL_EVENT_LOOP_IDLE_TIMEOUT);
+
+	/**
+	 * Number of loops the calls are currently spread over.
+	 */
+	private final AtomicInteger activeLoops = new AtomicInteger(1);
+
+
+	/**
+	 * @param numberOfLoops The maximum number of loops
+	 */
+	public EventLoopCallScheduler(String name, int numberOfLoops, int framesPerRun)
+	{
+		this.name = name;
+		this.eventLoops = new EventLoop[Math.max(1, numberOfLoops)];
+		this.framesPerRun = framesPerRun;
+
+		for (int i = 0; i < eventLoops.length; i++)
+		{
+			eventLoops[i] = new EventLoop(i);
+		}
+	}
+
+
+	@Override
+	public void callStarted(Call call)
+	{
+		callHasWork(call);
+	}
+
+
+	@Override
+	public void callHasWork(Call call)
+	{
+		// only the first wakeup enqueues, the call stays queued until it ran out of work
+		if (call.requestWakeup())
+		{
+			getEventLoop(call).enqueue(call);
+		}
+	}
+
+
+	public int getNumberOfEventLoops()
+	{
+		return eventLoops.length;
+	}
+
+
+	/**
+	 * Number of loops the calls are spread over right now.
+	 */
+	public int getNumberOfActiveEventLoops()
+	{
+		return activeLoops.get();
+	}
+
+
+	/**
+	 * Number of loops which currently have a thread.
+	 */
+	public int getNumberOfRunningEventLoops()
+	{
+		int running = 0;
+
+		for (EventLoop eventLoop : eventLoops)
+		{
+			if (eventLoop.threadRunning.get())
+			{
+				running++;
+			}
+		}
+
+		return running;
+	}
+
+
+	private EventLoop getEventLoop(Call call)
+	{
+		return eventLoops[(call.getSourceCallNumber() & 0x7FFF) % activeLoops.get()];
+	}
+
+
+	/**
+	 * Spreads the calls over one more loop, if there is one left.
+	 */
+	private void grow()
+	{
+		int current;
+
+		while ((current = activeLoops.get()) < eventLoops.length)
+		{
+			if (activeLoops.compareAndSet(current, current + 1))
+			{
+				logger.debug("Event loops saturated, spreading calls over {} loops", current + 1);
+				return;
+			}
+		}
+	}
+
+
+	private class EventLoop implements Runnable
+	{
+
+		private final int index;
+
+		private final RingQueue<Call> readyCalls = new RingQueue<>(PeerConstants.CALL_EVENT_LOOP_QUEUE_CAPACITY, OverflowPolicy.SPILL);
+
+		private final AtomicBoolean threadRunning = new AtomicBoolean();
+
+		private volatile boolean sleeping;
+
+		private volatile Thread thread;
+
+
+		public EventLoop(int index)
+		{
+			this.index = index;
+		}
+
+
+		public void enqueue(Call call)
+		{
+			readyCalls.offer(call);
+
+			if (!threadRunning.get())
+			{
+				startThread();
+			}
+			else if (sleeping)
+			{
+				LockSupport.unpark(thread);
+			}
+		}
+
+
+		private void startThread()
+		{
+			if (threadRunning.compareAndSet(false, true))
+			{
+				Thread newThread = new Thread(this, name + "-" + index);
+				newThread.setDaemon(true);
+				this.thread = newThread;
+				newThread.start();
+			}
+		}
+
+
+		@Override
+		public void run()
+		{
+			long busySince = System.nanoTime();
+			long idleSince = -1;
+
+			while (true)
+			{
+				Call call = readyCalls.poll();
+
+				if (call == null)
+				{
+					long now = System.nanoTime();
+
+					if (idleSince < 0)
+					{
+						idleSince = now;
+					}
+					else if (now - idleSince >= idleTimeoutNanos && exitIfIdle())
+					{
+						return;
+					}
+
+					sleeping = true;
+
+					// re-check after announcing the sleep, an enqueue might have missed it
+					if (readyCalls.isEmpty())
+					{
+						LockSupport.parkNanos(this, idleTimeoutNanos);
+					}
+
+					sleeping = false;
+					continue;
+				}
+
+				if (idleSince >= 0)
+				{
+					idleSince = -1;
+					busySince = System.nanoTime();
+				}
+
+				runCall(call);
+
+				// never ran out of work for a while: the loops can't keep up
+				if (System.nanoTime() - busySince >= growAfterNanos)
+				{
+					grow();
+					busySince = System.nanoTime();
+				}
+			}
+		}
+
+
+		/**
+		 * Lets the thread go, unless work arrived in the meantime.
+		 */
+		private boolean exitIfIdle()
+		{
+			// only the last loop leaves the spread, so the others keep their calls
+			if (index > 0 && activeLoops.compareAndSet(index + 1, index))
+			{
+				logger.debug("Event loop {} idle, spreading calls over {} loops", index, index);
+			}
+
+			threadRunning.set(false);
+
+			// an enqueue which still saw the thread running didn't start a new one
+			if (!readyCalls.isEmpty() && threadRunning.compareAndSet(false, true))
+			{
+				return false;
+			}
+
+			return true;
+		}
+
+
+		private void runCall(Call call)
+		{
+			boolean workLeft;
+
+			try
+			{
+				workLeft = call.processInbound(framesPerRun);
+			}
+			catch (Throwable e)
+			{
+				logger.warn("Call " + call + " threw exception:", e);
+				workLeft = false;
+			}
+
+			if (workLeft)
+			{
+				readyCalls.offer(call);
+				return;
+			}
+
+			call.wakeupHandled();
+
+			// work that arrived while the call was running only tried to wake it up
+			if (call.hasInboundWork() && call.requestWakeup())
+			{
+				getEventLoop(call).enqueue(call);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,374 @@
+package com.misternerd.djiax;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.misternerd.djiax.io.frame.FullFrame;
+import com.misternerd.djiax.metrics.TransmissionMetrics;
+import com.misternerd.djiax.util.RetransmitTimeoutEstimator;
+import com.misternerd.djiax.util.TimerWheel;
+
+/**
+ * The FullFrames of a peer or a call that have been sent reliably but were not
+ * acknowledged yet. IAX2 sequence numbers are 8 bits wide, so the window is a
+ * ring of 256 slots indexed by the frame's oSeqNo. Every received FullFrame
+ * acknowledges all frames below its iSeqNo, a VNAK asks for all frames from
+ * its iSeqNo on again.
+ *
+ * Each pending frame owns a timeout on the shared timer wheel which fires when
+ * the frame needs to be retransmitted. The timeout comes from the owner's
+ * estimator, which in turn gets a round trip sample whenever a frame that was
+ * sent only once is acknowledged or replied to.
+ */
+class FrameSendWindow
+{
+
+	private static final Logger logger = LoggerFactory.getLogger(FrameSendWindow.class);
+
+	private static final int WINDOW_SIZE = 256;
+
+	private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+
+	/**
+	 * An iSeqNo more than half the sequence space ahead of the window is
+	 * considered to lie behind it, i.e. to be a stale acknowledgement.
+	 */
+	private static final int MAX_ACK_DISTANCE = WINDOW_SIZE / 2;
+
+	private IaxPeer iaxPeer;
+
+	private TimerWheel timerWheel;
+
+	/**
+	 * Gets notified about frames we gave up on, null for call frames.
+	 */
+	private IaxClientObserver peerObserver;
+
+	private RetransmitTimeoutEstimator estimator;
+
+	private TransmissionMetrics metrics;
+
+	private final Slot[] slots;
+
+	/**
+	 * Sequence number of the oldest frame that might still be unacknowledged.
+	 */
+	private int windowStart;
+
+	private int numberOfPendingFrames;
+
+	private boolean running;
+
+
+	public FrameSendWindow(IaxPeer iaxPeer, TimerWheel timerWheel, IaxClientObserver peerObserver, RetransmitTimeoutEstimator estimator,
+			TransmissionMetrics metrics)
+	{
+		this.iaxPeer = iaxPeer;
+		this.timerWheel = timerWheel;
+		this.peerObserver = peerObserver;
+		this.estimator = estimator;
+		this.metrics = metrics;
+		this.slots = new Slot[WINDOW_SIZE];
+		this.running = true;
+
+		for (int i = 0; i < WINDOW_SIZE; i++)
+		{
+			slots[i] = new Slot();
+		}
+	}
+
+
+	/**
+	 * Drops all pending frames and stops accepting new ones.
+	 */
+	public synchronized void stop()
+	{
+		this.running = false;
+		reset();
+	}
+
+
+	/**
+	 * Drops all pending frames, must be called when the outbound sequence
+	 * number starts over.
+	 */
+	public synchronized void reset()
+	{
+		for (int i = 0; i < WINDOW_SIZE && numberOfPendingFrames > 0; i++)
+		{
+			if (slots[i].frame != null)
+			{
+				release(slots[i]);
+			}
+		}
+
+		this.windowStart = 0;
+	}
+
+
+	/**
+	 * Must be called after a frame has been sent for the first time. Frames
+	 * requiring an ACK or a reply are retransmitted until the other side
+	 * acknowledges their sequence number or the reply arrives.
+	 */
+	public synchronized void frameSent(FullFrame frame, boolean requiresAck, boolean requiresReply)
+	{
+		if (!running || (requiresAck == false && requiresReply == false))
+		{
+			return;
+		}
+
+		frame.updateNextRetransmitTimestamp(estimator.getRetransmitTimeout(frame.getRetransmitCount()));
+
+		int seqNo = frame.getOSeqNo() & WINDOW_MASK;
+		Slot slot = slots[seqNo];
+
+		if (slot.frame != null)
+		{
+			logger.debug("Replacing unacknowledged frame={} with frame={}", slot.frame, frame);
+			release(slot);
+		}
+
+		// frames may be handed in slightly out of sequence order
+		if (numberOfPendingFrames == 0 || ((windowStart - seqNo) & WINDOW_MASK) <= MAX_ACK_DISTANCE)
+		{
+			windowStart = seqNo;
+		}
+
+		slot.frame = frame;
+		slot.awaitingReply = (requiresAck == false);
+		slot.sentAt = System.nanoTime();
+		slot.schedule();
+		numberOfPendingFrames++;
+	}
+
+
+	/**
+	 * Releases all frames with a sequence number below iSeqNo, which is the
+	 * next sequence number the other side expects. Returns the number of
+	 * frames released.
+	 */
+	public synchronized int acknowledge(int iSeqNo)
+	{
+		iSeqNo &= WINDOW_MASK;
+		int distance = (iSeqNo - windowStart) & WINDOW_MASK;
+
+		if (numberOfPendingFrames == 0 || distance == 0 || distance > MAX_ACK_DISTANCE)
+		{
+			return 0;
+		}
+
+		int released = 0;
+		Slot newestReleased = null;
+
+		for (int i = 0; i < distance; i++)
+		{
+			Slot slot = slots[(windowStart + i) & WINDOW_MASK];
+
+			if (slot.frame != null)
+			{
+				newestReleased = slot;
+				released++;
+			}
+		}
+
+		// like TCP, one sample per acknowledgement, taken from the newest frame
+		if (newestReleased != null)
+		{
+			sampleRoundTrip(newestReleased);
+		}
+
+		for (int i = 0; i < distance; i++)
+		{
+			Slot slot = slots[(windowStart + i) & WINDOW_MASK];
+
+			if (slot.frame != null)
+			{
+				release(slot);
+			}
+		}
+
+		this.windowStart = iSeqNo;
+
+		return released;
+	}
+
+
+	/**
+	 * Handles a VNAK: everything below iSeqNo has been received, all pending
+	 * frames from iSeqNo on are sent again right away.
+	 */
+	public synchronized void retransmitFrom(int iSeqNo)
+	{
+		acknowledge(iSeqNo);
+
+		for (int i = 0, found = 0; i < WINDOW_SIZE && found < numberOfPendingFrames; i++)
+		{
+			Slot slot = slots[(windowStart + i) & WINDOW_MASK];
+
+			if (slot.frame != null)
+			{
+				found++;
+				slot.timeout.cancel();
+				slot.frame.setRetransmitted(true);
+				slot.retransmit();
+			}
+		}
+	}
+
+
+	/**
+	 * Releases the oldest pending frame with the given subclass that waits for
+	 * a reply. Returns false if there was no such frame.
+	 */
+	public synchronized boolean setFrameReplied(long subclass)
+	{
+		for (int i = 0, found = 0; i < WINDOW_SIZE && found < numberOfPendingFrames; i++)
+		{
+			Slot slot = slots[(windowStart + i) & WINDOW_MASK];
+
+			if (slot.frame != null)
+			{
+				found++;
+
+				if (slot.awaitingReply && slot.frame.getSubclass() == subclass)
+				{
+					sampleRoundTrip(slot);
+					release(slot);
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+
+	public synchronized int getNumberOfPendingFrames()
+	{
+		return numberOfPendingFrames;
+	}
+
+
+	private void sampleRoundTrip(Slot slot)
+	{
+		if (slot.frame.getRetransmitCount() == 0)
+		{
+			long roundTripTime = System.nanoTime() - slot.sentAt;
+
+			estimator.addSample(roundTripTime / 1000000.0);
+			metrics.roundTripMeasured(roundTripTime);
+		}
+	}
+
+
+	private void release(Slot slot)
+	{
+		if (slot.timeout != null)
+		{
+			slot.timeout.cancel();
+		}
+
+		slot.frame = null;
+		slot.timeout = null;
+		numberOfPendingFrames--;
+	}
+
+
+	/**
+	 * One position of the window. Slots are reused for every frame with the
+	 * same sequence number, a stale timeout is recognized by not being the
+	 * slot's current one anymore.
+	 */
+	private class Slot implements Runnable
+	{
+
+		private FullFrame frame;
+
+		private boolean awaitingReply;
+
+		private long sentAt;
+
+		private TimerWheel.Timeout timeout;
+
+
+		public void schedule()
+		{
+			long delay = frame.getNextRetransmitTimestamp() - System.currentTimeMillis();
+			this.timeout = timerWheel.schedule(this, delay);
+		}
+
+
+		@Override
+		public void run()
+		{
+			synchronized (FrameSendWindow.this)
+			{
+				if (running == false || frame == null || timeout == null || !timeout.isExpired())
+				{
+					return;
+				}
+
+				frame.setRetransmitted(true);
+
+				if (frame.getRetransmitCount() >= PeerConstants.TRANSMISSION_MAX_RETRIES)
+				{
+					logger.error("Did not receive {} for frame={} after {} retries",
+							new Object[]{ awaitingReply ? "a REPLY" : "an ACK", frame, frame.getRetransmitCount() });
+
+					giveUp();
+				}
+				else if (frame.getFullTimestamp() + PeerConstants.TRANSMISSION_RETRY_MAX_MSECS <= System.currentTimeMillis())
+				{
+					logger.error("Did not receive {} for frame={} after {} msecs",
+							new Object[]{ awaitingReply ? "a REPLY" : "an ACK", frame, (System.currentTimeMillis() - frame.getFullTimestamp()) });
+
+					giveUp();
+				}
+				else
+				{
+					retransmit();
+				}
+			}
+		}
+
+
+		private void retransmit()
+		{
+			logger.debug("Retransmitting #{} frame={}", frame.getRetransmitCount(), frame);
+
+			iaxPeer.sendFrame(frame, false, false);
+			metrics.frameRetransmitted();
+
+			frame.incRetransmitCount();
+			frame.updateNextRetransmitTimestamp(estimator.getRetransmitTimeout(frame.getRetransmitCount()));
+			schedule();
+		}
+
+
+		private void giveUp()
+		{
+			FullFrame failedFrame = frame;
+			boolean failedAwaitingReply = awaitingReply;
+
+			release(this);
+			metrics.retransmitGivenUp();
+
+			if (peerObserver == null)
+			{
+				return;
+			}
+
+			if (failedAwaitingReply)
+			{
+				peerObserver.iaxClientOnReplyError(iaxPeer, failedFrame);
+			}
+			else
+			{
+				peerObserver.iaxClientOnRetransmitError(iaxPeer, failedFrame);
+			}
+		}
+
+	}
+
+}
@@ -3,10 +3,11 @@ package com.misternerd.djiax;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
-import java.util.Hashtable;
-import java.util.Timer;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,11 +19,14 @@ import com.misternerd.djiax.io.frame.full.IaxFrame;
 import com.misternerd.djiax.io.frame.full.IaxFrameSubclass;
 import com.misternerd.djiax.io.frame.ie.Refresh;
 import com.misternerd.djiax.io.frame.ie.Username;
+import com.misternerd.djiax.metrics.PeerMetrics;
 import com.misternerd.djiax.state.AbstractClientPeerState;
 import com.misternerd.djiax.state.peer.RegSent;
 import com.misternerd.djiax.state.peer.Releasing;
 import com.misternerd.djiax.state.peer.Unregistered;
 import com.misternerd.djiax.util.MediaFormat;
+import com.misternerd.djiax.util.RetransmitTimeoutEstimator;
+import com.misternerd.djiax.util.TimerWheel;
 
 /**
  * This class shapes an IAX2 client. A client is only able to connect to a
@@ -55,25 +59,45 @@ public class IaxPeer
 
 	private PeerConfiguration peerConfiguration;
 
-	private Call[] activeCalls;
+	/**
+	 * The calls of this peer, their frames are routed by the transport hub.
+	 */
+	private final Set<Call> activeCalls = Collections.newSetFromMap(new ConcurrentHashMap<Call, Boolean>());
+
+	private final InetSocketAddress serverAddress;
 
-	private Hashtable<Short, Call> callByDestinationNumberLookup;
+	private FrameSendWindow sendWindow;
 
-	private FrameRetransmitTask frameRetransmitTask;
+	private RetransmitTimeoutEstimator retransmitTimeoutEstimator;
 
-	private Timer peerRetransmitTimer;
+	private TimerWheel timerWheel;
 
-	private PeerSocketThread socketReceiverThread;
+	private final PeerMetrics metrics = new PeerMetrics();
 
-	private long nextSourceCallNumber = 0;
+	private TransportHub transportHub;
+
+	/**
+	 * A shared hub outlives its peers, a peer's own hub is stopped with it.
+	 */
+	private boolean transportHubShared;
 
-	private int numberOfActiveCalls = 0;
+	private final AtomicInteger numberOfActiveCalls = new AtomicInteger();
 	
-	private ExecutorService callExecutorService;
+	private CallScheduler callScheduler;
+
+	private MediaClock mediaClock;
+
+	private TrunkMode trunkMode = TrunkMode.NONE;
+
+	/**
+	 * Collects the calls' MiniFrames while trunking is enabled, null otherwise.
+	 */
+	private volatile PeerTrunk trunk;
 
 
 	protected IaxPeer(String host, int port, String username, String password,
-			int maxNumberOfCalls, IaxClientObserver peerObserver, short peerSourceCallNumber)
+			int maxNumberOfCalls, IaxClientObserver peerObserver, short peerSourceCallNumber, TimerWheel timerWheel,
+			CallScheduler callScheduler, MediaClock mediaClock, TransportHub transportHub, boolean transportHubShared)
 			throws IOException
 	{
 		InetAddress inetAddress = InetAddress.getByName(host);
@@ -81,21 +105,25 @@ public class IaxPeer
 		this.peerName = String.format("peer-%d", peerSourceCallNumber);
 		this.peerObserver = peerObserver;
 		this.peerSourceCallNumber = peerSourceCallNumber;
-		this.activeCalls = new Call[maxNumberOfCalls];
-		this.callByDestinationNumberLookup = new Hashtable<Short, Call>();
-		this.peerConfiguration = new PeerConfiguration(peerName, username, password, inetAddress, port, maxNumberOfCalls);
+		this.peerConfiguration = new PeerConfiguration(peerName, username, password, inetAddress, port, maxNumberOfCalls, 
+				transportHub.getNumberOfSockets());
+		this.serverAddress = new InetSocketAddress(inetAddress, port);
 		this.peerLastRegisteredTimestamp = System.currentTimeMillis() - 5;
-		this.peerRetransmitTimer = new Timer(peerName + "-timer");
-		this.socketReceiverThread = new PeerSocketThread(this, peerConfiguration);
-		this.frameRetransmitTask = new FrameRetransmitTask(this, socketReceiverThread, peerObserver);
-		this.callExecutorService = Executors.newFixedThreadPool(maxNumberOfCalls + 1);
+		this.timerWheel = timerWheel;
+		this.transportHub = transportHub;
+		this.transportHubShared = transportHubShared;
+		this.retransmitTimeoutEstimator = new RetransmitTimeoutEstimator(PeerConstants.FRAME_RETRANSMIT_TIMEOUT_IN_MSECS,
+				PeerConstants.FRAME_RETRANSMIT_TIMEOUT_MIN_MSECS, PeerConstants.FRAME_RETRANSMIT_TIMEOUT_MAX_MSECS, 
+				PeerConstants.TIMER_WHEEL_TICK_DURATION);
+		this.sendWindow = new FrameSendWindow(this, timerWheel, peerObserver, retransmitTimeoutEstimator, metrics);
+		this.callScheduler = callScheduler;
+		this.mediaClock = mediaClock;
 	}
 	
 	
 	public void connect() throws PeerException
 	{
-		socketReceiverThread.start();
-		peerRetransmitTimer.schedule(frameRetransmitTask, 1000, 1000);
+		transportHub.attach(this);
 		
 		setPeerState(new Unregistered(this));
 
@@ -117,22 +145,6 @@ public class IaxPeer
 	}
 
 
-	public void handleIncomingMiniFrame(MiniFrame miniFrame)
-	{
-		if (miniFrame == null)
-		{
-			return;
-		}
-
-		Call call = callByDestinationNumberLookup.get(miniFrame.getSourceCallNumber());
-
-		if (call != null)
-		{
-			call.receiveFrame(miniFrame);
-		}
-	}
-
-
 	public void handleIncomingFullFrame(FullFrame receivedFrame)
 	{
 		if (receivedFrame == null)
@@ -154,25 +166,31 @@ public class IaxPeer
 	protected void handleIncomingFullFrameForPeer(FullFrame receivedFrame)
 	{
 		boolean receivedInOrder;
+
+		if (receivedFrame.getReceivedNanoTime() != 0)
+		{
+			metrics.frameDispatched(receivedFrame.getReceivedNanoTime());
+		}
+
+		// every FullFrame implicitly acknowledges our frames below its iSeqNo
+		sendWindow.acknowledge(receivedFrame.getISeqNo());
+
 		if (receivedFrame instanceof IaxFrame)
 		{
 			IaxFrame iaxFrame = (IaxFrame) receivedFrame;
 
 			if (iaxFrame.getIaxClass() == IaxFrameSubclass.ACK)
 			{
-				if (frameRetransmitTask.framesAwaitingAckQueue.containsKey(iaxFrame.getTimestamp()))
-				{
-					frameRetransmitTask.framesAwaitingAckQueue.remove(iaxFrame.getTimestamp());
-				}
-				else
-				{
-					logger.info("Received ACK frame for non-existing frame with timestamp={}", iaxFrame.getTimestamp());
-				}
-
+				receivedInOrder = true;
+			}
+			else if (iaxFrame.getIaxClass() == IaxFrameSubclass.VNAK)
+			{
+				metrics.vnakReceived();
+				sendWindow.retransmitFrom(iaxFrame.getISeqNo());
 				receivedInOrder = true;
 			}
 			else if (iaxFrame.getIaxClass() == IaxFrameSubclass.INVAL || iaxFrame.getIaxClass() == IaxFrameSubclass.TXACC || 
-					iaxFrame.getIaxClass() == IaxFrameSubclass.TXCNT || iaxFrame.getIaxClass() == IaxFrameSubclass.VNAK)
+					iaxFrame.getIaxClass() == IaxFrameSubclass.TXCNT)
 			{
 				receivedInOrder = true;
 			}
@@ -220,6 +238,9 @@ public class IaxPeer
 			this.sendFrame(new IaxFrame(receivedFrame.getSourceCallNumber(), false, receivedFrame.getDestinationCallNumber(), receivedFrame.getTimestamp(), this.getOSeqNo(), inboundSeqNumber,
 					IaxFrameSubclass.VNAK), true, false);
 
+			metrics.outOfOrderDiscarded();
+			metrics.vnakSent();
+
 			return;
 		}
 
@@ -229,20 +250,20 @@ public class IaxPeer
 
 	protected void handleIncomingFullFrameForCall(FullFrame receivedFrame)
 	{
-		int callIndex = receivedFrame.getDestinationCallNumber() - PeerConstants.PEER_MAX_SOURCE_CALL_NUMBER;
+		int callNumber = receivedFrame.getDestinationCallNumber();
 
-		if (callIndex >= 0 && callIndex < peerConfiguration.maxNumberOfCalls)
+		if (callNumber >= PeerConstants.PEER_MAX_SOURCE_CALL_NUMBER)
 		{
-			Call call = activeCalls[callIndex];
+			Call call = transportHub.getCall(callNumber);
 
-			if (call != null)
+			if (call != null && call.getPeer() == this)
 			{
 				if (call.getDestinationCallNumber() == 0)
 				{
 					if(receivedFrame instanceof IaxFrame)
 					{
 						call.setDestinationCallNumber(((IaxFrame) receivedFrame).getSourceCallNumber());
-						callByDestinationNumberLookup.put(((IaxFrame) receivedFrame).getSourceCallNumber(), call);
+						transportHub.routeCall(serverAddress, ((IaxFrame) receivedFrame).getSourceCallNumber(), call);
 					}
 					else
 					{
@@ -254,7 +275,7 @@ public class IaxPeer
 			}
 			else
 			{
-				logger.warn("Received frame={} for unknown callIndex={}", receivedFrame, callIndex);
+				logger.warn("Received frame={} for unknown callNumber={}", receivedFrame, callNumber);
 			}
 		}
 		else
@@ -266,18 +287,21 @@ public class IaxPeer
 
 	public synchronized void stopClient()
 	{
-		this.socketReceiverThread.stopThread();
-		this.frameRetransmitTask.stopThread();
-
+		// hang up while the sockets are still open, so the server learns about it
 		for (Call call : activeCalls)
 		{
-			if (call != null)
-			{
-				call.callStop();
-			}
+			call.callStop();
+		}
+
+		setTrunkMode(TrunkMode.NONE);
+		this.transportHub.detach(this);
+		this.sendWindow.stop();
+
+		if (!transportHubShared)
+		{
+			this.transportHub.stop();
 		}
 
-		peerRetransmitTimer.cancel();
 		peerObserver.iaxClientOnDisconnect(this);
 	}
 
@@ -320,6 +344,8 @@ public class IaxPeer
 		{
 			outboundSeqNumber = 0;
 		}
+
+		sendWindow.reset();
 	}
 
 
@@ -363,18 +389,8 @@ public class IaxPeer
 	{
 		try
 		{
-			socketReceiverThread.sendFrame(frame);
-
-			frame.updateNextRetransmitTimestamp();
-
-			if (requiresAck == true)
-			{
-				frameRetransmitTask.framesAwaitingAckQueue.put(frame.getTimestamp(), frame);
-			}
-			else if (requiresReply == true)
-			{
-				frameRetransmitTask.framesAwaitingReplyQueue.put(frame.getSubclass(), frame);
-			}
+			transportHub.sendFrame(frame, serverAddress, metrics.getSent());
+			sendWindow.frameSent(frame, requiresAck, requiresReply);
 
 			return true;
 		}
@@ -390,7 +406,17 @@ public class IaxPeer
 	{
 		try
 		{
-			socketReceiverThread.sendFrame(frame);
+			PeerTrunk currentTrunk = trunk;
+
+			if (currentTrunk != null)
+			{
+				currentTrunk.sendFrame(frame);
+			}
+			else
+			{
+				transportHub.sendFrame(frame, serverAddress, metrics.getSent());
+			}
+
 			return true;
 		}
 		catch (Exception e)
@@ -407,20 +433,10 @@ public class IaxPeer
 	 */
 	public void setFrameReplied(long subclass)
 	{
-		if (frameRetransmitTask.framesAwaitingReplyQueue.containsKey(subclass))
+		if (!sendWindow.setFrameReplied(subclass))
 		{
-			frameRetransmitTask.framesAwaitingReplyQueue.remove(subclass);
+			logger.debug("No pending frame with subclass={} among {} frames, already acknowledged", subclass, sendWindow.getNumberOfPendingFrames());
 		}
-		else
-		{
-			logger.warn("Cannot remove replied frame with subclass={} from queue with {} items", subclass, frameRetransmitTask.framesAwaitingReplyQueue.size());
-		}
-	}
-
-
-	public void setFrameAckd(long subclass)
-	{
-		frameRetransmitTask.framesAwaitingAckQueue.remove(subclass);
 	}
 
 
@@ -461,53 +477,48 @@ public class IaxPeer
 	/**
 	 * Request a new call. The call will only be created but not started yet. If
 	 * this returns null, the call could not be created because of the size
-	 * limit.
+	 * limit, or because all free call numbers are still in quarantine.
 	 */
 	public Call createCall(String number, MediaFormat[] audioCodecs)
 	{
-		synchronized (activeCalls)
+		if (numberOfActiveCalls.incrementAndGet() > peerConfiguration.maxNumberOfCalls)
 		{
-			if (numberOfActiveCalls >= peerConfiguration.maxNumberOfCalls)
-			{
-				logger.warn("Cannot create call, activeCalls={}, maximum={}", numberOfActiveCalls, peerConfiguration.maxNumberOfCalls);
-				return null;
-			}
-
-			int callIndex;
-
-			for (int i = 0; i < peerConfiguration.maxNumberOfCalls; i++)
-			{
-				callIndex = (int) (nextSourceCallNumber++ % peerConfiguration.maxNumberOfCalls);
-
-				if (activeCalls[callIndex] == null)
-				{
-					short sourceCallNumber = (short) (callIndex + PeerConstants.PEER_MAX_SOURCE_CALL_NUMBER);
-					activeCalls[callIndex] = new Call(this, sourceCallNumber, number, audioCodecs, (short) 8);
-					numberOfActiveCalls++;
-
-					return activeCalls[callIndex];
-				}
-			}
+			numberOfActiveCalls.decrementAndGet();
+			logger.warn("Cannot create call, maximum={} reached", peerConfiguration.maxNumberOfCalls);
+			return null;
+		}
 
-			logger.warn("Failed to create call, numberOfActiveCalls={}, max={}", numberOfActiveCalls, peerConfiguration.maxNumberOfCalls);
+		int sourceCallNumber = transportHub.acquireCallNumber();
 
+		if (sourceCallNumber < 0)
+		{
+			numberOfActiveCalls.decrementAndGet();
+			logger.warn("Failed to create call, no call number free, quarantined={}", 
+					transportHub.getNumberOfQuarantinedCallNumbers());
 			return null;
 		}
+
+		Call call = new Call(this, (short) sourceCallNumber, number, audioCodecs, (short) 8);
+		activeCalls.add(call);
+		transportHub.addCall(call);
+
+		return call;
 	}
 
 
 	public int getNumberOfActiveCalls()
 	{
-		synchronized (activeCalls)
-		{
-			return numberOfActiveCalls;
-		}
+		return numberOfActiveCalls.get();
 	}
 
 
-	public Timer getRetransmitTimer()
+	/**
+	 * The timer wheel shared by all peers, used for every retransmission,
+	 * keep alive and registration timer.
+	 */
+	public TimerWheel getTimerWheel()
 	{
-		return peerRetransmitTimer;
+		return timerWheel;
 	}
 
 
@@ -517,25 +528,38 @@ public class IaxPeer
 	}
 
 
+	/**
+	 * The address of the server, every frame of the peer and its calls has
+	 * to come from it.
+	 */
+	public InetSocketAddress getServerAddress()
+	{
+		return serverAddress;
+	}
+
+
+	/**
+	 * Round trip estimate from the peer's own frames, new calls start with it.
+	 */
+	public RetransmitTimeoutEstimator getRetransmitTimeoutEstimator()
+	{
+		return retransmitTimeoutEstimator;
+	}
+
+
 	/**
 	 * A call should call this so the peer nows that it can remove the call and
 	 * re-assign the number.
 	 */
 	protected void callStopped(Call call)
 	{
-		callByDestinationNumberLookup.remove(call.getDestinationCallNumber());
-
-		synchronized (activeCalls)
+		if (activeCalls.remove(call))
 		{
-			int callIndex = call.getSourceCallNumber() - PeerConstants.PEER_MAX_SOURCE_CALL_NUMBER;
+			transportHub.removeCall(serverAddress, call);
+			numberOfActiveCalls.decrementAndGet();
+			metrics.queueDropped(call.getMetrics().getQueueDrops());
 
-			if (callIndex >= 0 && callIndex < peerConfiguration.maxNumberOfCalls && activeCalls[callIndex] == call)
-			{
-				activeCalls[callIndex] = null;
-				numberOfActiveCalls--;
-
-				return;
-			}
+			return;
 		}
 
 		logger.warn("Cannot remove call={} from open calls, non-existent", call);
@@ -548,9 +572,85 @@ public class IaxPeer
 	}
 
 
-	public void startCallThreadForCall(Call call)
+	/**
+	 * The metrics of the peer and all its calls, updated in place.
+	 */
+	public PeerMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+
+	/**
+	 * Takes a snapshot of the metrics of the peer and all its calls, without
+	 * pausing any of them.
+	 */
+	public PeerMetrics.Snapshot getMetricsSnapshot()
+	{
+		long activeCallQueueDrops = 0;
+
+		for (Call call : activeCalls)
+		{
+			activeCallQueueDrops += call.getMetrics().getQueueDrops();
+		}
+
+		return metrics.snapshot(activeCallQueueDrops);
+	}
+
+
+	public synchronized TrunkMode getTrunkMode()
+	{
+		return trunkMode;
+	}
+
+
+	/**
+	 * Switches between sending each call's MiniFrames on their own and
+	 * trunking them, can be changed at any time. Media collected for the
+	 * previous trunk is sent right away.
+	 */
+	public synchronized void setTrunkMode(TrunkMode trunkMode)
+	{
+		if (this.trunk != null)
+		{
+			PeerTrunk previousTrunk = this.trunk;
+			this.trunk = null;
+			previousTrunk.stop();
+		}
+
+		if (trunkMode != TrunkMode.NONE)
+		{
+			PeerTrunk newTrunk = new PeerTrunk(transportHub, serverAddress, metrics.getSent(), timerWheel, trunkMode == TrunkMode.TRUNK_TIMESTAMPED);
+			newTrunk.start();
+			this.trunk = newTrunk;
+		}
+
+		this.trunkMode = trunkMode;
+	}
+
+
+	/**
+	 * Returns the local address of the socket the given call sends and
+	 * receives its frames through.
+	 */
+	public InetSocketAddress getLocalAddress(short sourceCallNumber) throws IOException
+	{
+		return transportHub.getLocalAddress(transportHub.getShard(sourceCallNumber));
+	}
+
+
+	public CallScheduler getCallScheduler()
+	{
+		return callScheduler;
+	}
+
+
+	/**
+	 * Paces the audio of the calls which have an audio source.
+	 */
+	public MediaClock getMediaClock()
 	{
-		callExecutorService.submit(call);
+		return mediaClock;
 	}
 
 }
\ No newline at end of file
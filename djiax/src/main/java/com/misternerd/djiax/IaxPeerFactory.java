@@ -0,0 +1,196 @@
+package com.misternerd.djiax;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.misternerd.djiax.exception.NoPeerAvailableException;
+import com.misternerd.djiax.util.TimerWheel;
+import com.misternerd.djiax.util.VirtualThreads;
+
+public class IaxPeerFactory
+{
+
+	private static final Logger logger = LoggerFactory.getLogger(IaxPeerFactory.class);
+
+	private static final Map<Short, IaxPeer> activePeers = new HashMap<>();
+
+	private static Short nextPeerSourceCallNumber = 1;
+
+	private static int maxNumberOfCallsPerPeer = 50;
+
+	private static int numberOfSocketShardsPerPeer = 1;
+
+	private static CallExecutionMode callExecutionMode = CallExecutionMode.THREAD_PER_CALL;
+
+	/**
+	 * Shared by all peers, created with the first peer in EVENT_LOOP mode.
+	 */
+	private static EventLoopCallScheduler eventLoopCallScheduler;
+
+	/**
+	 * Shared by all peers in THREAD_PER_CALL mode, its threads come and go
+	 * with the calls.
+	 */
+	private static ThreadPerCallScheduler threadPerCallScheduler;
+
+	/**
+	 * The hub all peers created from now on use, null if each peer opens its
+	 * own sockets.
+	 */
+	private static TransportHub sharedTransportHub;
+
+	/**
+	 * Paces the audio of all calls with an audio source, its thread only runs
+	 * while there are some.
+	 */
+	private static final MediaClock mediaClock = new MediaClock("djiax-media-clock", PeerConstants.CALL_PACKETIZATION_INTERVAL);
+
+	private static final TimerWheel timerWheel = new TimerWheel("djiax-timer", 
+			PeerConstants.TIMER_WHEEL_TICK_DURATION, PeerConstants.TIMER_WHEEL_SIZE);
+
+
+	public static synchronized IaxPeer createNewPeer(String host, int port, String username, String password, 
+			IaxClientObserver peerObserver) throws IOException, NoPeerAvailableException
+	{
+		for (int j = 0; j < PeerConstants.PEER_MAX_SOURCE_CALL_NUMBER; j++)
+		{
+			nextPeerSourceCallNumber++;
+
+			if (nextPeerSourceCallNumber > PeerConstants.PEER_MAX_SOURCE_CALL_NUMBER)
+			{
+				nextPeerSourceCallNumber = 1;
+			}
+
+			if (!activePeers.containsKey(nextPeerSourceCallNumber))
+			{
+				TransportHub transportHub = sharedTransportHub;
+
+				if (transportHub == null)
+				{
+					transportHub = new TransportHub("Peer-peer-" + nextPeerSourceCallNumber, numberOfSocketShardsPerPeer);
+				}
+
+				IaxPeer iaxPeer = new IaxPeer(host, port, username, password, maxNumberOfCallsPerPeer, peerObserver, 
+						nextPeerSourceCallNumber, timerWheel, createCallScheduler(), mediaClock, transportHub, transportHub == sharedTransportHub);
+				activePeers.put(nextPeerSourceCallNumber, iaxPeer);
+
+				return iaxPeer;
+			}
+		}
+
+		logger.error("Failed to create new IaxPeer after {} tries, stopped at index {}", 
+				PeerConstants.PEER_MAX_SOURCE_CALL_NUMBER, nextPeerSourceCallNumber);
+
+		throw new NoPeerAvailableException();
+	}
+
+
+	protected synchronized void removePeer(IaxPeer peer)
+	{
+		IaxPeer peerInMap = activePeers.get(peer.getSourceCallNumber());
+
+		if (peerInMap == null || peer != peerInMap)
+		{
+			logger.warn("Tried to remove peer with sourceCallNumber={}, but is not in list!", peer.getSourceCallNumber());
+		}
+
+		activePeers.remove(peer.getSourceCallNumber());
+	}
+
+
+	/**
+	 * Sets how many calls peers created from now on can have at the same time,
+	 * at most PeerConstants.PEER_MAX_NUMBER_OF_CALLS.
+	 */
+	public static void setMaxNumberOfCallsPerPeer(int numberOfCalls)
+	{
+		if (numberOfCalls < 1 || numberOfCalls > PeerConstants.PEER_MAX_NUMBER_OF_CALLS)
+		{
+			throw new IllegalArgumentException("A peer can have between 1 and " + PeerConstants.PEER_MAX_NUMBER_OF_CALLS 
+					+ " calls, numberOfCalls=" + numberOfCalls);
+		}
+
+		maxNumberOfCallsPerPeer = numberOfCalls;
+	}
+
+
+	/**
+	 * Sets over how many UDP sockets, each with its own receiver thread, the
+	 * calls of peers created from now on are spread. Only used for peers
+	 * which don't share a transport hub.
+	 */
+	public static void setNumberOfSocketShardsPerPeer(int numberOfShards)
+	{
+		if (numberOfShards < 1)
+		{
+			throw new IllegalArgumentException("A peer needs at least one socket");
+		}
+
+		numberOfSocketShardsPerPeer = numberOfShards;
+	}
+
+
+	/**
+	 * Lets all peers created from now on share the hub's sockets and receiver
+	 * threads instead of opening their own, so hundreds of peers don't need
+	 * hundreds of sockets and threads. The hub stays open when its peers are
+	 * stopped, null goes back to sockets per peer.
+	 */
+	public static synchronized void setSharedTransportHub(TransportHub transportHub)
+	{
+		sharedTransportHub = transportHub;
+	}
+
+
+	/**
+	 * Sets how the calls of peers created from now on are executed.
+	 * 
+	 * @throws UnsupportedOperationException VIRTUAL_THREAD on Java < 21
+	 */
+	public static synchronized void setCallExecutionMode(CallExecutionMode mode)
+	{
+		if (mode == CallExecutionMode.VIRTUAL_THREAD && !VirtualThreads.isSupported())
+		{
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+		}
+
+		callExecutionMode = mode;
+	}
+
+
+	private static CallScheduler createCallScheduler()
+	{
+		switch (callExecutionMode)
+		{
+			case EVENT_LOOP:
+			{
+				if (eventLoopCallScheduler == null)
+				{
+					eventLoopCallScheduler = new EventLoopCallScheduler("djiax-call-loop", 
+							Runtime.getRuntime().availableProcessors(), PeerConstants.CALL_FRAMES_PER_RUN);
+				}
+
+				return eventLoopCallScheduler;
+			}
+			case VIRTUAL_THREAD:
+			{
+				return new ThreadPerCallScheduler(VirtualThreads.newVirtualThreadPerTaskExecutor("djiax-call-"));
+			}
+			default:
+			{
+				if (threadPerCallScheduler == null)
+				{
+					threadPerCallScheduler = new ThreadPerCallScheduler(Executors.newCachedThreadPool());
+				}
+
+				return threadPerCallScheduler;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,202 @@
+package com.misternerd.djiax;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Paces the outbound audio of all calls with an audio source from a single
+ * thread. Once per interval the clock pulls one frame from every registered
+ * call and sends them back to back, stamped with the tick's time instead of
+ * the time they happen to be sent, so the streams are steady no matter how
+ * the sources produce their audio.
+ *
+ * Ticks are scheduled against the clock's start with the nano timer, so
+ * lateness doesn't add up. A clock that fell behind catches up by running the
+ * missed ticks right away, up to MEDIA_CLOCK_MAX_LATE_TICKS, beyond that the
+ * missed ticks are skipped.
+ *
+ * The thread is started with the first registered call and exits when the
+ * last one is gone, an idle clock has no thread.
+ */
+public class MediaClock implements Runnable
+{
+
+	private static final Logger logger = LoggerFactory.getLogger(MediaClock.class);
+
+	private final String name;
+
+	private final long interval;
+
+	private final long intervalNanos;
+
+	private final Set<Call> calls = Collections.newSetFromMap(new ConcurrentHashMap<Call, Boolean>());
+
+	private final AtomicBoolean threadRunning = new AtomicBoolean();
+
+	private volatile long numberOfTicks;
+
+	private volatile long numberOfSkippedTicks;
+
+	private volatile long maxLateness;
+
+
+	/**
+	 * @param interval The packetization interval in msecs
+	 */
+	public MediaClock(String name, long interval)
+	{
+		if (interval <= 0)
+		{
+			throw new IllegalArgumentException("Interval must be positive, interval=" + interval);
+		}
+
+		this.name = name;
+		this.interval = interval;
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+	}
+
+
+	/**
+	 * Pulls audio from the call with every tick from now on.
+	 */
+	void register(Call call)
+	{
+		if (calls.add(call) && threadRunning.compareAndSet(false, true))
+		{
+			Thread thread = new Thread(this, name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+
+	void unregister(Call call)
+	{
+		calls.remove(call);
+	}
+
+
+	public long getInterval()
+	{
+		return interval;
+	}
+
+
+	public int getNumberOfCalls()
+	{
+		return calls.size();
+	}
+
+
+	public long getNumberOfTicks()
+	{
+		return numberOfTicks;
+	}
+
+
+	/**
+	 * Ticks left out because the clock fell too far behind.
+	 */
+	public long getNumberOfSkippedTicks()
+	{
+		return numberOfSkippedTicks;
+	}
+
+
+	/**
+	 * The longest time (nanos) a tick ran after it was due.
+	 */
+	public long getMaxLateness()
+	{
+		return maxLateness;
+	}
+
+
+	public boolean isRunning()
+	{
+		return threadRunning.get();
+	}
+
+
+	@Override
+	public void run()
+	{
+		long startNanos = System.nanoTime();
+		long startMillis = System.currentTimeMillis();
+		long tick = 0;
+
+		while (true)
+		{
+			if (calls.isEmpty() && exitIfIdle())
+			{
+				return;
+			}
+
+			long due = startNanos + tick * intervalNanos;
+			long lateness = System.nanoTime() - due;
+
+			if (lateness < 0)
+			{
+				LockSupport.parkNanos(this, -lateness);
+				continue;
+			}
+
+			if (lateness > PeerConstants.MEDIA_CLOCK_MAX_LATE_TICKS * intervalNanos)
+			{
+				long skipped = lateness / intervalNanos;
+				logger.debug("Media clock {} fell {} ticks behind, skipping them", name, skipped);
+				numberOfSkippedTicks += skipped;
+				tick += skipped;
+				continue;
+			}
+
+			if (lateness > maxLateness)
+			{
+				maxLateness = lateness;
+			}
+
+			// stamped with the time the tick was due, not when it runs
+			long tickTime = startMillis + tick * interval;
+
+			for (Call call : calls)
+			{
+				try
+				{
+					call.pullAudio(tickTime);
+				}
+				catch (Throwable e)
+				{
+					logger.warn("Call " + call + " failed to send paced audio:", e);
+				}
+			}
+
+			tick++;
+			numberOfTicks++;
+		}
+	}
+
+
+	/**
+	 * Lets the thread go, unless a call registered in the meantime.
+	 */
+	private boolean exitIfIdle()
+	{
+		threadRunning.set(false);
+
+		// a register which still saw the thread running didn't start a new one
+		if (!calls.isEmpty() && threadRunning.compareAndSet(false, true))
+		{
+			return false;
+		}
+
+		return true;
+	}
+
+}
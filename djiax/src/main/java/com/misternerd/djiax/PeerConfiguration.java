@@ -0,0 +1,219 @@
+package com.misternerd.djiax;
+
+import java.net.InetAddress;
+
+import com.misternerd.djiax.io.frame.ie.ApparentAddr;
+import com.misternerd.djiax.io.frame.ie.Datetime;
+import com.misternerd.djiax.io.frame.ie.Refresh;
+import com.misternerd.djiax.util.OverflowPolicy;
+
+public class PeerConfiguration
+{
+
+	public final String peerName;
+	
+	public final String username;
+
+	public final String password;
+
+	public final InetAddress serverAddress;
+
+	public final int serverPort;
+	
+	public final int maxNumberOfCalls;
+
+	public final int numberOfSocketShards;
+
+	private long regRelTimestamp;
+
+	private Short serverSourceCallNumber;
+
+	private Datetime serverDatetime;
+
+	private int serverRefresh;
+
+	private ApparentAddr serverApparentAddr;
+
+	private volatile int inboundMediaQueueCapacity;
+
+	private volatile OverflowPolicy inboundMediaOverflowPolicy;
+
+	private volatile int inboundSignalingQueueCapacity;
+
+	private volatile boolean jitterBufferEnabled;
+
+	private volatile int inboundAudioBufferDuration;
+
+
+	public PeerConfiguration(String peerName, String username, String password, 
+			InetAddress serverAddress, int serverPort, int maxNumberOfCalls, int numberOfSocketShards)
+	{
+		this.peerName = peerName;
+		this.username = username;
+		this.password = password;
+		this.serverAddress = serverAddress;
+		this.serverPort = serverPort;
+		this.maxNumberOfCalls = maxNumberOfCalls;
+		this.numberOfSocketShards = numberOfSocketShards;
+		this.serverRefresh = PeerConstants.PEER_REGISTRATION_REFRESH;
+		this.inboundMediaQueueCapacity = PeerConstants.CALL_INBOUND_MEDIA_QUEUE_CAPACITY;
+		this.inboundMediaOverflowPolicy = OverflowPolicy.DROP_OLDEST;
+		this.inboundSignalingQueueCapacity = PeerConstants.CALL_INBOUND_SIGNALING_QUEUE_CAPACITY;
+	}
+
+
+	public long getRegRelTimestamp()
+	{
+		return regRelTimestamp;
+	}
+
+
+	public void setRegRelTimestamp(long regRelTimestamp)
+	{
+		this.regRelTimestamp = regRelTimestamp;
+	}
+
+
+	public Short getServerSourceCallNumber()
+	{
+		return serverSourceCallNumber;
+	}
+
+
+	public void setServerSourceCallNumber(Short serverSourceCallNumber)
+	{
+		this.serverSourceCallNumber = serverSourceCallNumber;
+	}
+
+
+	public Datetime getServerDatetime()
+	{
+		return serverDatetime;
+	}
+
+
+	public void setServerDatetime(Datetime serverDatetime)
+	{
+		this.serverDatetime = serverDatetime;
+	}
+
+
+	public int getServerRefresh()
+	{
+		return serverRefresh;
+	}
+
+
+	public void setServerRefresh(int serverRefresh)
+	{
+		this.serverRefresh = serverRefresh;
+	}
+
+
+	public ApparentAddr getServerApparentAddr()
+	{
+		return serverApparentAddr;
+	}
+
+
+	public void setServerApparentAddr(ApparentAddr serverApparentAddr)
+	{
+		this.serverApparentAddr = serverApparentAddr;
+	}
+
+
+	public int getInboundMediaQueueCapacity()
+	{
+		return inboundMediaQueueCapacity;
+	}
+
+
+	/**
+	 * Sets how many MiniFrames each call queues for its thread. Only affects
+	 * calls created afterwards.
+	 */
+	public void setInboundMediaQueueCapacity(int inboundMediaQueueCapacity)
+	{
+		this.inboundMediaQueueCapacity = inboundMediaQueueCapacity;
+	}
+
+
+	public OverflowPolicy getInboundMediaOverflowPolicy()
+	{
+		return inboundMediaOverflowPolicy;
+	}
+
+
+	/**
+	 * Defines which MiniFrame gets dropped when a call's media queue is full,
+	 * SPILL is not allowed for media. Only affects calls created afterwards.
+	 */
+	public void setInboundMediaOverflowPolicy(OverflowPolicy inboundMediaOverflowPolicy)
+	{
+		if (inboundMediaOverflowPolicy == OverflowPolicy.SPILL)
+		{
+			throw new IllegalArgumentException("Inbound media queues cannot spill");
+		}
+
+		this.inboundMediaOverflowPolicy = inboundMediaOverflowPolicy;
+	}
+
+
+	public int getInboundSignalingQueueCapacity()
+	{
+		return inboundSignalingQueueCapacity;
+	}
+
+
+	/**
+	 * Sets how many FullFrames each call queues before it spills to an
+	 * unbounded list. Signaling is never dropped. Only affects calls created
+	 * afterwards.
+	 */
+	public void setInboundSignalingQueueCapacity(int inboundSignalingQueueCapacity)
+	{
+		this.inboundSignalingQueueCapacity = inboundSignalingQueueCapacity;
+	}
+
+
+	public boolean isJitterBufferEnabled()
+	{
+		return jitterBufferEnabled;
+	}
+
+
+	/**
+	 * If enabled, each call reorders received audio in a jitter buffer and
+	 * hands it to the audio listener in an even pace, one frame per
+	 * packetization interval. Only affects calls created afterwards.
+	 */
+	public void setJitterBufferEnabled(boolean jitterBufferEnabled)
+	{
+		this.jitterBufferEnabled = jitterBufferEnabled;
+	}
+
+
+	public int getInboundAudioBufferDuration()
+	{
+		return inboundAudioBufferDuration;
+	}
+
+
+	/**
+	 * Sets how many msecs of received audio each call buffers off-heap for
+	 * Call.readAudio(), 0 disables the buffer. While enabled, received audio
+	 * goes into the buffer instead of to the audio listener, so a slow reader
+	 * can't hold up the call's signaling. Only affects calls created
+	 * afterwards.
+	 */
+	public void setInboundAudioBufferDuration(int inboundAudioBufferDuration)
+	{
+		if (inboundAudioBufferDuration < 0)
+		{
+			throw new IllegalArgumentException("Duration must not be negative, duration=" + inboundAudioBufferDuration);
+		}
+
+		this.inboundAudioBufferDuration = inboundAudioBufferDuration;
+	}
+
+}
@@ -0,0 +1,178 @@
+package com.misternerd.djiax;
+
+/**
+ * This class only contains constants used throughout the programm.
+ */
+public final class PeerConstants
+{
+
+	/**
+	 * The maximum source call number to be used by this peer.
+	 */
+	public static final short PEER_MAX_SOURCE_CALL_NUMBER = 1000;
+
+	/**
+	 * Calls use the call numbers above the peer's up to the largest 15 bit
+	 * number, so a single peer can have this many calls at the same time.
+	 */
+	public static final int PEER_MAX_NUMBER_OF_CALLS = (1 << 15) - PEER_MAX_SOURCE_CALL_NUMBER;
+
+	/**
+	 * Time (msecs) a call number isn't reused after its call ended, so late
+	 * retransmissions of the old call can't reach a new one (RFC 5456). Twice
+	 * the time either side keeps retransmitting.
+	 */
+	public static final long CALL_NUMBER_QUARANTINE = 2 * PeerConstants.TRANSMISSION_RETRY_MAX_MSECS;
+
+	/**
+	 * We'll try to use this period (seconds) until out registration times out.
+	 */
+	public static final short PEER_REGISTRATION_REFRESH = 60;
+
+	/**
+	 * Size of the buffers a single frame is sent from or received into.
+	 */
+	public static final int FRAME_BUFFER_SIZE = 10240;
+
+	/**
+	 * Receive buffer (bytes) requested for every socket, the OS may grant less.
+	 */
+	public static final int SOCKET_RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * Interval (msecs) in which the media of all calls is sent as one trunk
+	 * MetaFrame, if trunking is enabled.
+	 */
+	public static final long TRUNK_INTERVAL = 20;
+
+	/**
+	 * Maximum size of a trunk MetaFrame, so it fits into an ethernet frame
+	 * without fragmentation. A full trunk is sent right away.
+	 */
+	public static final int TRUNK_MAX_FRAME_SIZE = 1400;
+
+	/**
+	 * How often this do we retry our credentials when we got a REGREJ?
+	 * <em>-1</em> is indefinitely, <em>0</em> turns retrying of.
+	 */
+	public static final int REGISTRATION_REJECTED_NUMBER_OF_RETRIES = 1;
+
+	/**
+	 * Number of seconds to wait between rejected credentials & retry.
+	 */
+	public static final int REGISTRATION_REJECTED_RETRY_WAIT = 10;
+
+	/**
+	 * The maximum number of msecs that we'll retry to send frames.
+	 */
+	public static final long TRANSMISSION_RETRY_MAX_MSECS = 10000;
+
+	/**
+	 * Maximum number of times a frame should be resent. Backing off from
+	 * FRAME_RETRANSMIT_TIMEOUT_MIN_MSECS, the last of them goes out shortly
+	 * before TRANSMISSION_RETRY_MAX_MSECS.
+	 */
+	public static final int TRANSMISSION_MAX_RETRIES = 7;
+	
+	/**
+	 * Retransmission timeout used until a round trip has been measured.
+	 */
+	public static final long FRAME_RETRANSMIT_TIMEOUT_IN_MSECS = 1000;
+
+	/**
+	 * Lower bound of the measured retransmission timeout. The remote side may
+	 * take a while before it ACKs, so this stays well above a LAN round trip,
+	 * the same as Asterisk's MIN_RETRY_TIME.
+	 */
+	public static final long FRAME_RETRANSMIT_TIMEOUT_MIN_MSECS = 100;
+
+	/**
+	 * Upper bound of the retransmission timeout, including backoff.
+	 */
+	public static final long FRAME_RETRANSMIT_TIMEOUT_MAX_MSECS = 3000;
+	
+	/**
+	 * Maximum time (msecs) a call thread parks without work before it checks
+	 * if it is still running.
+	 */
+	public static final long CALL_THREAD_MAX_PARK_TIME = 500;
+
+	/**
+	 * Maximum number of queued frames a call handles before it yields, so a
+	 * busy call cannot starve the others sharing its thread.
+	 */
+	public static final int CALL_FRAMES_PER_RUN = 32;
+
+	/**
+	 * Initial size of an event loop's run queue, it spills beyond.
+	 */
+	public static final int CALL_EVENT_LOOP_QUEUE_CAPACITY = 1024;
+
+	/**
+	 * Time (msecs) an event loop may be busy without running out of work
+	 * before the calls get spread over one more loop.
+	 */
+	public static final long CALL_EVENT_LOOP_GROW_AFTER = 50;
+
+	/**
+	 * Time (msecs) without work after which an event loop's thread exits.
+	 */
+	public static final long CALL_EVENT_LOOP_IDLE_TIMEOUT = 10000;
+	
+	public static final long CALL_TIME_BETWEEN_PINGS = 20000;
+
+	public static final long CALL_TIME_BETWEEN_LAGRQS = 10000;
+
+	/**
+	 * Resolution (msecs) of the timer wheel running all protocol timers.
+	 */
+	public static final long TIMER_WHEEL_TICK_DURATION = 10;
+
+	/**
+	 * Number of buckets of the timer wheel, one revolution covers
+	 * TIMER_WHEEL_SIZE * TIMER_WHEEL_TICK_DURATION msecs.
+	 */
+	public static final int TIMER_WHEEL_SIZE = 512;
+
+	/**
+	 * Default number of received MiniFrames a call buffers for its thread.
+	 */
+	public static final int CALL_INBOUND_MEDIA_QUEUE_CAPACITY = 64;
+
+	/**
+	 * Default number of received FullFrames a call buffers before spilling.
+	 */
+	public static final int CALL_INBOUND_SIGNALING_QUEUE_CAPACITY = 32;
+
+	/**
+	 * Msecs of audio per received frame, the jitter buffer plays out one
+	 * frame per interval.
+	 */
+	public static final int CALL_PACKETIZATION_INTERVAL = 20;
+
+	/**
+	 * Bytes per msec of audio in the largest supported format, 16 bit linear
+	 * at 8 kHz. Buffers sized in msecs use it.
+	 */
+	public static final int CALL_AUDIO_BYTES_PER_MSEC = 16;
+
+	/**
+	 * Number of intervals the media clock may fall behind and still catch up
+	 * with by running the missed ticks back to back, the ticks are skipped
+	 * beyond that.
+	 */
+	public static final int MEDIA_CLOCK_MAX_LATE_TICKS = 3;
+
+	/**
+	 * Number of intervals the jitter buffer can hold.
+	 */
+	public static final int CALL_JITTER_BUFFER_SIZE = 64;
+
+	/**
+	 * Bounds (msecs) for the playout delay of the jitter buffer.
+	 */
+	public static final int CALL_JITTER_BUFFER_MIN_DELAY = 40;
+
+	public static final int CALL_JITTER_BUFFER_MAX_DELAY = 500;
+
+}
@@ -0,0 +1,181 @@
+package com.misternerd.djiax;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.misternerd.djiax.io.frame.MetaTrunkFrame;
+import com.misternerd.djiax.io.frame.MiniFrame;
+import com.misternerd.djiax.metrics.FrameCounters;
+import com.misternerd.djiax.util.TimerWheel;
+
+/**
+ * Collects the MiniFrames of all calls of a peer and sends them as trunk
+ * MetaFrames, one per socket shard and TRUNK_INTERVAL. The server answers to
+ * the address a call's media comes from, so calls on different shards cannot
+ * share a trunk.
+ *
+ * The trunk frames are filled in place under their own lock by the calls'
+ * threads and flushed from the timer wheel. A trunk that runs full before the
+ * interval is over gets sent right away by the call that filled it.
+ */
+class PeerTrunk implements Runnable
+{
+
+	private static final Logger logger = LoggerFactory.getLogger(PeerTrunk.class);
+
+	private TransportHub socket;
+
+	private SocketAddress serverAddress;
+
+	private FrameCounters framesSent;
+
+	private TimerWheel timerWheel;
+
+	private final MetaTrunkFrame[] trunkFrames;
+
+	private final long trunkStartTimestamp;
+
+	private volatile boolean running;
+
+	private volatile TimerWheel.Timeout timeout;
+
+
+	public PeerTrunk(TransportHub socket, SocketAddress serverAddress, FrameCounters framesSent, TimerWheel timerWheel, 
+			boolean timestamped)
+	{
+		this.socket = socket;
+		this.serverAddress = serverAddress;
+		this.framesSent = framesSent;
+		this.timerWheel = timerWheel;
+		this.trunkFrames = new MetaTrunkFrame[socket.getNumberOfSockets()];
+		this.trunkStartTimestamp = System.currentTimeMillis();
+
+		for (int i = 0; i < trunkFrames.length; i++)
+		{
+			trunkFrames[i] = new MetaTrunkFrame(timestamped, PeerConstants.TRUNK_MAX_FRAME_SIZE);
+		}
+	}
+
+
+	public void start()
+	{
+		this.running = true;
+		this.timeout = timerWheel.scheduleAtFixedRate(this, PeerConstants.TRUNK_INTERVAL);
+	}
+
+
+	/**
+	 * Stops the interval and sends what has been collected so far.
+	 */
+	public void stop()
+	{
+		this.running = false;
+
+		if (timeout != null)
+		{
+			timeout.cancel();
+		}
+
+		for (int i = 0; i < trunkFrames.length; i++)
+		{
+			synchronized (trunkFrames[i])
+			{
+				flush(i);
+			}
+		}
+	}
+
+
+	/**
+	 * Adds the frame's media to the trunk of its shard. Frames which do not fit
+	 * into an empty trunk, or arrive after the trunk was stopped, are sent as
+	 * they are.
+	 */
+	public void sendFrame(MiniFrame frame) throws IOException
+	{
+		int shard = socket.getShard(frame.getSourceCallNumber());
+		MetaTrunkFrame trunkFrame = trunkFrames[shard];
+
+		synchronized (trunkFrame)
+		{
+			if (running && addEntry(trunkFrame, frame))
+			{
+				return;
+			}
+
+			if (running && !trunkFrame.isEmpty())
+			{
+				flush(shard);
+
+				if (addEntry(trunkFrame, frame))
+				{
+					return;
+				}
+			}
+		}
+
+		socket.sendFrame(frame, serverAddress, framesSent);
+	}
+
+
+	@Override
+	public void run()
+	{
+		if (running == false)
+		{
+			return;
+		}
+
+		for (int i = 0; i < trunkFrames.length; i++)
+		{
+			synchronized (trunkFrames[i])
+			{
+				flush(i);
+			}
+		}
+	}
+
+
+	private boolean addEntry(MetaTrunkFrame trunkFrame, MiniFrame frame)
+	{
+		if (frame.getPayload() != null)
+		{
+			return trunkFrame.addEntry(frame.getSourceCallNumber(), frame.getTimestamp(), frame.getPayload());
+		}
+
+		byte[] data = frame.getData();
+
+		return trunkFrame.addEntry(frame.getSourceCallNumber(), frame.getTimestamp(), data, 0, data.length);
+	}
+
+
+	/**
+	 * Needs to be called while holding the lock of the shard's trunk frame.
+	 */
+	private void flush(int shard)
+	{
+		MetaTrunkFrame trunkFrame = trunkFrames[shard];
+
+		if (trunkFrame.isEmpty())
+		{
+			return;
+		}
+
+		trunkFrame.setTimestamp(System.currentTimeMillis() - trunkStartTimestamp);
+
+		try
+		{
+			socket.sendFrame(trunkFrame, shard, serverAddress, framesSent);
+		}
+		catch (IOException e)
+		{
+			logger.warn("Could not send a trunk frame with {} calls to the server: ", trunkFrame.getNumberOfEntries(), e);
+		}
+
+		trunkFrame.clear();
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.misternerd.djiax;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs every call on a thread of its own taken from an executor, either a
+ * pool of platform threads or one virtual thread per call. The call thread
+ * blocks while its queues are empty and gets unparked by new work.
+ */
+class ThreadPerCallScheduler implements CallScheduler
+{
+
+	private ExecutorService callExecutorService;
+
+
+	public ThreadPerCallScheduler(ExecutorService callExecutorService)
+	{
+		this.callExecutorService = callExecutorService;
+	}
+
+
+	@Override
+	public void callStarted(Call call)
+	{
+		callExecutorService.submit(call);
+	}
+
+
+	@Override
+	public void callHasWork(Call call)
+	{
+		call.wakeUp();
+	}
+
+}
@@ -0,0 +1,774 @@
+package com.misternerd.djiax;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.misternerd.djiax.exception.InvalidArgumentException;
+import com.misternerd.djiax.io.frame.FrameBase;
+import com.misternerd.djiax.io.frame.FrameDecoder;
+import com.misternerd.djiax.io.frame.FullFrame;
+import com.misternerd.djiax.io.frame.MiniFrame;
+import com.misternerd.djiax.metrics.FrameCounters;
+import com.misternerd.djiax.util.CallNumberAllocator;
+import com.misternerd.djiax.util.CallNumberTable;
+
+/**
+ * Owns UDP channels and the receivers servicing them, for one peer or shared
+ * by any number of peers. Receiving is event driven: a receiver waits on a
+ * selector until its channel becomes readable, drains everything that is
+ * queued on the socket and dispatches each datagram right to its peer or call.
+ * The receivers only run while at least one peer is attached.
+ *
+ * The hub may use several channels (shards), each bound to its own local port
+ * and serviced by its own receiver. Every call is assigned to one shard and
+ * sends all its frames from there, so the server answers to that shard and
+ * the call's frames are always processed by the same receiver. A peer's own
+ * frames go through the shard of its call number.
+ *
+ * Received frames are demultiplexed by the server they come from and the call
+ * number they carry. Call numbers are handed out by the hub, so they are
+ * unique among all its peers and FullFrames are routed by their destination
+ * call number alone. MiniFrames and trunk entries only carry the server's call
+ * number, they are routed by the server's address plus that number. The hub
+ * keeps one routing table per server, so its memory grows with the servers
+ * and calls, not with the number of peers.
+ *
+ * All frames sent and received are counted in the metrics of their peer.
+ */
+public class TransportHub
+{
+
+	private static final Logger logger = LoggerFactory.getLogger(TransportHub.class);
+
+	/**
+	 * Frames are serialized straight into this buffer, so sending allocates
+	 * nothing. Each sending thread gets its own, shared by all peers.
+	 */
+	private static final ThreadLocal<ByteBuffer> sendBuffer = new ThreadLocal<ByteBuffer>()
+	{
+		@Override
+		protected ByteBuffer initialValue()
+		{
+			return ByteBuffer.allocateDirect(PeerConstants.FRAME_BUFFER_SIZE);
+		}
+	};
+
+	/**
+	 * Lent to callers writing audio, see getAudioFrameBuffer(). Each thread
+	 * gets its own.
+	 */
+	private static final ThreadLocal<AudioFrameBuffer> audioFrameBuffer = new ThreadLocal<AudioFrameBuffer>()
+	{
+		@Override
+		protected AudioFrameBuffer initialValue()
+		{
+			return new AudioFrameBuffer();
+		}
+	};
+
+	private final String name;
+
+	private volatile boolean running;
+
+	/**
+	 * Incremented whenever the receivers are stopped, so the ones of an
+	 * earlier start know they have to exit.
+	 */
+	private volatile int receiverGeneration;
+
+	private final DatagramChannel[] udpChannels;
+
+	private final Selector[] selectors;
+
+	private ExecutorService executorService;
+
+	/**
+	 * The attached peers by their own call number.
+	 */
+	private final CallNumberTable<IaxPeer> peers = new CallNumberTable<>();
+
+	private int numberOfPeers;
+
+	/**
+	 * The calls of all peers by their source call number.
+	 */
+	private final CallNumberTable<Call> calls = new CallNumberTable<>();
+
+	private final CallNumberAllocator callNumberAllocator = new CallNumberAllocator(
+			PeerConstants.PEER_MAX_NUMBER_OF_CALLS, PeerConstants.CALL_NUMBER_QUARANTINE);
+
+	/**
+	 * For each server the calls by the server's call number.
+	 */
+	private final ConcurrentMap<SocketAddress, CallNumberTable<Call>> callsByServer = new ConcurrentHashMap<>();
+
+	private final AtomicLong unroutedFrames = new AtomicLong();
+
+
+	/**
+	 * Opens the channels right away, the receivers start with the first
+	 * attached peer and stop again when the last one is detached.
+	 *
+	 * @param name Prefix of the receiver threads' names
+	 * @param numberOfSockets Number of channels, each with its own receiver
+	 */
+	public TransportHub(String name, int numberOfSockets) throws IOException
+	{
+		if (numberOfSockets < 1)
+		{
+			throw new IllegalArgumentException("A transport hub needs at least one socket");
+		}
+
+		this.name = name;
+		this.running = true;
+		this.udpChannels = new DatagramChannel[numberOfSockets];
+		this.selectors = new Selector[numberOfSockets];
+
+		for (int i = 0; i < numberOfSockets; i++)
+		{
+			udpChannels[i] = DatagramChannel.open();
+			udpChannels[i].configureBlocking(false);
+			// one socket carries the bursts of many calls, the default buffer overflows
+			udpChannels[i].setOption(StandardSocketOptions.SO_RCVBUF, PeerConstants.SOCKET_RECEIVE_BUFFER_SIZE);
+			// bind right away so the selector sees replies to our very first frame
+			udpChannels[i].bind(null);
+			selectors[i] = Selector.open();
+			udpChannels[i].register(selectors[i], SelectionKey.OP_READ);
+		}
+	}
+
+
+	/**
+	 * Routes the frames for the peer's call number to it from now on.
+	 */
+	synchronized void attach(IaxPeer peer)
+	{
+		if (!running)
+		{
+			throw new IllegalStateException("Transport hub " + name + " has been stopped");
+		}
+
+		if (peers.get(peer.getSourceCallNumber()) != peer)
+		{
+			peers.put(peer.getSourceCallNumber(), peer);
+			numberOfPeers++;
+		}
+
+		if (executorService == null)
+		{
+			executorService = Executors.newFixedThreadPool(udpChannels.length);
+
+			for (int i = 0; i < udpChannels.length; i++)
+			{
+				executorService.execute(new Receiver(i, receiverGeneration));
+			}
+		}
+	}
+
+
+	synchronized void detach(IaxPeer peer)
+	{
+		if (peers.remove(peer.getSourceCallNumber(), peer))
+		{
+			numberOfPeers--;
+		}
+
+		if (numberOfPeers == 0)
+		{
+			stopReceivers();
+		}
+	}
+
+
+	/**
+	 * Stops the receivers and closes the channels, for all attached peers.
+	 */
+	public synchronized void stop()
+	{
+		this.running = false;
+
+		// running receivers close the channels on their way out
+		if (!stopReceivers())
+		{
+			closeChannels();
+		}
+	}
+
+
+	/**
+	 * Must be called while holding the hub's lock.
+	 *
+	 * @return false if no receivers have been running
+	 */
+	private boolean stopReceivers()
+	{
+		if (executorService == null)
+		{
+			return false;
+		}
+
+		receiverGeneration++;
+
+		for (Selector selector : selectors)
+		{
+			selector.wakeup();
+		}
+
+		executorService.shutdown();
+		executorService = null;
+
+		return true;
+	}
+
+
+	/**
+	 * Takes a call number that is unique among all peers of the hub.
+	 *
+	 * @return the call number, -1 if none is free
+	 */
+	int acquireCallNumber()
+	{
+		int callIndex = callNumberAllocator.acquire();
+
+		return callIndex < 0 ? -1 : callIndex + PeerConstants.PEER_MAX_SOURCE_CALL_NUMBER;
+	}
+
+
+	int getNumberOfQuarantinedCallNumbers()
+	{
+		return callNumberAllocator.getNumberOfQuarantinedSlots();
+	}
+
+
+	/**
+	 * Routes the FullFrames for the call's source call number to its peer.
+	 */
+	void addCall(Call call)
+	{
+		calls.put(call.getSourceCallNumber(), call);
+	}
+
+
+	/**
+	 * Routes the frames carrying the server's call number to the call.
+	 */
+	void routeCall(SocketAddress serverAddress, short serverCallNumber, Call call)
+	{
+		CallNumberTable<Call> serverCalls = callsByServer.get(serverAddress);
+
+		if (serverCalls == null)
+		{
+			CallNumberTable<Call> newServerCalls = new CallNumberTable<>();
+			serverCalls = callsByServer.putIfAbsent(serverAddress, newServerCalls);
+
+			if (serverCalls == null)
+			{
+				serverCalls = newServerCalls;
+			}
+		}
+
+		serverCalls.put(serverCallNumber, call);
+	}
+
+
+	/**
+	 * Unroutes the call and puts its call number into quarantine.
+	 *
+	 * @return false if the call wasn't routed by the hub
+	 */
+	boolean removeCall(SocketAddress serverAddress, Call call)
+	{
+		CallNumberTable<Call> serverCalls = callsByServer.get(serverAddress);
+
+		if (serverCalls != null)
+		{
+			serverCalls.remove(call.getDestinationCallNumber(), call);
+		}
+
+		int callNumber = call.getSourceCallNumber();
+
+		if (callNumber >= PeerConstants.PEER_MAX_SOURCE_CALL_NUMBER && calls.remove(callNumber, call))
+		{
+			callNumberAllocator.release(callNumber - PeerConstants.PEER_MAX_SOURCE_CALL_NUMBER);
+			return true;
+		}
+
+		return false;
+	}
+
+
+	Call getCall(int sourceCallNumber)
+	{
+		return calls.get(sourceCallNumber);
+	}
+
+
+	/**
+	 * The call the server knows by its call number, null if there is none.
+	 */
+	Call getCallByServerCallNumber(SocketAddress serverAddress, short serverCallNumber)
+	{
+		CallNumberTable<Call> serverCalls = callsByServer.get(serverAddress);
+
+		return serverCalls == null ? null : serverCalls.get(serverCallNumber);
+	}
+
+
+	/**
+	 * Sends the frame through the shard of its source call number.
+	 */
+	void sendFrame(FrameBase frame, SocketAddress serverAddress, FrameCounters framesSent) throws IOException
+	{
+		sendFrame(frame, getShard(frame.getSourceCallNumber()), serverAddress, framesSent);
+	}
+
+
+	/**
+	 * Sends a frame through the given shard, for frames which do not belong
+	 * to a single call.
+	 */
+	void sendFrame(FrameBase frame, int shard, SocketAddress serverAddress, FrameCounters framesSent) throws IOException
+	{
+		if (frame instanceof MiniFrame && sendAudioFrameInPlace((MiniFrame) frame, shard, serverAddress, framesSent))
+		{
+			return;
+		}
+
+		ByteBuffer buffer = sendBuffer.get();
+		buffer.clear();
+		frame.serializeTo(buffer);
+		buffer.flip();
+
+		int length = buffer.remaining();
+		udpChannels[shard].send(buffer, serverAddress);
+
+		if (frame instanceof FullFrame)
+		{
+			FullFrame fullFrame = (FullFrame) frame;
+			framesSent.fullFrame(fullFrame.getFrameType().getType(), fullFrame.getSubclass(), length);
+		}
+		else if (frame instanceof MiniFrame)
+		{
+			framesSent.miniFrame(length);
+		}
+		else
+		{
+			framesSent.metaFrame(length);
+		}
+	}
+
+
+	/**
+	 * Lends the calling thread a buffer to write the payload of a MiniFrame
+	 * into. It is a slice of a datagram buffer with room for the header in
+	 * front, so a frame whose payload is this buffer gets sent without copying
+	 * it. The buffer stays owned by the hub: it is only valid on the calling
+	 * thread and until it is lent again, which clears it.
+	 */
+	static ByteBuffer getAudioFrameBuffer()
+	{
+		ByteBuffer payload = audioFrameBuffer.get().payload;
+		payload.clear();
+
+		return payload;
+	}
+
+
+	/**
+	 * Sends a MiniFrame whose payload is the buffer lent to this thread by
+	 * writing the header in front of it.
+	 *
+	 * @return false if the payload is any other buffer
+	 */
+	private boolean sendAudioFrameInPlace(MiniFrame frame, int shard, SocketAddress serverAddress, FrameCounters framesSent)
+			throws IOException
+	{
+		AudioFrameBuffer lent = audioFrameBuffer.get();
+
+		if (frame.getPayload() != lent.payload)
+		{
+			return false;
+		}
+
+		// the payload starts at the slice's position, the header goes right before it
+		int start = lent.payload.position();
+		ByteBuffer datagram = lent.datagram;
+		datagram.clear();
+		datagram.position(start);
+		datagram.limit(MiniFrame.HEADER_LENGTH + lent.payload.limit());
+		datagram.putShort(start, (short) (frame.getSourceCallNumber() & 0x7FFF));
+		datagram.putShort(start + 2, (short) (frame.getTimestamp() & 0xFFFF));
+
+		int length = datagram.remaining();
+		udpChannels[shard].send(datagram, serverAddress);
+		framesSent.miniFrame(length);
+
+		return true;
+	}
+
+
+	public String getName()
+	{
+		return name;
+	}
+
+
+	public int getNumberOfSockets()
+	{
+		return udpChannels.length;
+	}
+
+
+	public synchronized int getNumberOfPeers()
+	{
+		return numberOfPeers;
+	}
+
+
+	/**
+	 * Number of received frames which neither belonged to a peer nor a call
+	 * of the hub and have been dropped.
+	 */
+	public long getNumberOfUnroutedFrames()
+	{
+		return unroutedFrames.get();
+	}
+
+
+	/**
+	 * Calls are spread over the shards by their index, peers by their call
+	 * number.
+	 */
+	int getShard(short sourceCallNumber)
+	{
+		int callIndex = sourceCallNumber - PeerConstants.PEER_MAX_SOURCE_CALL_NUMBER;
+
+		if (callIndex < 0)
+		{
+			return sourceCallNumber % udpChannels.length;
+		}
+
+		return callIndex % udpChannels.length;
+	}
+
+
+	public InetSocketAddress getLocalAddress(int shard) throws IOException
+	{
+		return (InetSocketAddress) udpChannels[shard].getLocalAddress();
+	}
+
+
+	/**
+	 * Closes what the receivers would have, if they never ran.
+	 */
+	private void closeChannels()
+	{
+		for (int i = 0; i < udpChannels.length; i++)
+		{
+			try
+			{
+				selectors[i].close();
+				udpChannels[i].close();
+			}
+			catch (IOException e)
+			{
+				logger.warn("Failed to close channel:", e);
+			}
+		}
+	}
+
+
+	private static class AudioFrameBuffer
+	{
+
+		final ByteBuffer datagram = ByteBuffer.allocateDirect(PeerConstants.FRAME_BUFFER_SIZE);
+
+		final ByteBuffer payload;
+
+
+		AudioFrameBuffer()
+		{
+			datagram.position(MiniFrame.HEADER_LENGTH);
+			payload = datagram.slice();
+		}
+
+	}
+
+
+	private class Receiver implements Runnable, FrameDecoder.TrunkEntryHandler
+	{
+
+		private final int shard;
+
+		private final DatagramChannel udpChannel;
+
+		private final Selector selector;
+
+		private final int generation;
+
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(PeerConstants.FRAME_BUFFER_SIZE);
+
+		private FrameDecoder decoder = new FrameDecoder();
+
+		private long receivedNanoTime;
+
+		/**
+		 * Routing table of the server whose trunk frame is being dispatched.
+		 */
+		private CallNumberTable<Call> trunkServerCalls;
+
+		private IaxPeer trunkPeer;
+
+		/**
+		 * Timestamp of the trunk frame being dispatched if its entries have
+		 * none of their own, -1 otherwise.
+		 */
+		private long trunkTimestamp;
+
+		private long trunkArrivalTime;
+
+
+		public Receiver(int shard, int generation)
+		{
+			this.shard = shard;
+			this.generation = generation;
+			this.udpChannel = udpChannels[shard];
+			this.selector = selectors[shard];
+		}
+
+
+		@Override
+		public void run()
+		{
+			Thread.currentThread().setName(String.format("%s-receiver-%d", name, shard));
+
+			while (running && generation == receiverGeneration)
+			{
+				try
+				{
+					if (selector.select() > 0)
+					{
+						selector.selectedKeys().clear();
+						drainChannel();
+					}
+				}
+				catch (ClosedChannelException | ClosedSelectorException e)
+				{
+					logger.error("Channel or selector has been closed, exiting");
+					break;
+				}
+				catch (IOException e)
+				{
+					logger.warn("Caught exception in receiver thread:", e);
+				}
+			}
+
+			if (!running)
+			{
+				try
+				{
+					selector.close();
+					udpChannel.close();
+				}
+				catch (IOException e)
+				{
+					logger.warn("Failed to close selector:", e);
+				}
+			}
+
+			logger.debug("Receiver Thread exiting");
+		}
+
+
+		/**
+		 * Reads datagrams until the socket has nothing left, so a single wakeup
+		 * handles a whole burst of frames.
+		 */
+		private void drainChannel() throws IOException
+		{
+			while (running && generation == receiverGeneration)
+			{
+				buffer.clear();
+
+				SocketAddress sender = udpChannel.receive(buffer);
+
+				if (sender == null)
+				{
+					return;
+				}
+
+				receivedNanoTime = System.nanoTime();
+				decoder.wrap(buffer, 0, buffer.position());
+
+				try
+				{
+					handleReceivedData(sender);
+				}
+				catch (InvalidArgumentException e)
+				{
+					logger.warn("Failed to decode received frame:", e);
+				}
+			}
+		}
+
+
+		private void handleReceivedData(SocketAddress sender) throws InvalidArgumentException
+		{
+			if (!decoder.hasCompleteHeader())
+			{
+				logger.warn("Received frame with only {} bytes, too short for its header, discarding", decoder.getLength());
+				unroutedFrames.incrementAndGet();
+			}
+			else if (decoder.isTrunkFrame())
+			{
+				handleTrunkFrame(sender);
+			}
+			else if (decoder.isMetaFrame())
+			{
+				logger.warn("Received MetaFrame with unsupported command {}, discarding", decoder.getMetaCommand());
+				unroutedFrames.incrementAndGet();
+			}
+			else if (decoder.isFullFrame())
+			{
+				handleFullFrame(sender);
+			}
+			else
+			{
+				Call call = getCallByServerCallNumber(sender, decoder.getSourceCallNumber());
+
+				if (call == null)
+				{
+					unroutedFrames.incrementAndGet();
+					return;
+				}
+
+				call.getPeer().getMetrics().getReceived().miniFrame(decoder.getLength());
+				call.receiveFrame(decoder);
+			}
+		}
+
+
+		/**
+		 * Routed by the destination call number, but only taken if it comes
+		 * from the server of the peer and, once known, the server's call
+		 * number of the call. Other hosts cannot inject signaling into a call
+		 * by guessing its number.
+		 */
+		private void handleFullFrame(SocketAddress sender) throws InvalidArgumentException
+		{
+			int destinationCallNumber = decoder.getDestinationCallNumber();
+			IaxPeer peer;
+			Call call = null;
+
+			if (destinationCallNumber < PeerConstants.PEER_MAX_SOURCE_CALL_NUMBER)
+			{
+				peer = peers.get(destinationCallNumber);
+			}
+			else
+			{
+				call = calls.get(destinationCallNumber);
+				peer = call == null ? null : call.getPeer();
+			}
+
+			if (peer == null)
+			{
+				logger.debug("Received FullFrame for unknown callNumber={}, discarding", destinationCallNumber);
+				unroutedFrames.incrementAndGet();
+				return;
+			}
+
+			if (!peer.getServerAddress().equals(sender))
+			{
+				logger.debug("Received FullFrame for callNumber={} from {} instead of the server, discarding", destinationCallNumber, sender);
+				unroutedFrames.incrementAndGet();
+				return;
+			}
+
+			if (call != null && call.getDestinationCallNumber() != 0 && call.getDestinationCallNumber() != decoder.getSourceCallNumber())
+			{
+				logger.debug("Received FullFrame for callNumber={} from server callNumber={}, discarding", destinationCallNumber,
+						decoder.getSourceCallNumber());
+				unroutedFrames.incrementAndGet();
+				return;
+			}
+
+			peer.getMetrics().getReceived().fullFrame(decoder.getFrameTypeRaw(), decoder.getSubclass(), decoder.getLength());
+
+			// full frames drive the state machines and get queued, so they need a heap copy
+			FullFrame fullFrame = decoder.toFullFrame();
+			fullFrame.setReceivedNanoTime(receivedNanoTime);
+			peer.handleIncomingFullFrame(fullFrame);
+		}
+
+
+		/**
+		 * A trunk frame can carry the media of calls of different peers, it
+		 * is counted by the peer of its first known call.
+		 */
+		private void handleTrunkFrame(SocketAddress sender) throws InvalidArgumentException
+		{
+			trunkServerCalls = callsByServer.get(sender);
+
+			if (trunkServerCalls == null)
+			{
+				unroutedFrames.incrementAndGet();
+				return;
+			}
+
+			trunkPeer = null;
+			trunkTimestamp = decoder.isTimestampedTrunk() ? -1 : decoder.getTrunkTimestamp();
+			trunkArrivalTime = System.currentTimeMillis();
+			decoder.forEachTrunkEntry(this);
+
+			if (trunkPeer != null)
+			{
+				trunkPeer.getMetrics().getReceived().metaFrame(decoder.getLength());
+			}
+			else
+			{
+				unroutedFrames.incrementAndGet();
+			}
+		}
+
+
+		@Override
+		public void handleTrunkEntry(short sourceCallNumber, int timestamp, ByteBuffer buffer, int offset, int length)
+		{
+			Call call = trunkServerCalls.get(sourceCallNumber);
+
+			if (call != null)
+			{
+				if (trunkPeer == null)
+				{
+					trunkPeer = call.getPeer();
+				}
+
+				if (trunkTimestamp < 0)
+				{
+					call.receiveMedia(timestamp, buffer, offset, length);
+				}
+				else
+				{
+					call.receiveTrunkMedia(trunkTimestamp, trunkArrivalTime, buffer, offset, length);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.misternerd.djiax;
+
+/**
+ * How a peer sends the MiniFrames of its calls.
+ */
+public enum TrunkMode
+{
+
+	/**
+	 * Every MiniFrame is a datagram of its own.
+	 */
+	NONE,
+
+	/**
+	 * The media of all calls is collected and sent as one trunk MetaFrame per
+	 * interval, the server derives each call's timestamp from the trunk.
+	 */
+	TRUNK,
+
+	/**
+	 * Like TRUNK, but every entry keeps the timestamp of its call.
+	 */
+	TRUNK_TIMESTAMPED;
+
+}
@@ -0,0 +1,25 @@
+package com.misternerd.djiax.call;
+
+import java.nio.ByteBuffer;
+
+import com.misternerd.djiax.util.MediaFormat;
+
+/**
+ * Provides the outbound audio of a call. Instead of the audio being written
+ * into the call, the peer's media clock pulls one frame from the source every
+ * packetization interval while audio is running and sends it in time.
+ */
+public interface AudioSource
+{
+
+	/**
+	 * Puts the audio of the next interval into the buffer, in the call's
+	 * format. Leaving the buffer empty sends nothing for this interval. The
+	 * buffer belongs to the call and is only valid until this method returns.
+	 *
+	 * This runs on the media clock's thread, which serves all calls, so it
+	 * must not block.
+	 */
+	public void callSourceReadAudioData(ByteBuffer buffer, MediaFormat codec);
+
+}
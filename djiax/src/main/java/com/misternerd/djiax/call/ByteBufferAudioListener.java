@@ -0,0 +1,23 @@
+package com.misternerd.djiax.call;
+
+import java.nio.ByteBuffer;
+
+import com.misternerd.djiax.util.MediaFormat;
+
+/**
+ * An audio listener which receives the audio of a call as buffer instead of a
+ * newly allocated array. For such a listener the call only uses this variant
+ * of callListenerReceivedAudioData().
+ */
+public interface ByteBufferAudioListener extends AudioListener
+{
+
+	/**
+	 * This gets called when there is new data available on the call. The audio
+	 * lies between position and limit of the buffer, which is a view of the
+	 * call's own receive slot: it is only valid until this method returns, must
+	 * not be modified and must not be kept. Copy the bytes to keep them.
+	 */
+	public void callListenerReceivedAudioData(ByteBuffer data, MediaFormat codec);
+
+}
@@ -0,0 +1,192 @@
+package com.misternerd.djiax.call;
+
+import com.misternerd.djiax.io.frame.full.IaxFrame;
+import com.misternerd.djiax.io.frame.ie.RrDelay;
+import com.misternerd.djiax.io.frame.ie.RrDropped;
+import com.misternerd.djiax.io.frame.ie.RrJitter;
+import com.misternerd.djiax.io.frame.ie.RrLoss;
+import com.misternerd.djiax.io.frame.ie.RrOoo;
+import com.misternerd.djiax.io.frame.ie.RrPkts;
+import com.misternerd.djiax.util.JitterBuffer;
+
+/**
+ * Quality of the media a call receives, as reported to the server with every
+ * PONG (RFC 5456 receiver reports). The counters are updated in place by the
+ * call's thread for every received audio frame, the getters can be read from
+ * any thread without locking, so the values might be slightly out of sync with
+ * each other.
+ *
+ * Loss is derived from the timestamps: every packetization interval between
+ * the first and the newest frame is expected to carry a frame. Frames the
+ * call's full media queue dropped never get accounted, so they count as lost.
+ */
+public class CallStatistics
+{
+
+	private final int interval;
+
+	private final JitterBuffer jitterBuffer;
+
+	private volatile long packetsReceived;
+
+	private volatile long outOfOrderCount;
+
+	/**
+	 * Interarrival jitter in msecs as per RFC 3550, smoothed by 1/16.
+	 */
+	private volatile double jitter;
+
+	private long lastTransit;
+
+	private volatile long firstFrame;
+
+	private volatile long newestFrame;
+
+
+	/**
+	 * @param interval The packetization interval in msecs
+	 * @param jitterBuffer The call's jitter buffer, may be null
+	 */
+	public CallStatistics(int interval, JitterBuffer jitterBuffer)
+	{
+		this.interval = interval;
+		this.jitterBuffer = jitterBuffer;
+	}
+
+
+	/**
+	 * Accounts an audio frame with its 32 bit timestamp, arrivalTime is the
+	 * local time in msecs. Must only be called by one thread.
+	 */
+	public void frameReceived(long timestamp, long arrivalTime)
+	{
+		long frame = (timestamp + interval / 2) / interval;
+		long transit = arrivalTime - timestamp;
+
+		if (packetsReceived == 0)
+		{
+			this.firstFrame = frame;
+			this.newestFrame = frame;
+		}
+		else
+		{
+			jitter += (Math.abs(transit - lastTransit) - jitter) / 16.0;
+
+			if (frame > newestFrame)
+			{
+				newestFrame = frame;
+			}
+			else
+			{
+				outOfOrderCount++;
+			}
+		}
+
+		this.lastTransit = transit;
+		packetsReceived++;
+	}
+
+
+	public long getPacketsReceived()
+	{
+		return packetsReceived;
+	}
+
+
+	/**
+	 * Frames which arrived with an older timestamp than one received before.
+	 */
+	public long getOutOfOrderCount()
+	{
+		return outOfOrderCount;
+	}
+
+
+	/**
+	 * The current interarrival jitter in msecs.
+	 */
+	public int getJitter()
+	{
+		return (int) jitter;
+	}
+
+
+	public long getExpectedCount()
+	{
+		return (packetsReceived == 0) ? 0 : newestFrame - firstFrame + 1;
+	}
+
+
+	/**
+	 * Frames which never arrived, duplicates may hide losses.
+	 */
+	public long getLossCount()
+	{
+		return Math.max(0, getExpectedCount() - getPacketsReceived());
+	}
+
+
+	/**
+	 * Percentage (0-100) of the expected frames that were lost.
+	 */
+	public int getLossPercentage()
+	{
+		long expected = getExpectedCount();
+
+		if (expected == 0)
+		{
+			return 0;
+		}
+
+		return (int) Math.min(100, getLossCount() * 100 / expected);
+	}
+
+
+	/**
+	 * Frames received but never played, dropped by the jitter buffer for
+	 * being late or to shrink its delay.
+	 */
+	public long getDroppedCount()
+	{
+		if (jitterBuffer == null)
+		{
+			return 0;
+		}
+
+		return jitterBuffer.getNumberOfFramesLate() + jitterBuffer.getNumberOfFramesSkipped();
+	}
+
+
+	/**
+	 * The playout delay of the jitter buffer in msecs, 0 without one.
+	 */
+	public int getPlayoutDelay()
+	{
+		return (jitterBuffer != null) ? jitterBuffer.getTargetDelay() : 0;
+	}
+
+
+	/**
+	 * Adds the current values as RR information elements to a frame, usually
+	 * a PONG.
+	 */
+	public void addReceiverReport(IaxFrame frame)
+	{
+		frame.addInformationElement(new RrJitter(getJitter()));
+		frame.addInformationElement(new RrLoss((short) getLossPercentage(), (int) Math.min(getLossCount(), 0xFFFFFF)));
+		frame.addInformationElement(new RrPkts(getPacketsReceived()));
+		frame.addInformationElement(new RrDelay(Math.min(getPlayoutDelay(), 0xFFFF)));
+		frame.addInformationElement(new RrDropped(getDroppedCount()));
+		frame.addInformationElement(new RrOoo(getOutOfOrderCount()));
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return String.format("CallStatistics(pkts=%d, jitter=%d, loss=%d%%/%d, ooo=%d, dropped=%d, delay=%d)",
+				getPacketsReceived(), getJitter(), getLossPercentage(), getLossCount(), getOutOfOrderCount(),
+				getDroppedCount(), getPlayoutDelay());
+	}
+
+}
@@ -1,12 +1,12 @@
 package com.misternerd.djiax.io.frame;
 
-import com.misternerd.djiax.util.ByteBuffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 /**
- * This is the common denominator of all IAX frames. Currently, this library
- * only supports FullFrame and MiniFrame (no MetaFrames), so what's similar is
- * the starting F bit and the following source call number that identifies the
- * target.
+ * This is the common denominator of all IAX frames. What's similar is the
+ * starting F bit and the following source call number that identifies the
+ * target, MetaFrames are sent with both set to zero.
  */
 public abstract class FrameBase
 {
@@ -59,18 +59,34 @@ public abstract class FrameBase
 	}
 
 
-	public byte[] serialize() throws IndexOutOfBoundsException
+	/**
+	 * Number of bytes serializeTo() writes for this frame.
+	 */
+	public int getSerializedLength()
+	{
+		return 2;
+	}
+
+
+	/**
+	 * Writes the frame at the buffer's position, which needs to have at least
+	 * getSerializedLength() bytes remaining. Nothing gets allocated, so frames
+	 * can be written straight into a pooled send buffer.
+	 */
+	public void serializeTo(ByteBuffer buffer) throws BufferOverflowException
 	{
 		// 2 bytes: F-bit + 15 bit sourceCallNumber
-		ByteBuffer buffer = new ByteBuffer(2);
+		buffer.putShort((short) (((this instanceof FullFrame) ? 0x8000 : 0) + (sourceCallNumber & 0x7FFF)));
+	}
+
+
+	public byte[] serialize() throws BufferOverflowException
+	{
+		byte[] result = new byte[getSerializedLength()];
 
-		buffer.put16bits(
-				// F-bit first (bitmask 1000000000000000)
-				(((this instanceof FullFrame) ? 1 : 0) & 0x8000)
-				// add sourceCallNumber (bitmask 111111111111111)
-				+ (sourceCallNumber & 0x7FFF));
+		serializeTo(ByteBuffer.wrap(result));
 
-		return buffer.getBuffer();
+		return result;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,460 @@
+package com.misternerd.djiax.io.frame;
+
+import java.nio.ByteBuffer;
+
+import com.misternerd.djiax.exception.InvalidArgumentException;
+import com.misternerd.djiax.io.frame.full.ComfortNoiseFrame;
+import com.misternerd.djiax.io.frame.full.ControlFrame;
+import com.misternerd.djiax.io.frame.full.DtmfFrame;
+import com.misternerd.djiax.io.frame.full.HtmlFrame;
+import com.misternerd.djiax.io.frame.full.IaxFrame;
+import com.misternerd.djiax.io.frame.full.ImageFrame;
+import com.misternerd.djiax.io.frame.full.TextFrame;
+import com.misternerd.djiax.io.frame.full.VideoFrame;
+import com.misternerd.djiax.io.frame.full.VoiceFrame;
+
+/**
+ * A flyweight view on a single received datagram. The decoder gets wrapped
+ * around the receive buffer and reads all header fields and the payload by
+ * offset, so looking at a frame does not allocate anything. Heap frame objects
+ * are only created by the to*Frame() methods, which should be reserved for
+ * frames that must outlive the dispatch of the datagram.
+ *
+ * A decoder is not thread safe and is meant to be reused by one receiver for
+ * every datagram it reads. It is only valid until the underlying buffer gets
+ * overwritten by the next receive.
+ */
+public class FrameDecoder
+{
+
+	/**
+	 * Receives the entries of a trunk frame. The buffer belongs to the
+	 * receiver and is only valid until the call returns.
+	 */
+	public interface TrunkEntryHandler
+	{
+
+		public void handleTrunkEntry(short sourceCallNumber, int timestamp, ByteBuffer buffer, int offset, int length);
+
+	}
+
+	public static final int FULL_FRAME_HEADER_LENGTH = 12;
+
+	public static final int MINI_FRAME_HEADER_LENGTH = 4;
+
+	public static final int META_FRAME_HEADER_LENGTH = 4;
+
+	private ByteBuffer buffer;
+
+	private int offset;
+
+	private int length;
+
+
+	/**
+	 * Points this decoder to length bytes in buffer starting at offset. The
+	 * position and limit of the buffer are not modified.
+	 */
+	public FrameDecoder wrap(ByteBuffer buffer, int offset, int length)
+	{
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+
+		return this;
+	}
+
+
+	public ByteBuffer getBuffer()
+	{
+		return buffer;
+	}
+
+
+	public int getOffset()
+	{
+		return offset;
+	}
+
+
+	public int getLength()
+	{
+		return length;
+	}
+
+
+	/**
+	 * MetaFrames start with 16 bits of zero.
+	 */
+	public boolean isMetaFrame()
+	{
+		return length >= 2 && buffer.get(offset) == 0 && buffer.get(offset + 1) == 0;
+	}
+
+
+	public boolean isFullFrame()
+	{
+		return length >= 1 && (buffer.get(offset) & 0x80) != 0;
+	}
+
+
+	public boolean isMiniFrame()
+	{
+		return !isFullFrame() && !isMetaFrame();
+	}
+
+
+	/**
+	 * Checks if there are enough bytes for the header of the frame type.
+	 */
+	public boolean hasCompleteHeader()
+	{
+		if (isFullFrame())
+		{
+			return length >= FULL_FRAME_HEADER_LENGTH;
+		}
+		else if (isTrunkFrame())
+		{
+			return length >= MetaTrunkFrame.HEADER_LENGTH;
+		}
+		else if (isMetaFrame())
+		{
+			return length >= META_FRAME_HEADER_LENGTH;
+		}
+
+		return length >= MINI_FRAME_HEADER_LENGTH;
+	}
+
+
+	public short getSourceCallNumber()
+	{
+		return (short) (((buffer.get(offset) & 0x7F) << 8) + (buffer.get(offset + 1) & 0xFF));
+	}
+
+
+	/*
+	 * FullFrame header
+	 */
+
+	public boolean isRetransmitted()
+	{
+		return (buffer.get(offset + 2) & 0x80) != 0;
+	}
+
+
+	public short getDestinationCallNumber()
+	{
+		return (short) (((buffer.get(offset + 2) & 0x7F) << 8) + (buffer.get(offset + 3) & 0xFF));
+	}
+
+
+	/**
+	 * The 32 bit unsigned timestamp of a FullFrame.
+	 */
+	public long getTimestamp()
+	{
+		return buffer.getInt(offset + 4) & 0xFFFFFFFFL;
+	}
+
+
+	public short getOSeqNo()
+	{
+		return (short) (buffer.get(offset + 8) & 0xFF);
+	}
+
+
+	public short getISeqNo()
+	{
+		return (short) (buffer.get(offset + 9) & 0xFF);
+	}
+
+
+	public short getFrameTypeRaw()
+	{
+		return (short) (buffer.get(offset + 10) & 0xFF);
+	}
+
+
+	public boolean isCBit()
+	{
+		return (buffer.get(offset + 11) & 0x80) != 0;
+	}
+
+
+	/**
+	 * The subclass, already interpreted as a power of 2 if the c-bit is set.
+	 */
+	public long getSubclass()
+	{
+		long subclass = buffer.get(offset + 11) & 0x7F;
+
+		if (isCBit())
+		{
+			return 1L << (subclass & 0x1F);
+		}
+
+		return subclass;
+	}
+
+
+	/*
+	 * MiniFrame header
+	 */
+
+	/**
+	 * The 16 bit timestamp of a MiniFrame.
+	 */
+	public int getMiniTimestamp()
+	{
+		return ((buffer.get(offset + 2) & 0xFF) << 8) + (buffer.get(offset + 3) & 0xFF);
+	}
+
+
+	/*
+	 * MetaFrame header
+	 */
+
+	/**
+	 * The 7 bit meta command, without the V-bit.
+	 */
+	public short getMetaCommand()
+	{
+		return (short) (buffer.get(offset + 2) & 0x7F);
+	}
+
+
+	public boolean isTrunkFrame()
+	{
+		return isMetaFrame() && length >= META_FRAME_HEADER_LENGTH && getMetaCommand() == MetaTrunkFrame.META_COMMAND_TRUNK;
+	}
+
+
+	/**
+	 * Whether every trunk entry carries its own MiniFrame header (T-bit).
+	 */
+	public boolean isTimestampedTrunk()
+	{
+		return (buffer.get(offset + 3) & MetaTrunkFrame.TRUNK_TIMESTAMPED) != 0;
+	}
+
+
+	/**
+	 * The 32 bit unsigned timestamp of a trunk frame.
+	 */
+	public long getTrunkTimestamp()
+	{
+		return buffer.getInt(offset + 4) & 0xFFFFFFFFL;
+	}
+
+
+	/**
+	 * Walks the entries of the wrapped trunk frame in place and passes each
+	 * call's media to the handler. Entries without their own timestamp get the
+	 * lower 16 bits of the trunk's timestamp. That counts from the sender's
+	 * trunk start, not from the start of the call, so the handler needs to map
+	 * it onto the call's time before using it as a MiniFrame timestamp.
+	 * 
+	 * @return the number of entries handled
+	 * @throws InvalidArgumentException if an entry exceeds the datagram, all
+	 *             entries before it have been handled already
+	 */
+	public int forEachTrunkEntry(TrunkEntryHandler handler) throws InvalidArgumentException
+	{
+		if (!isTrunkFrame() || length < MetaTrunkFrame.HEADER_LENGTH)
+		{
+			throw new InvalidArgumentException("Length " + length + " is too short for a trunk frame (min is 8)");
+		}
+
+		boolean timestamped = isTimestampedTrunk();
+		int entryHeaderLength = timestamped ? MetaTrunkFrame.TIMESTAMPED_ENTRY_HEADER_LENGTH : MetaTrunkFrame.ENTRY_HEADER_LENGTH;
+		int trunkTimestamp = (int) (getTrunkTimestamp() & 0xFFFF);
+		int entryOffset = offset + MetaTrunkFrame.HEADER_LENGTH;
+		int end = offset + length;
+		int numberOfEntries = 0;
+
+		while (entryOffset < end)
+		{
+			if (entryOffset + entryHeaderLength > end)
+			{
+				throw new InvalidArgumentException("Trunk entry " + numberOfEntries + " is missing its header");
+			}
+
+			short sourceCallNumber;
+			int dataLength;
+			int timestamp;
+
+			if (timestamped)
+			{
+				dataLength = buffer.getShort(entryOffset) & 0xFFFF;
+				sourceCallNumber = (short) (buffer.getShort(entryOffset + 2) & 0x7FFF);
+				timestamp = buffer.getShort(entryOffset + 4) & 0xFFFF;
+			}
+			else
+			{
+				sourceCallNumber = (short) (buffer.getShort(entryOffset) & 0x7FFF);
+				dataLength = buffer.getShort(entryOffset + 2) & 0xFFFF;
+				timestamp = trunkTimestamp;
+			}
+
+			int dataOffset = entryOffset + entryHeaderLength;
+
+			if (dataOffset + dataLength > end)
+			{
+				throw new InvalidArgumentException("Trunk entry " + numberOfEntries + " with " + dataLength 
+						+ " bytes exceeds the frame's length " + length);
+			}
+
+			handler.handleTrunkEntry(sourceCallNumber, timestamp, buffer, dataOffset, dataLength);
+
+			entryOffset = dataOffset + dataLength;
+			numberOfEntries++;
+		}
+
+		return numberOfEntries;
+	}
+
+
+	/*
+	 * Payload
+	 */
+
+	/**
+	 * The absolute offset of the payload within the wrapped buffer.
+	 */
+	public int getPayloadOffset()
+	{
+		return offset + (isFullFrame() ? FULL_FRAME_HEADER_LENGTH : MINI_FRAME_HEADER_LENGTH);
+	}
+
+
+	public int getPayloadLength()
+	{
+		return Math.max(0, length - (getPayloadOffset() - offset));
+	}
+
+
+	/**
+	 * Copies the payload into target at targetOffset and returns the number of
+	 * bytes copied. Position and limit of the buffer are restored afterwards.
+	 */
+	public int copyPayload(byte[] target, int targetOffset)
+	{
+		int payloadLength = getPayloadLength();
+		int savedPosition = buffer.position();
+		int savedLimit = buffer.limit();
+
+		// bulk get is way faster than single bytes on direct buffers
+		buffer.limit(getPayloadOffset() + payloadLength);
+		buffer.position(getPayloadOffset());
+		buffer.get(target, targetOffset, payloadLength);
+
+		buffer.limit(savedLimit);
+		buffer.position(savedPosition);
+
+		return payloadLength;
+	}
+
+
+	public byte[] getPayload()
+	{
+		byte[] payload = new byte[getPayloadLength()];
+		copyPayload(payload, 0);
+
+		return payload;
+	}
+
+
+	/*
+	 * Materialization
+	 */
+
+	/**
+	 * Creates a heap copy of the wrapped FullFrame, typed according to its frame
+	 * type.
+	 */
+	public FullFrame toFullFrame() throws InvalidArgumentException
+	{
+		if (!isFullFrame() || length < FULL_FRAME_HEADER_LENGTH)
+		{
+			throw new InvalidArgumentException("Length " + length + " is too short for FullFrame (min is 12)");
+		}
+
+		FullFrame parent = new FullFrame(this);
+
+		switch (getFrameTypeRaw())
+		{
+			case ComfortNoiseFrame.TYPE:
+			{
+				return new ComfortNoiseFrame(parent);
+			}
+			case ControlFrame.TYPE:
+			{
+				return new ControlFrame(parent);
+			}
+			case DtmfFrame.TYPE:
+			{
+				return new DtmfFrame(parent);
+			}
+			case HtmlFrame.TYPE:
+			{
+				return new HtmlFrame(parent);
+			}
+			case IaxFrame.TYPE:
+			{
+				return new IaxFrame(parent);
+			}
+			case ImageFrame.TYPE:
+			{
+				return new ImageFrame(parent);
+			}
+			case TextFrame.TYPE:
+			{
+				return new TextFrame(parent);
+			}
+			case VideoFrame.TYPE:
+			{
+				return new VideoFrame(parent);
+			}
+			case VoiceFrame.TYPE:
+			{
+				return new VoiceFrame(parent);
+			}
+			default:
+			{
+				throw new InvalidArgumentException("Invalid FullFrame type " + getFrameTypeRaw());
+			}
+		}
+	}
+
+
+	/**
+	 * Creates a heap copy of the wrapped MiniFrame.
+	 */
+	public MiniFrame toMiniFrame() throws InvalidArgumentException
+	{
+		if (!isMiniFrame() || length < MINI_FRAME_HEADER_LENGTH)
+		{
+			throw new InvalidArgumentException("Length " + length + " is too short for MiniFrame (min is 4)");
+		}
+
+		return new MiniFrame(getSourceCallNumber(), getMiniTimestamp(), getPayload());
+	}
+
+
+	@Override
+	public String toString()
+	{
+		if (isMetaFrame())
+		{
+			return String.format("FrameDecoder(meta, command=%d, length=%d)", length >= META_FRAME_HEADER_LENGTH ? getMetaCommand() : -1, length);
+		}
+		else if (isFullFrame())
+		{
+			return String.format("FrameDecoder(full, type=%d, srcCall=%d, dstCall=%d, iSeq=%d, oSeq=%d, ts=%d, length=%d)",
+					getFrameTypeRaw(), getSourceCallNumber(), getDestinationCallNumber(), getISeqNo(), getOSeqNo(), getTimestamp(), length);
+		}
+
+		return String.format("FrameDecoder(mini, srcCall=%d, timestamp=%d, length=%d)", getSourceCallNumber(), getMiniTimestamp(), length);
+	}
+
+}
@@ -1,9 +1,9 @@
 package com.misternerd.djiax.io.frame;
 
-import com.misternerd.djiax.PeerConstants;
+import java.nio.ByteBuffer;
+
 import com.misternerd.djiax.exception.EnumReverseElementNotFoundException;
 import com.misternerd.djiax.exception.InvalidArgumentException;
-import com.misternerd.djiax.util.ByteBuffer;
 
 /**
  * Full frames can send signaling or media data.  Generally full frames
@@ -44,6 +44,12 @@ public class FullFrame extends FrameBase
 
 	protected long frameGeneratedTimestamp;
 
+	/**
+	 * System.nanoTime() when a received frame was read from the socket, 0 for
+	 * frames created locally.
+	 */
+	protected long receivedNanoTime;
+
 	/**
 	 * This 15-bit value specifies the call number the transmitting client uses
 	 * to reference the call at the remote peer. This number is the same as the
@@ -166,6 +172,35 @@ public class FullFrame extends FrameBase
 	}
 
 
+	/**
+	 * Materializes the FullFrame a decoder currently points to. Only the
+	 * payload gets copied, the header is read straight from the decoder.
+	 */
+	protected FullFrame(FrameDecoder decoder) throws InvalidArgumentException
+	{
+		this.sourceCallNumber = decoder.getSourceCallNumber();
+		this.retransmitted = decoder.isRetransmitted();
+		this.destinationCallNumber = decoder.getDestinationCallNumber();
+		this.timestamp = decoder.getTimestamp();
+		this.oSeqNo = decoder.getOSeqNo();
+		this.iSeqNo = decoder.getISeqNo();
+
+		try
+		{
+			this.type = FullFrameType.getFrameTypeByNumber(decoder.getFrameTypeRaw());
+		}
+		catch (EnumReverseElementNotFoundException e)
+		{
+			throw new InvalidArgumentException(e);
+		}
+
+		this.cBit = decoder.isCBit();
+		this.subclass = decoder.getSubclass();
+		this.data = decoder.getPayload();
+		this.frameGeneratedTimestamp = System.currentTimeMillis();
+	}
+
+
 	/**
 	 * Construct a FullFrame from a FullFrame. Seems a bit paradox, but enables
 	 * a seamless cast from FullFrame to the subclass frametypes.
@@ -222,18 +257,13 @@ public class FullFrame extends FrameBase
 	}
 
 
-	public void updateNextRetransmitTimestamp()
+	/**
+	 * Sets the next retransmission retransmitTimeout msecs from now. The
+	 * timeout already needs to contain any backoff for the retransmit count.
+	 */
+	public void updateNextRetransmitTimestamp(long retransmitTimeout)
 	{
-		if(retransmitCount < 1)
-		{
-			this.nextRetransmitTimestamp = System.currentTimeMillis() 
-					+ (PeerConstants.FRAME_RETRANSMIT_TIMEOUT_IN_MSECS  * 2);
-		}
-		else
-		{
-			this.nextRetransmitTimestamp = System.currentTimeMillis() 
-				+ (PeerConstants.FRAME_RETRANSMIT_TIMEOUT_IN_MSECS ^ (long) retransmitCount);
-		}
+		this.nextRetransmitTimestamp = System.currentTimeMillis() + retransmitTimeout;
 	}
 
 
@@ -261,6 +291,18 @@ public class FullFrame extends FrameBase
 	}
 
 
+	public long getReceivedNanoTime()
+	{
+		return receivedNanoTime;
+	}
+
+
+	public void setReceivedNanoTime(long receivedNanoTime)
+	{
+		this.receivedNanoTime = receivedNanoTime;
+	}
+
+
 	public void setTimestamp(int timestamp)
 	{
 		this.timestamp = timestamp;
@@ -339,40 +381,39 @@ public class FullFrame extends FrameBase
 	}
 
 
+	/**
+	 * The 12 bytes header, subclasses add their payload.
+	 */
 	@Override
-	public byte[] serialize()
+	public int getSerializedLength()
 	{
-		ByteBuffer buffer = new ByteBuffer(12);
+		return 12;
+	}
 
+
+	@Override
+	public void serializeTo(ByteBuffer buffer)
+	{
 		// F-bit & source call number (2 bytes)
-		buffer.put16bits(0x8000 + (sourceCallNumber & 0x7FFF));
+		buffer.putShort((short) (0x8000 + (sourceCallNumber & 0x7FFF)));
 
 		// r-bit & destination call number (2 bytes)
-		buffer.put16bits((((retransmitted == true) ? 0x8000 : 0)) + (destinationCallNumber & 0x7FFF));
+		buffer.putShort((short) (((retransmitted == true) ? 0x8000 : 0) + (destinationCallNumber & 0x7FFF)));
 
-		buffer.put32bits(timestamp);
-		buffer.put8bits(oSeqNo);
-		buffer.put8bits(iSeqNo);
-		buffer.put8bits(type.getType());
+		buffer.putInt((int) timestamp);
+		buffer.put((byte) oSeqNo);
+		buffer.put((byte) iSeqNo);
+		buffer.put((byte) type.getType());
 
-		// re-calculate subclass in power format
+		// C-bit & subclass (1 byte), with the C-bit set the subclass is sent as power of 2
 		if (cBit == true)
 		{
-			// we need 2^i=_subclass
-			for (int i = 0; i < 31; i++)
-			{
-				if (((1 << i) & subclass) != 0)
-				{
-					this.subclass = i;
-					break;
-				}
-			}
+			buffer.put((byte) (0x80 + (Long.numberOfTrailingZeros(subclass) & 0x1F)));
+		}
+		else
+		{
+			buffer.put((byte) (subclass & 0x7F));
 		}
-
-		// C-bit & subclass (1 byte)
-		buffer.put8bits((short) ((cBit == true) ? 0x80 : 0 + (subclass & 0x7F)));
-
-		return buffer.getBuffer();
 	}
 
 
@@ -104,19 +104,34 @@ public abstract class InformationElement
 	}
 
 
-	public byte[] serialize()
+	public int getSerializedLength()
 	{
-		ByteBuffer buffer = new ByteBuffer(2 + dataLength);
+		return 2 + dataLength;
+	}
 
-		buffer.put8bits(getTypeRaw());
-		buffer.put8bits(dataLength);
+
+	/**
+	 * Writes type, length and data at the buffer's position.
+	 */
+	public void serializeTo(java.nio.ByteBuffer buffer)
+	{
+		buffer.put((byte) getTypeRaw());
+		buffer.put((byte) dataLength);
 
 		if (dataLength > 0)
 		{
-			buffer.putByteArray(data);
+			buffer.put(data, 0, dataLength);
 		}
+	}
+
+
+	public byte[] serialize()
+	{
+		byte[] result = new byte[getSerializedLength()];
+
+		serializeTo(java.nio.ByteBuffer.wrap(result));
 
-		return buffer.getBuffer();
+		return result;
 	}
 
 
@@ -0,0 +1,219 @@
+package com.misternerd.djiax.io.frame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Trunk frames are MetaFrames which carry the media of many calls between the
+ * same two peers in a single datagram, saving a UDP packet and its overhead
+ * per call and interval. The header starts with 16 bits of zero to tell them
+ * apart from Full and MiniFrames:
+ *
+ *                         1                   2                   3
+ *  0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |0|0 0 0 0 0 0 0 0 0 0 0 0 0 0 0|0| Meta Command|   Cmd Data  |T|
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                            time-stamp                         |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * :                         trunk entries                         :
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ *
+ * The meta command for trunks is 1. Without the T-bit, every entry is the
+ * source call number and the length of the data, the receiver derives the
+ * media timestamp from the trunk's time-stamp:
+ *
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |0|     Source Call Number      |          Data Length          |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * :                             Data                              :
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ *
+ * With the T-bit set, every entry is the data length followed by a complete
+ * MiniFrame, so each call keeps its own timestamp:
+ *
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |          Data Length          |0|     Source Call Number      |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |          time-stamp           |                               |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+                               |
+ * :                             Data                              :
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ *
+ * The frame is filled in place: entries get appended to a buffer of fixed
+ * size, which is reused after the frame has been sent.
+ */
+public class MetaTrunkFrame extends FrameBase
+{
+
+	public static final short META_COMMAND_TRUNK = 0x01;
+
+	/**
+	 * Bitmask of the T-bit in the command data.
+	 */
+	public static final short TRUNK_TIMESTAMPED = 0x01;
+
+	public static final int HEADER_LENGTH = 8;
+
+	public static final int ENTRY_HEADER_LENGTH = 4;
+
+	public static final int TIMESTAMPED_ENTRY_HEADER_LENGTH = 6;
+
+	private final boolean timestamped;
+
+	/**
+	 * 32-bit timestamp of the trunk in msecs.
+	 */
+	private long timestamp;
+
+	private final ByteBuffer entries;
+
+	private int numberOfEntries;
+
+
+	/**
+	 * @param maxLength The maximum length of the serialized frame, including
+	 *            the header.
+	 */
+	public MetaTrunkFrame(boolean timestamped, int maxLength)
+	{
+		super((short) 0);
+
+		this.timestamped = timestamped;
+		this.entries = ByteBuffer.allocate(maxLength - HEADER_LENGTH);
+	}
+
+
+	public boolean isTimestamped()
+	{
+		return timestamped;
+	}
+
+
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+
+
+	public void setTimestamp(long timestamp)
+	{
+		this.timestamp = timestamp;
+	}
+
+
+	public int getNumberOfEntries()
+	{
+		return numberOfEntries;
+	}
+
+
+	public boolean isEmpty()
+	{
+		return numberOfEntries == 0;
+	}
+
+
+	/**
+	 * Appends the media of a call.
+	 *
+	 * @return false if the entry does not fit into the frame anymore
+	 */
+	public boolean addEntry(short sourceCallNumber, int timestamp, byte[] data, int offset, int length)
+	{
+		if (!putEntryHeader(sourceCallNumber, timestamp, length))
+		{
+			return false;
+		}
+
+		entries.put(data, offset, length);
+		numberOfEntries++;
+
+		return true;
+	}
+
+
+	/**
+	 * Appends the remaining bytes of the buffer as media of a call, the
+	 * buffer's position is left unchanged.
+	 *
+	 * @return false if the entry does not fit into the frame anymore
+	 */
+	public boolean addEntry(short sourceCallNumber, int timestamp, ByteBuffer media)
+	{
+		int position = media.position();
+
+		if (!putEntryHeader(sourceCallNumber, timestamp, media.remaining()))
+		{
+			return false;
+		}
+
+		entries.put(media);
+		media.position(position);
+		numberOfEntries++;
+
+		return true;
+	}
+
+
+	private boolean putEntryHeader(short sourceCallNumber, int timestamp, int length)
+	{
+		int entryLength = (timestamped ? TIMESTAMPED_ENTRY_HEADER_LENGTH : ENTRY_HEADER_LENGTH) + length;
+
+		if (entryLength > entries.remaining())
+		{
+			return false;
+		}
+
+		if (timestamped)
+		{
+			entries.putShort((short) length);
+			entries.putShort((short) (sourceCallNumber & 0x7FFF));
+			entries.putShort((short) (timestamp & 0xFFFF));
+		}
+		else
+		{
+			entries.putShort((short) (sourceCallNumber & 0x7FFF));
+			entries.putShort((short) length);
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Removes all entries, so the frame can be filled again.
+	 */
+	public void clear()
+	{
+		entries.clear();
+		numberOfEntries = 0;
+	}
+
+
+	@Override
+	public int getSerializedLength()
+	{
+		return HEADER_LENGTH + entries.position();
+	}
+
+
+	@Override
+	public void serializeTo(ByteBuffer buffer)
+	{
+		// meta indicator, V-bit & meta command, command data
+		buffer.putShort((short) 0);
+		buffer.put((byte) META_COMMAND_TRUNK);
+		buffer.put((byte) (timestamped ? TRUNK_TIMESTAMPED : 0));
+		buffer.putInt((int) timestamp);
+		buffer.put(entries.array(), 0, entries.position());
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return String.format("MetaTrunkFrame(timestamped=%b, ts=%d, entries=%d, size=%d)",
+				timestamped, timestamp, numberOfEntries, getSerializedLength());
+	}
+
+}
@@ -1,5 +1,7 @@
 package com.misternerd.djiax.io.frame;
 
+import java.nio.ByteBuffer;
+
 import com.misternerd.djiax.exception.InvalidArgumentException;
 
 /**
@@ -15,6 +17,9 @@ import com.misternerd.djiax.exception.InvalidArgumentException;
  */
 public class MiniFrame extends FrameBase
 {
+
+	public static final int HEADER_LENGTH = 4;
+
 	/**
 	 * 16-bit timestamp, lower 16 bits of peer's full 32 bit timestamp. The
 	 * 16-bit time-stamp wraps after 65.536 seconds, at which point a full frame
@@ -26,6 +31,11 @@ public class MiniFrame extends FrameBase
 
 	private byte[] data;
 
+	/**
+	 * Payload given as buffer instead of data, its remaining bytes are sent.
+	 */
+	private ByteBuffer payload;
+
 
 	public MiniFrame()
 	{
@@ -79,6 +89,9 @@ public class MiniFrame extends FrameBase
 	}
 
 
+	/**
+	 * The payload as array, null if it has been set as buffer.
+	 */
 	public byte[] getData()
 	{
 		return data;
@@ -88,36 +101,70 @@ public class MiniFrame extends FrameBase
 	public void setData(byte[] data)
 	{
 		this.data = data;
+		this.payload = null;
+	}
+
+
+	/**
+	 * The payload as buffer, null if it has been set as array.
+	 */
+	public ByteBuffer getPayload()
+	{
+		return payload;
+	}
+
+
+	/**
+	 * Sets the remaining bytes of the buffer as payload. The frame only keeps a
+	 * reference, so the bytes must not change until the frame is sent.
+	 * Serializing copies them without moving the buffer's position.
+	 */
+	public void setPayload(ByteBuffer payload)
+	{
+		this.payload = payload;
+		this.data = null;
 	}
 
 
-	public byte[] serialize()
+	public int getPayloadLength()
 	{
-		// 4 bytes header + data bytes
-		byte[] result = new byte[4 + data.length];
+		return payload != null ? payload.remaining() : data.length;
+	}
 
-		// 1. byte: 0 (no full frame) + upper 7 bits of source call number
-		result[0] = (byte) ((sourceCallNumber & 0x7F00) >> 8);
 
-		// 2. byte: lower 8 bits of source call number
-		result[1] = (byte) (sourceCallNumber & 0xFF);
+	@Override
+	public int getSerializedLength()
+	{
+		return HEADER_LENGTH + getPayloadLength();
+	}
 
-		// 3. byte: upper 8 bits of timestamp
-		result[2] = (byte) ((timestamp & 0xFF00) >> 8);
 
-		// 4. byte: lower 8 bits of timestamp
-		result[3] = (byte) (timestamp & 0xFF);
+	@Override
+	public void serializeTo(ByteBuffer buffer)
+	{
+		// 0 (no full frame) + 15 bits source call number
+		buffer.putShort((short) (sourceCallNumber & 0x7FFF));
 
-		System.arraycopy(data, 0, result, 4, data.length);
+		// lower 16 bits of the timestamp
+		buffer.putShort((short) (timestamp & 0xFFFF));
 
-		return result;
+		if (payload != null)
+		{
+			int position = payload.position();
+			buffer.put(payload);
+			payload.position(position);
+		}
+		else
+		{
+			buffer.put(data);
+		}
 	}
 
 
 	@Override
 	public String toString()
 	{
-		return String.format("MiniFrame(srcCall=%d, timestamp=%d, size=%d)", sourceCallNumber, timestamp, data.length);
+		return String.format("MiniFrame(srcCall=%d, timestamp=%d, size=%d)", sourceCallNumber, timestamp, getPayloadLength());
 	}
 
 }
\ No newline at end of file
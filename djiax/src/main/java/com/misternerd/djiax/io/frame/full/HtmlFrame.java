@@ -1,6 +1,7 @@
 package com.misternerd.djiax.io.frame.full;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
 import com.misternerd.djiax.exception.InvalidArgumentException;
 import com.misternerd.djiax.io.frame.FullFrame;
@@ -104,16 +105,17 @@ public class HtmlFrame extends FullFrame
 
 
 	@Override
-	public byte[] serialize()
+	public int getSerializedLength()
 	{
-		byte[] fullFrame = super.serialize();
-		byte[] text = html.getBytes();
-		byte[] result = new byte[fullFrame.length + text.length];
+		return super.getSerializedLength() + html.getBytes().length;
+	}
 
-		System.arraycopy(fullFrame, 0, result, 0, fullFrame.length);
-		System.arraycopy(text, 0, result, fullFrame.length, text.length);
 
-		return result;
+	@Override
+	public void serializeTo(ByteBuffer buffer)
+	{
+		super.serializeTo(buffer);
+		buffer.put(html.getBytes());
 	}
 
 
@@ -1,5 +1,6 @@
 package com.misternerd.djiax.io.frame.full;
 
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map.Entry;
@@ -122,7 +123,13 @@ public class IaxFrame extends FullFrame
 	 */
 	public void addInformationElement(InformationElement ie)
 	{
-		informationElements.put(ie.getType(), ie);
+		InformationElement replaced = informationElements.put(ie.getType(), ie);
+
+		if (replaced != null)
+		{
+			informationElementsDataLength -= replaced.getDataLength();
+		}
+
 		informationElementsDataLength += ie.getDataLength();
 	}
 
@@ -146,34 +153,22 @@ public class IaxFrame extends FullFrame
 
 
 	@Override
-	public byte[] serialize() throws IndexOutOfBoundsException
+	public int getSerializedLength()
 	{
-		byte[] header = super.serialize();
-		byte[] result;
+		// header + IEs header length (2 bytes each) +  IEs data length
+		return super.getSerializedLength() + (informationElements.size() * 2) + informationElementsDataLength;
+	}
 
-		if (!informationElements.isEmpty())
-		{
-			// header + IEs header length (2 bytes each) +  IEs data length
-			result = new byte[header.length + (informationElements.size() * 2) + informationElementsDataLength];
 
-			Iterator<Entry<InformationElementType, InformationElement>> it = informationElements.entrySet().iterator();
-			int offset = header.length;
+	@Override
+	public void serializeTo(ByteBuffer buffer)
+	{
+		super.serializeTo(buffer);
 
-			while (it.hasNext())
-			{
-				InformationElement ie = it.next().getValue();
-				System.arraycopy(ie.serialize(), 0, result, offset, ie.getDataLength() + 2);
-				offset += 2 + ie.getDataLength();
-			}
-		}
-		else
+		for (InformationElement ie : informationElements.values())
 		{
-			result = header;
+			ie.serializeTo(buffer);
 		}
-
-		System.arraycopy(header, 0, result, 0, header.length);
-
-		return result;
 	}
 
 
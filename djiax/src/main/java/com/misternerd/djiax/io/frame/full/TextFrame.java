@@ -1,6 +1,7 @@
 package com.misternerd.djiax.io.frame.full;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
 import com.misternerd.djiax.exception.InvalidArgumentException;
 import com.misternerd.djiax.io.frame.FullFrame;
@@ -87,16 +88,17 @@ public class TextFrame extends FullFrame
 
 
 	@Override
-	public byte[] serialize()
+	public int getSerializedLength()
 	{
-		byte[] fullFrame = super.serialize();
-		byte[] text = this.text.getBytes();
-		byte[] result = new byte[fullFrame.length + text.length];
+		return super.getSerializedLength() + this.text.getBytes().length;
+	}
 
-		System.arraycopy(fullFrame, 0, result, 0, fullFrame.length);
-		System.arraycopy(text, 0, result, fullFrame.length, text.length);
 
-		return result;
+	@Override
+	public void serializeTo(ByteBuffer buffer)
+	{
+		super.serializeTo(buffer);
+		buffer.put(this.text.getBytes());
 	}
 
 
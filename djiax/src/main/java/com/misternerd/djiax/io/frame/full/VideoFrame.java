@@ -1,5 +1,7 @@
 package com.misternerd.djiax.io.frame.full;
 
+import java.nio.ByteBuffer;
+
 import com.misternerd.djiax.exception.EnumReverseElementNotFoundException;
 import com.misternerd.djiax.exception.InvalidArgumentException;
 import com.misternerd.djiax.io.frame.FullFrame;
@@ -123,19 +125,17 @@ public class VideoFrame extends FullFrame
 
 
 	@Override
-	public byte[] serialize()
+	public int getSerializedLength()
 	{
-		byte[] fullFrame = super.serialize();
-		byte[] result = new byte[fullFrame.length + data.length];
+		return super.getSerializedLength() + data.length;
+	}
 
-		System.arraycopy(fullFrame, 0, result, 0, fullFrame.length);
 
-		if (data.length > 0)
-		{
-			System.arraycopy(data, 0, result, fullFrame.length, data.length);
-		}
-
-		return result;
+	@Override
+	public void serializeTo(ByteBuffer buffer)
+	{
+		super.serializeTo(buffer);
+		buffer.put(data);
 	}
 
 	
@@ -107,8 +107,13 @@ public class Md5Result extends InformationElement
 		System.arraycopy(challengeBytes, 0, bothBytes, 0, challengeBytes.length);
 		System.arraycopy(passwordBytes, 0, bothBytes, challengeBytes.length, passwordBytes.length);
 
-		messageDigest.update(bothBytes);
-		byte[] result = messageDigest.digest();
+		byte[] result;
+
+		// calls and peers authenticate on their own threads, the digest is shared
+		synchronized (messageDigest)
+		{
+			result = messageDigest.digest(bothBytes);
+		}
 
 		StringBuilder sb = new StringBuilder();
 		
@@ -35,7 +35,7 @@ public class RrDelay extends InformationElement
 	{
 		super();
 
-		ByteBuffer buffer = new ByteBuffer(4);
+		ByteBuffer buffer = new ByteBuffer(2);
 		buffer.put16bits(delay);
 
 		this.delay = delay;
@@ -95,7 +95,7 @@ public class RrLoss extends InformationElement
 	@Override
 	public String toString()
 	{
-		return String.format("RrLoss(percentage=%d, count=%d)", lossCount, lossPercentage);
+		return String.format("RrLoss(percentage=%d, count=%d)", lossPercentage, lossCount);
 	}
 
 }
\ No newline at end of file
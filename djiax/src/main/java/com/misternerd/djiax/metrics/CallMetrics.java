@@ -0,0 +1,299 @@
+package com.misternerd.djiax.metrics;
+
+import com.misternerd.djiax.util.QueueStatistics;
+
+/**
+ * Counters of a single call. Frames and bytes are counted when the call hands
+ * them to its peer or gets them from it, trunk entries as the MiniFrames they
+ * stand for. All other events are passed on to the peer's metrics as well, so
+ * the peer's values cover all its calls.
+ */
+public class CallMetrics implements TransmissionMetrics
+{
+
+	/**
+	 * A call is updated by a few threads only: the receiver, the call's own
+	 * thread, the timer wheel and the thread writing audio.
+	 */
+	private static final int MAX_STRIPES = 4;
+
+	private static final int FRAMES_RECEIVED = 0;
+
+	private static final int BYTES_RECEIVED = 1;
+
+	private static final int FRAMES_SENT = 2;
+
+	private static final int BYTES_SENT = 3;
+
+	private static final int RETRANSMITS = 4;
+
+	private static final int RETRANSMIT_GIVE_UPS = 5;
+
+	private static final int VNAKS_SENT = 6;
+
+	private static final int VNAKS_RECEIVED = 7;
+
+	private static final int OUT_OF_ORDER_DISCARDS = 8;
+
+	private static final int NUMBER_OF_COUNTERS = 9;
+
+	private final PeerMetrics peerMetrics;
+
+	private final QueueStatistics[] queues;
+
+	private final StripedCounters counters = new StripedCounters(NUMBER_OF_COUNTERS, MAX_STRIPES);
+
+	private volatile long startNanoTime;
+
+	private volatile long acceptTime = -1;
+
+	private volatile long answerTime = -1;
+
+
+	/**
+	 * @param queues The call's inbound queues, their drops are part of the
+	 *            snapshot
+	 */
+	public CallMetrics(PeerMetrics peerMetrics, QueueStatistics... queues)
+	{
+		this.peerMetrics = peerMetrics;
+		this.queues = queues;
+	}
+
+
+	public void frameReceived(int bytes)
+	{
+		counters.increment(FRAMES_RECEIVED);
+		counters.add(BYTES_RECEIVED, bytes);
+	}
+
+
+	public void frameSent(int bytes)
+	{
+		counters.increment(FRAMES_SENT);
+		counters.add(BYTES_SENT, bytes);
+	}
+
+
+	@Override
+	public void frameRetransmitted()
+	{
+		counters.increment(RETRANSMITS);
+		peerMetrics.frameRetransmitted();
+	}
+
+
+	@Override
+	public void retransmitGivenUp()
+	{
+		counters.increment(RETRANSMIT_GIVE_UPS);
+		peerMetrics.retransmitGivenUp();
+	}
+
+
+	@Override
+	public void roundTripMeasured(long nanos)
+	{
+		peerMetrics.roundTripMeasured(nanos);
+	}
+
+
+	public void vnakSent()
+	{
+		counters.increment(VNAKS_SENT);
+		peerMetrics.vnakSent();
+	}
+
+
+	public void vnakReceived()
+	{
+		counters.increment(VNAKS_RECEIVED);
+		peerMetrics.vnakReceived();
+	}
+
+
+	public void outOfOrderDiscarded()
+	{
+		counters.increment(OUT_OF_ORDER_DISCARDS);
+		peerMetrics.outOfOrderDiscarded();
+	}
+
+
+	/**
+	 * The NEW has been sent, starts the setup time.
+	 */
+	public void callStarted()
+	{
+		this.startNanoTime = System.nanoTime();
+		this.acceptTime = -1;
+		this.answerTime = -1;
+	}
+
+
+	public void callAccepted()
+	{
+		this.acceptTime = System.nanoTime() - startNanoTime;
+		peerMetrics.callAccepted(acceptTime);
+	}
+
+
+	public void callAnswered()
+	{
+		this.answerTime = System.nanoTime() - startNanoTime;
+		peerMetrics.callAnswered(answerTime);
+	}
+
+
+	/**
+	 * Frames dropped by the call's inbound queues so far.
+	 */
+	public long getQueueDrops()
+	{
+		long drops = 0;
+
+		for (QueueStatistics queue : queues)
+		{
+			drops += queue.getDroppedCount();
+		}
+
+		return drops;
+	}
+
+
+	public Snapshot snapshot()
+	{
+		long[] values = new long[NUMBER_OF_COUNTERS];
+		counters.getAll(values);
+
+		return new Snapshot(System.currentTimeMillis(), values, getQueueDrops(), acceptTime, answerTime);
+	}
+
+
+	/**
+	 * The metrics of a call at one point in time, see PeerMetrics.Snapshot.
+	 */
+	public static class Snapshot
+	{
+
+		private final long timestamp;
+
+		private final long[] values;
+
+		private final long queueDrops;
+
+		private final long acceptTime;
+
+		private final long answerTime;
+
+
+		private Snapshot(long timestamp, long[] values, long queueDrops, long acceptTime, long answerTime)
+		{
+			this.timestamp = timestamp;
+			this.values = values;
+			this.queueDrops = queueDrops;
+			this.acceptTime = acceptTime;
+			this.answerTime = answerTime;
+		}
+
+
+		/**
+		 * When the snapshot was taken, in msecs since the epoch.
+		 */
+		public long getTimestamp()
+		{
+			return timestamp;
+		}
+
+
+		public long getFramesReceived()
+		{
+			return values[FRAMES_RECEIVED];
+		}
+
+
+		public long getBytesReceived()
+		{
+			return values[BYTES_RECEIVED];
+		}
+
+
+		public long getFramesSent()
+		{
+			return values[FRAMES_SENT];
+		}
+
+
+		public long getBytesSent()
+		{
+			return values[BYTES_SENT];
+		}
+
+
+		public long getRetransmits()
+		{
+			return values[RETRANSMITS];
+		}
+
+
+		public long getRetransmitGiveUps()
+		{
+			return values[RETRANSMIT_GIVE_UPS];
+		}
+
+
+		public long getVnaksSent()
+		{
+			return values[VNAKS_SENT];
+		}
+
+
+		public long getVnaksReceived()
+		{
+			return values[VNAKS_RECEIVED];
+		}
+
+
+		public long getOutOfOrderDiscards()
+		{
+			return values[OUT_OF_ORDER_DISCARDS];
+		}
+
+
+		public long getQueueDrops()
+		{
+			return queueDrops;
+		}
+
+
+		/**
+		 * Time from sending the NEW to receiving the ACCEPT in nanos, -1 if
+		 * the call has not been accepted.
+		 */
+		public long getAcceptTime()
+		{
+			return acceptTime;
+		}
+
+
+		/**
+		 * Time from sending the NEW to receiving the ANSWER in nanos, -1 if
+		 * the call has not been answered.
+		 */
+		public long getAnswerTime()
+		{
+			return answerTime;
+		}
+
+
+		@Override
+		public String toString()
+		{
+			return String.format("CallMetrics(received=%d/%dB, sent=%d/%dB, retransmits=%d, giveUps=%d, vnaks=%d/%d, "
+					+ "outOfOrder=%d, queueDrops=%d, accept=%dus, answer=%dus)", getFramesReceived(), getBytesReceived(),
+					getFramesSent(), getBytesSent(), getRetransmits(), getRetransmitGiveUps(), getVnaksSent(), getVnaksReceived(),
+					getOutOfOrderDiscards(), queueDrops, acceptTime / 1000, answerTime / 1000);
+		}
+
+	}
+
+}
@@ -0,0 +1,158 @@
+package com.misternerd.djiax.metrics;
+
+import com.misternerd.djiax.io.frame.FullFrameType;
+import com.misternerd.djiax.io.frame.full.IaxFrameSubclass;
+
+/**
+ * Frames and bytes passing a peer's sockets in one direction. FullFrames are
+ * counted by their frame type, IAX control frames also by their subclass.
+ * Frame types and subclasses are counted by their raw value, unknown values
+ * are collected in slot 0.
+ */
+public class FrameCounters
+{
+
+	private static final int TYPE_SLOTS = 16;
+
+	private static final int SUBCLASS_SLOTS = 64;
+
+	private static final int MINI_FRAMES = 0;
+
+	private static final int META_FRAMES = 1;
+
+	private static final int BYTES = 2;
+
+	private static final int FULL_FRAME_TYPES = 3;
+
+	private static final int IAX_SUBCLASSES = FULL_FRAME_TYPES + TYPE_SLOTS;
+
+	private static final int SIZE = IAX_SUBCLASSES + SUBCLASS_SLOTS;
+
+	private final StripedCounters counters;
+
+
+	public FrameCounters(int maxStripes)
+	{
+		this.counters = new StripedCounters(SIZE, maxStripes);
+	}
+
+
+	/**
+	 * @param frameType The raw frame type
+	 * @param subclass The subclass, already interpreted if the c-bit was set
+	 * @param bytes The length of the frame on the wire
+	 */
+	public void fullFrame(int frameType, long subclass, int bytes)
+	{
+		counters.increment(FULL_FRAME_TYPES + ((frameType > 0 && frameType < TYPE_SLOTS) ? frameType : 0));
+
+		if (frameType == FullFrameType.IAXCONTROL.getType())
+		{
+			counters.increment(IAX_SUBCLASSES + (int) ((subclass > 0 && subclass < SUBCLASS_SLOTS) ? subclass : 0));
+		}
+
+		counters.add(BYTES, bytes);
+	}
+
+
+	public void miniFrame(int bytes)
+	{
+		counters.increment(MINI_FRAMES);
+		counters.add(BYTES, bytes);
+	}
+
+
+	public void metaFrame(int bytes)
+	{
+		counters.increment(META_FRAMES);
+		counters.add(BYTES, bytes);
+	}
+
+
+	public Snapshot snapshot()
+	{
+		long[] values = new long[SIZE];
+		counters.getAll(values);
+
+		return new Snapshot(values);
+	}
+
+
+	/**
+	 * The counters at one point in time. Totals are computed from the
+	 * individual counters of the snapshot, so they always match.
+	 */
+	public static class Snapshot
+	{
+
+		private final long[] values;
+
+
+		private Snapshot(long[] values)
+		{
+			this.values = values;
+		}
+
+
+		public long getFrames()
+		{
+			return getFullFrames() + getMiniFrames() + getMetaFrames();
+		}
+
+
+		public long getFullFrames()
+		{
+			long sum = 0;
+
+			for (int i = 0; i < TYPE_SLOTS; i++)
+			{
+				sum += values[FULL_FRAME_TYPES + i];
+			}
+
+			return sum;
+		}
+
+
+		public long getFullFrames(FullFrameType type)
+		{
+			return (type.getType() < TYPE_SLOTS) ? values[FULL_FRAME_TYPES + type.getType()] : 0;
+		}
+
+
+		public long getIaxFrames(IaxFrameSubclass subclass)
+		{
+			return (subclass.getSubclass() < SUBCLASS_SLOTS) ? values[IAX_SUBCLASSES + subclass.getSubclass()] : 0;
+		}
+
+
+		public long getMiniFrames()
+		{
+			return values[MINI_FRAMES];
+		}
+
+
+		/**
+		 * MetaFrames, i.e. trunk frames, each carrying the media of many calls.
+		 */
+		public long getMetaFrames()
+		{
+			return values[META_FRAMES];
+		}
+
+
+		public long getBytes()
+		{
+			return values[BYTES];
+		}
+
+
+		@Override
+		public String toString()
+		{
+			return String.format("(frames=%d, full=%d, mini=%d, meta=%d, bytes=%d)",
+					getFrames(), getFullFrames(), getMiniFrames(), getMetaFrames(), getBytes());
+		}
+
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.misternerd.djiax.metrics;
+
+/**
+ * Distribution of latencies with logarithmic buckets: bucket 0 counts values
+ * below a microsecond, bucket i values from 2^(i-1) up to 2^i microseconds,
+ * the last bucket everything above. Recording is two striped counter updates,
+ * so any number of threads can record without locking.
+ */
+public class LatencyHistogram
+{
+
+	public static final int NUMBER_OF_BUCKETS = 32;
+
+	private static final int SUM = NUMBER_OF_BUCKETS;
+
+	private final StripedCounters counters;
+
+
+	public LatencyHistogram(int maxStripes)
+	{
+		this.counters = new StripedCounters(NUMBER_OF_BUCKETS + 1, maxStripes);
+	}
+
+
+	public void record(long nanos)
+	{
+		long micros = Math.max(0, nanos / 1000);
+		int bucket = Math.min(NUMBER_OF_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+
+		counters.increment(bucket);
+		counters.add(SUM, micros);
+	}
+
+
+	public Snapshot snapshot()
+	{
+		long[] values = new long[NUMBER_OF_BUCKETS + 1];
+		counters.getAll(values);
+
+		return new Snapshot(values);
+	}
+
+
+	/**
+	 * The upper bound of a bucket in microseconds (exclusive).
+	 */
+	public static long getBucketUpperBound(int bucket)
+	{
+		return (bucket >= NUMBER_OF_BUCKETS - 1) ? Long.MAX_VALUE : 1L << bucket;
+	}
+
+
+	/**
+	 * The values of a histogram at one point in time. The count is the sum of
+	 * the buckets, so percentiles always add up.
+	 */
+	public static class Snapshot
+	{
+
+		private final long[] buckets;
+
+		private final long count;
+
+		private final long sumMicros;
+
+
+		private Snapshot(long[] values)
+		{
+			long total = 0;
+
+			for (int i = 0; i < NUMBER_OF_BUCKETS; i++)
+			{
+				total += values[i];
+			}
+
+			this.buckets = values;
+			this.count = total;
+			this.sumMicros = values[SUM];
+		}
+
+
+		public long getCount()
+		{
+			return count;
+		}
+
+
+		public long getBucketCount(int bucket)
+		{
+			return buckets[bucket];
+		}
+
+
+		/**
+		 * The mean in microseconds, 0 if nothing has been recorded.
+		 */
+		public double getMean()
+		{
+			return (count == 0) ? 0 : (double) sumMicros / count;
+		}
+
+
+		/**
+		 * The upper bound in microseconds of the bucket holding the given
+		 * percentile (0-100), 0 if nothing has been recorded.
+		 */
+		public long getPercentile(double percentile)
+		{
+			if (count == 0)
+			{
+				return 0;
+			}
+
+			long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100.0);
+			long seen = 0;
+
+			for (int i = 0; i < NUMBER_OF_BUCKETS; i++)
+			{
+				seen += buckets[i];
+
+				if (seen >= Math.max(1, rank))
+				{
+					return getBucketUpperBound(i);
+				}
+			}
+
+			return getBucketUpperBound(NUMBER_OF_BUCKETS - 1);
+		}
+
+
+		@Override
+		public String toString()
+		{
+			return String.format("(count=%d, mean=%.1fus, p50<%dus, p99<%dus)", count, getMean(), getPercentile(50), getPercentile(99));
+		}
+
+	}
+
+}
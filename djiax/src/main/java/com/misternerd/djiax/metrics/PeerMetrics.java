@@ -0,0 +1,289 @@
+package com.misternerd.djiax.metrics;
+
+/**
+ * Counters and latencies of a peer and all its calls. Frames are counted where
+ * they pass the peer's sockets, the other events are reported by the peer and
+ * its calls as they happen. Everything is updated lock-free in place, reading
+ * it is done through snapshot(), which never blocks the threads updating.
+ */
+public class PeerMetrics implements TransmissionMetrics
+{
+
+	private static final int MAX_STRIPES = 64;
+
+	private static final int RETRANSMITS = 0;
+
+	private static final int RETRANSMIT_GIVE_UPS = 1;
+
+	private static final int VNAKS_SENT = 2;
+
+	private static final int VNAKS_RECEIVED = 3;
+
+	private static final int OUT_OF_ORDER_DISCARDS = 4;
+
+	private static final int QUEUE_DROPS = 5;
+
+	private static final int NUMBER_OF_EVENTS = 6;
+
+	private final FrameCounters received = new FrameCounters(MAX_STRIPES);
+
+	private final FrameCounters sent = new FrameCounters(MAX_STRIPES);
+
+	private final StripedCounters events = new StripedCounters(NUMBER_OF_EVENTS, MAX_STRIPES);
+
+	private final LatencyHistogram receiveToDispatch = new LatencyHistogram(MAX_STRIPES);
+
+	private final LatencyHistogram ackRoundTrip = new LatencyHistogram(MAX_STRIPES);
+
+	private final LatencyHistogram callAcceptTime = new LatencyHistogram(MAX_STRIPES);
+
+	private final LatencyHistogram callAnswerTime = new LatencyHistogram(MAX_STRIPES);
+
+
+	public FrameCounters getReceived()
+	{
+		return received;
+	}
+
+
+	public FrameCounters getSent()
+	{
+		return sent;
+	}
+
+
+	@Override
+	public void frameRetransmitted()
+	{
+		events.increment(RETRANSMITS);
+	}
+
+
+	@Override
+	public void retransmitGivenUp()
+	{
+		events.increment(RETRANSMIT_GIVE_UPS);
+	}
+
+
+	@Override
+	public void roundTripMeasured(long nanos)
+	{
+		ackRoundTrip.record(nanos);
+	}
+
+
+	public void vnakSent()
+	{
+		events.increment(VNAKS_SENT);
+	}
+
+
+	public void vnakReceived()
+	{
+		events.increment(VNAKS_RECEIVED);
+	}
+
+
+	public void outOfOrderDiscarded()
+	{
+		events.increment(OUT_OF_ORDER_DISCARDS);
+	}
+
+
+	/**
+	 * Adds the drops of a call's queues, reported when the call ends.
+	 */
+	public void queueDropped(long count)
+	{
+		events.add(QUEUE_DROPS, count);
+	}
+
+
+	/**
+	 * A received FullFrame reached its state machine.
+	 *
+	 * @param receivedNanoTime System.nanoTime() when the frame was read from
+	 *            the socket
+	 */
+	public void frameDispatched(long receivedNanoTime)
+	{
+		receiveToDispatch.record(System.nanoTime() - receivedNanoTime);
+	}
+
+
+	/**
+	 * Time from sending a call's NEW to receiving the ACCEPT.
+	 */
+	public void callAccepted(long nanos)
+	{
+		callAcceptTime.record(nanos);
+	}
+
+
+	/**
+	 * Time from sending a call's NEW to receiving the ANSWER.
+	 */
+	public void callAnswered(long nanos)
+	{
+		callAnswerTime.record(nanos);
+	}
+
+
+	/**
+	 * Takes a snapshot without stopping the threads updating the metrics. The
+	 * drops of the queues of calls still running are not counted by the peer
+	 * yet, they are passed in by the caller.
+	 */
+	public Snapshot snapshot(long activeCallQueueDrops)
+	{
+		long[] values = new long[NUMBER_OF_EVENTS];
+		events.getAll(values);
+		values[QUEUE_DROPS] += activeCallQueueDrops;
+
+		return new Snapshot(System.currentTimeMillis(), received.snapshot(), sent.snapshot(), values,
+				receiveToDispatch.snapshot(), ackRoundTrip.snapshot(), callAcceptTime.snapshot(), callAnswerTime.snapshot());
+	}
+
+
+	/**
+	 * The metrics of a peer at one point in time. Every value is exact at the
+	 * moment it was read and totals are computed from the snapshot's own
+	 * values, but an update racing with the snapshot might already be part of
+	 * one value and not yet of another.
+	 */
+	public static class Snapshot
+	{
+
+		private final long timestamp;
+
+		private final FrameCounters.Snapshot received;
+
+		private final FrameCounters.Snapshot sent;
+
+		private final long[] events;
+
+		private final LatencyHistogram.Snapshot receiveToDispatch;
+
+		private final LatencyHistogram.Snapshot ackRoundTrip;
+
+		private final LatencyHistogram.Snapshot callAcceptTime;
+
+		private final LatencyHistogram.Snapshot callAnswerTime;
+
+
+		private Snapshot(long timestamp, FrameCounters.Snapshot received, FrameCounters.Snapshot sent, long[] events,
+				LatencyHistogram.Snapshot receiveToDispatch, LatencyHistogram.Snapshot ackRoundTrip,
+				LatencyHistogram.Snapshot callAcceptTime, LatencyHistogram.Snapshot callAnswerTime)
+		{
+			this.timestamp = timestamp;
+			this.received = received;
+			this.sent = sent;
+			this.events = events;
+			this.receiveToDispatch = receiveToDispatch;
+			this.ackRoundTrip = ackRoundTrip;
+			this.callAcceptTime = callAcceptTime;
+			this.callAnswerTime = callAnswerTime;
+		}
+
+
+		/**
+		 * When the snapshot was taken, in msecs since the epoch.
+		 */
+		public long getTimestamp()
+		{
+			return timestamp;
+		}
+
+
+		public FrameCounters.Snapshot getReceived()
+		{
+			return received;
+		}
+
+
+		public FrameCounters.Snapshot getSent()
+		{
+			return sent;
+		}
+
+
+		public long getRetransmits()
+		{
+			return events[RETRANSMITS];
+		}
+
+
+		public long getRetransmitGiveUps()
+		{
+			return events[RETRANSMIT_GIVE_UPS];
+		}
+
+
+		public long getVnaksSent()
+		{
+			return events[VNAKS_SENT];
+		}
+
+
+		public long getVnaksReceived()
+		{
+			return events[VNAKS_RECEIVED];
+		}
+
+
+		public long getOutOfOrderDiscards()
+		{
+			return events[OUT_OF_ORDER_DISCARDS];
+		}
+
+
+		/**
+		 * Frames dropped by the calls' inbound queues.
+		 */
+		public long getQueueDrops()
+		{
+			return events[QUEUE_DROPS];
+		}
+
+
+		/**
+		 * Time from reading a FullFrame from the socket until it reaches the
+		 * state machine of its peer or call.
+		 */
+		public LatencyHistogram.Snapshot getReceiveToDispatchLatency()
+		{
+			return receiveToDispatch;
+		}
+
+
+		public LatencyHistogram.Snapshot getAckRoundTripTime()
+		{
+			return ackRoundTrip;
+		}
+
+
+		public LatencyHistogram.Snapshot getCallAcceptTime()
+		{
+			return callAcceptTime;
+		}
+
+
+		public LatencyHistogram.Snapshot getCallAnswerTime()
+		{
+			return callAnswerTime;
+		}
+
+
+		@Override
+		public String toString()
+		{
+			return String.format("PeerMetrics(received=%s, sent=%s, retransmits=%d, giveUps=%d, vnaks=%d/%d, outOfOrder=%d, "
+					+ "queueDrops=%d, dispatch=%s, rtt=%s, accept=%s, answer=%s)", received, sent, getRetransmits(),
+					getRetransmitGiveUps(), getVnaksSent(), getVnaksReceived(), getOutOfOrderDiscards(), getQueueDrops(),
+					receiveToDispatch, ackRoundTrip, callAcceptTime, callAnswerTime);
+		}
+
+	}
+
+}
@@ -0,0 +1,120 @@
+package com.misternerd.djiax.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed number of monotonic counters that many threads can update without
+ * contending on the same memory location. Every counter is kept once per
+ * stripe, a thread always adds to the stripe picked by its id and reading a
+ * counter sums up all stripes. The stripes are padded to lie on separate cache
+ * lines, so threads on different stripes do not slow each other down.
+ *
+ * This is what LongAdder does in Java 8, but for a group of counters at once,
+ * which keeps the counters a thread updates together on the same cache line.
+ */
+public class StripedCounters
+{
+
+	/**
+	 * Number of longs in a cache line.
+	 */
+	private static final int PADDING = 8;
+
+	private final int size;
+
+	private final int stride;
+
+	private final int stripeMask;
+
+	private final AtomicLongArray cells;
+
+
+	/**
+	 * @param size The number of counters
+	 * @param maxStripes Upper bound of the number of stripes, the actual number
+	 *            is twice the number of CPUs rounded up to a power of two
+	 */
+	public StripedCounters(int size, int maxStripes)
+	{
+		int wantedStripes = Math.max(1, Math.min(maxStripes, Runtime.getRuntime().availableProcessors() * 2));
+		int stripes = Integer.highestOneBit(wantedStripes);
+
+		if (stripes < wantedStripes)
+		{
+			stripes <<= 1;
+		}
+
+		this.size = size;
+		this.stride = ((size + PADDING - 1) / PADDING) * PADDING;
+		this.stripeMask = stripes - 1;
+		// leading and trailing padding keep the first and last stripe apart from other objects
+		this.cells = new AtomicLongArray(PADDING + stripes * stride + PADDING);
+	}
+
+
+	public int size()
+	{
+		return size;
+	}
+
+
+	public void increment(int index)
+	{
+		cells.getAndIncrement(cellIndex(index));
+	}
+
+
+	public void add(int index, long value)
+	{
+		cells.getAndAdd(cellIndex(index), value);
+	}
+
+
+	/**
+	 * The current value of a counter, the sum over all stripes.
+	 */
+	public long get(int index)
+	{
+		long sum = 0;
+
+		for (int stripe = 0; stripe <= stripeMask; stripe++)
+		{
+			sum += cells.get(PADDING + stripe * stride + index);
+		}
+
+		return sum;
+	}
+
+
+	/**
+	 * Reads all counters into values, which needs to hold at least size()
+	 * elements. Updates racing with the read may be seen for some counters
+	 * and not yet for others.
+	 */
+	public void getAll(long[] values)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			values[i] = 0;
+		}
+
+		for (int stripe = 0; stripe <= stripeMask; stripe++)
+		{
+			int base = PADDING + stripe * stride;
+
+			for (int i = 0; i < size; i++)
+			{
+				values[i] += cells.get(base + i);
+			}
+		}
+	}
+
+
+	private int cellIndex(int index)
+	{
+		int stripe = (int) Thread.currentThread().getId() & stripeMask;
+
+		return PADDING + stripe * stride + index;
+	}
+
+}
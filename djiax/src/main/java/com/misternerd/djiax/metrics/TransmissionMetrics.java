@@ -0,0 +1,24 @@
+package com.misternerd.djiax.metrics;
+
+/**
+ * Events of the reliable transmission of FullFrames, reported by the send
+ * window of a peer or a call.
+ */
+public interface TransmissionMetrics
+{
+
+	public void frameRetransmitted();
+
+
+	/**
+	 * A frame was dropped after it had not been acknowledged in time.
+	 */
+	public void retransmitGivenUp();
+
+
+	/**
+	 * Time between sending a frame and receiving its ACK or reply.
+	 */
+	public void roundTripMeasured(long nanos);
+
+}
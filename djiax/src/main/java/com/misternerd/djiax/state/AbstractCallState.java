@@ -71,8 +71,10 @@ public abstract class AbstractCallState
 				case PING:
 				case POKE:
 				{
-					call.sendFrame(new IaxFrame(call.getSourceCallNumber(), false, call.getDestinationCallNumber(), 
-						frame.getTimestamp(), call.getOSeqNoAndIncrement(), call.getISeqNo(), IaxFrameSubclass.PONG), true, false);
+					IaxFrame pong = new IaxFrame(call.getSourceCallNumber(), false, call.getDestinationCallNumber(), 
+						frame.getTimestamp(), call.getOSeqNoAndIncrement(), call.getISeqNo(), IaxFrameSubclass.PONG);
+					call.getStatistics().addReceiverReport(pong);
+					call.sendFrame(pong, true, false);
 
 					break;
 				}
@@ -59,9 +59,9 @@ public abstract class AbstractClientPeerState
 
 			switch (iaxFrame.getIaxClass())
 			{
+				// already consumed by the peer's send window
 				case ACK:
 				{
-					peer.setFrameAckd(iaxFrame.getSubclass());
 					break;
 				}
 				case ACCEPT:
@@ -94,7 +94,7 @@ public abstract class AbstractClientPeerState
 				case PING:
 				case POKE:
 				{
-					peer.sendFrame(new IaxFrame(peer.getSourceCallNumber(), false, frame.getSourceCallNumber(), frame.getTimestamp(), (short) 0, (short) 1, IaxFrameSubclass.PONG), true, false);
+					peer.sendFrame(new IaxFrame(peer.getSourceCallNumber(), false, frame.getSourceCallNumber(), frame.getTimestamp(), peer.getOSeqNo(), peer.getISeqNo(), IaxFrameSubclass.PONG), true, false);
 					break;
 				}
 				// PONG just requires an ACK
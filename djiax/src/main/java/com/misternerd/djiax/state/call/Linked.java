@@ -29,6 +29,7 @@ public class Linked extends AbstractCallState
 			{
 				case ANSWER:
 				{
+					call.getMetrics().callAnswered();
 					call.setAudioRunning(true);
 					call.setCallState(new Up(call));
 					sendAckForFullFrame(frame);
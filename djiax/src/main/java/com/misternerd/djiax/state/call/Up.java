@@ -8,7 +8,6 @@ import com.misternerd.djiax.exception.InvalidMediaFormatException;
 import com.misternerd.djiax.io.frame.FullFrame;
 import com.misternerd.djiax.io.frame.full.VoiceFrame;
 import com.misternerd.djiax.state.AbstractCallState;
-import com.misternerd.djiax.util.MediaFormat;
 
 /**
  * In this state the call is completely set up and voice frames are flowing from
@@ -47,8 +46,7 @@ public class Up extends AbstractCallState
 			byte[] data = voiceFrame.getData();
 			if (data != null)
 			{
-				MediaFormat format = voiceFrame.getFormat();
-				call.getAudioListener().callListenerReceivedAudioData(data, format);
+				call.receiveAudio(voiceFrame.getTimestamp(), data);
 			}
 
 			return;
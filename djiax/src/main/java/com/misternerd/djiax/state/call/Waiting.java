@@ -78,6 +78,7 @@ public class Waiting extends AbstractCallState
 
 	private void handleCallAccept(FullFrame frame)
 	{
+		call.getMetrics().callAccepted();
 		call.setCallState(new Linked(call));
 
 		call.setFrameReplied(IaxFrameSubclass.AUTHREP.getSubclass());
@@ -1,7 +1,6 @@
 package com.misternerd.djiax.state.peer;
 
 import java.io.UnsupportedEncodingException;
-import java.util.TimerTask;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,6 +12,7 @@ import com.misternerd.djiax.io.frame.full.IaxFrameSubclass;
 import com.misternerd.djiax.io.frame.ie.Refresh;
 import com.misternerd.djiax.io.frame.ie.Username;
 import com.misternerd.djiax.state.AbstractClientPeerState;
+import com.misternerd.djiax.util.TimerWheel;
 
 /**
  * The peer changes from RegSend into this state by retrieving a REGACK. A
@@ -21,7 +21,7 @@ import com.misternerd.djiax.state.AbstractClientPeerState;
 public class Registered extends AbstractClientPeerState
 {
 	
-	private class RegistrationRefreshTask extends TimerTask
+	private class RegistrationRefreshTask implements Runnable
 	{
 		
 		@Override
@@ -51,7 +51,7 @@ public class Registered extends AbstractClientPeerState
 
 	private static final Logger logger = LoggerFactory.getLogger(Registered.class);
 	
-	private TimerTask registrationRefreshTask;
+	private TimerWheel.Timeout registrationRefreshTimeout;
 
 
 	public Registered(IaxPeer clientPeer)
@@ -59,8 +59,7 @@ public class Registered extends AbstractClientPeerState
 		super(clientPeer);
 
 		int refreshValue = peer.getPeerConfiguration().getServerRefresh();
-		this.registrationRefreshTask = new RegistrationRefreshTask();
-		peer.getRetransmitTimer().schedule(registrationRefreshTask, refreshValue * 1000);
+		this.registrationRefreshTimeout = peer.getTimerWheel().schedule(new RegistrationRefreshTask(), refreshValue * 1000L);
 	}
 
 
@@ -68,7 +67,7 @@ public class Registered extends AbstractClientPeerState
 	public void clear() throws Throwable
 	{
 		super.clear();
-		registrationRefreshTask.cancel();
+		registrationRefreshTimeout.cancel();
 	}
 
 }
@@ -1,7 +1,6 @@
 package com.misternerd.djiax.state.peer;
 
 import java.io.UnsupportedEncodingException;
-import java.util.TimerTask;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +13,7 @@ import com.misternerd.djiax.io.frame.full.IaxFrameSubclass;
 import com.misternerd.djiax.io.frame.ie.Refresh;
 import com.misternerd.djiax.io.frame.ie.Username;
 import com.misternerd.djiax.state.AbstractClientPeerState;
+import com.misternerd.djiax.util.TimerWheel;
 
 /**
  * If the peer receives a REGREJ, the client cannot register, thus reaching this
@@ -22,12 +22,18 @@ import com.misternerd.djiax.state.AbstractClientPeerState;
 public class Rejected extends AbstractClientPeerState
 {
 	
-	private class AuthRetryTask extends TimerTask
+	private class AuthRetryTask implements Runnable
 	{
 
 		@Override
 		public void run()
 		{
+			// the state has been left while this timeout was firing
+			if (peer.getPeerState() != Rejected.this)
+			{
+				return;
+			}
+
 			if (PeerConstants.REGISTRATION_REJECTED_NUMBER_OF_RETRIES == -1 || authRetriedCount++ < PeerConstants.REGISTRATION_REJECTED_NUMBER_OF_RETRIES)
 			{
 				peer.resetLastRegisteredTimestamp();
@@ -37,16 +43,22 @@ public class Rejected extends AbstractClientPeerState
 				IaxFrame frame = createRegistrationFrame();
 
 				peer.sendFrame(frame, true, false);
+
+				schedule();
 			}
 			else
 			{
 				logger.warn("Could not register at server after {}retries, exiting.", authRetriedCount);
 
-				retryTask.cancel();
 				peer.stopClient();
 			}
 		}
 
+		public void schedule()
+		{
+			retryTimeout = peer.getTimerWheel().schedule(this, PeerConstants.REGISTRATION_REJECTED_RETRY_WAIT * 1000L);
+		}
+
 		private IaxFrame createRegistrationFrame()
 		{
 			try
@@ -71,7 +83,7 @@ public class Rejected extends AbstractClientPeerState
 
 	private int authRetriedCount;
 
-	private TimerTask retryTask;
+	private volatile TimerWheel.Timeout retryTimeout;
 
 	
 	public Rejected(IaxPeer clientPeer)
@@ -81,8 +93,7 @@ public class Rejected extends AbstractClientPeerState
 		if (PeerConstants.REGISTRATION_REJECTED_NUMBER_OF_RETRIES != 0)
 		{
 			this.authRetriedCount = 0;
-			this.retryTask = new AuthRetryTask();
-			peer.getRetransmitTimer().schedule(retryTask, PeerConstants.REGISTRATION_REJECTED_RETRY_WAIT * 1000, PeerConstants.REGISTRATION_REJECTED_RETRY_WAIT * 1000);
+			new AuthRetryTask().schedule();
 		}
 	}
 
@@ -91,7 +102,11 @@ public class Rejected extends AbstractClientPeerState
 	public void clear() throws Throwable
 	{
 		super.clear();
-		retryTask.cancel();
+
+		if (retryTimeout != null)
+		{
+			retryTimeout.cancel();
+		}
 	}
 
 
@@ -117,9 +132,9 @@ public class Rejected extends AbstractClientPeerState
 				{
 					case REGACK:
 					{
-						if (retryTask != null)
+						if (retryTimeout != null)
 						{
-							retryTask.cancel();
+							retryTimeout.cancel();
 						}
 						
 						handleRegAckFrame(iaxFrame);
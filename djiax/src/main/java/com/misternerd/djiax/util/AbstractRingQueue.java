@@ -0,0 +1,234 @@
+package com.misternerd.djiax.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Base of the bounded, lock-free ring queues. Each slot carries a sequence
+ * number that tells producers and consumers whether the slot is free, being
+ * written, filled or being read (the algorithm by D. Vyukov), so claiming a
+ * slot is a single CAS and the queue never allocates after construction.
+ *
+ * Subclasses keep the actual elements in their own arrays, indexed by
+ * index(position), and only touch a slot between claiming and publishing or
+ * releasing it. Although there is usually a single consumer, producers may
+ * discard the oldest element on overflow, so the head is claimed via CAS as
+ * well.
+ */
+public abstract class AbstractRingQueue implements QueueStatistics
+{
+
+	private final int capacity;
+
+	private final int mask;
+
+	private final AtomicLongArray sequences;
+
+	private final AtomicLong head = new AtomicLong();
+
+	private final AtomicLong tail = new AtomicLong();
+
+	private final AtomicLong enqueuedCount = new AtomicLong();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private final AtomicInteger highWaterMark = new AtomicInteger();
+
+
+	/**
+	 * The capacity gets rounded up to the next power of 2.
+	 */
+	protected AbstractRingQueue(int requestedCapacity)
+	{
+		if (requestedCapacity < 1)
+		{
+			throw new IllegalArgumentException("Capacity must be at least 1, got " + requestedCapacity);
+		}
+
+		int roundedCapacity = 1;
+
+		while (roundedCapacity < requestedCapacity)
+		{
+			roundedCapacity <<= 1;
+		}
+
+		this.capacity = roundedCapacity;
+		this.mask = roundedCapacity - 1;
+		this.sequences = new AtomicLongArray(roundedCapacity);
+
+		for (int i = 0; i < roundedCapacity; i++)
+		{
+			sequences.set(i, i);
+		}
+	}
+
+
+	protected final int index(long position)
+	{
+		return (int) (position & mask);
+	}
+
+
+	/**
+	 * Claims the next free slot for writing. Returns its position or -1 if the
+	 * queue is full.
+	 */
+	protected final long claimTail()
+	{
+		while (true)
+		{
+			long position = tail.get();
+			long difference = sequences.get(index(position)) - position;
+
+			if (difference == 0)
+			{
+				if (tail.compareAndSet(position, position + 1))
+				{
+					return position;
+				}
+			}
+			else if (difference < 0)
+			{
+				return -1;
+			}
+		}
+	}
+
+
+	/**
+	 * Makes a slot claimed by claimTail() visible to the consumer.
+	 */
+	protected final void publishTail(long position)
+	{
+		sequences.lazySet(index(position), position + 1);
+	}
+
+
+	/**
+	 * Claims the oldest filled slot for reading. Returns its position or -1 if
+	 * the queue is empty.
+	 */
+	protected final long claimHead()
+	{
+		while (true)
+		{
+			long position = head.get();
+			long difference = sequences.get(index(position)) - (position + 1);
+
+			if (difference == 0)
+			{
+				if (head.compareAndSet(position, position + 1))
+				{
+					return position;
+				}
+			}
+			else if (difference < 0)
+			{
+				return -1;
+			}
+		}
+	}
+
+
+	/**
+	 * Hands a slot claimed by claimHead() back to the producers.
+	 */
+	protected final void releaseHead(long position)
+	{
+		sequences.lazySet(index(position), position + capacity);
+	}
+
+
+	/**
+	 * Throws away the oldest element to make room for a new one. Returns false
+	 * if there was nothing to discard.
+	 */
+	protected final boolean discardHead()
+	{
+		long position = claimHead();
+
+		if (position < 0)
+		{
+			return false;
+		}
+
+		clearSlot(index(position));
+		releaseHead(position);
+		countDropped();
+
+		return true;
+	}
+
+
+	/**
+	 * Called when an element is discarded, so references can be released.
+	 */
+	protected void clearSlot(int index)
+	{
+	}
+
+
+	protected final void countEnqueued()
+	{
+		enqueuedCount.incrementAndGet();
+
+		int currentSize = size();
+		int currentMark = highWaterMark.get();
+
+		while (currentSize > currentMark && !highWaterMark.compareAndSet(currentMark, currentSize))
+		{
+			currentMark = highWaterMark.get();
+		}
+	}
+
+
+	protected final void countDropped()
+	{
+		droppedCount.incrementAndGet();
+	}
+
+
+	@Override
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+
+	@Override
+	public int size()
+	{
+		long currentSize = tail.get() - head.get();
+
+		return (int) Math.max(0, Math.min(capacity, currentSize));
+	}
+
+
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+
+
+	@Override
+	public long getEnqueuedCount()
+	{
+		return enqueuedCount.get();
+	}
+
+
+	@Override
+	public long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+
+
+	@Override
+	public int getHighWaterMark()
+	{
+		return highWaterMark.get();
+	}
+
+}
@@ -0,0 +1,199 @@
+package com.misternerd.djiax.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed size ring of audio bytes in a direct buffer, filled by one thread
+ * and drained by another at its own pace, without locking. The writer only
+ * moves the write position and the reader only the read position, so each
+ * side copies through its own view of the buffer.
+ *
+ * Audio that doesn't fit anymore is dropped as a whole and counted as
+ * overrun, the reader's data is never overwritten. A read that finds less
+ * audio than it asked for is counted as underrun.
+ */
+public class AudioRingBuffer
+{
+
+	private final ByteBuffer writeView;
+
+	private final ByteBuffer readView;
+
+	private final int capacity;
+
+	/**
+	 * Total number of bytes ever written, only moved by the writer.
+	 */
+	private volatile long writePosition;
+
+	/**
+	 * Total number of bytes ever read, only moved by the reader.
+	 */
+	private volatile long readPosition;
+
+	private volatile long numberOfOverruns;
+
+	private volatile long numberOfUnderruns;
+
+	private volatile long numberOfBytesDropped;
+
+
+	/**
+	 * @param capacity Size of the ring in bytes
+	 */
+	public AudioRingBuffer(int capacity)
+	{
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("Capacity must be positive, capacity=" + capacity);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+
+		this.capacity = capacity;
+		this.writeView = buffer.duplicate();
+		this.readView = buffer.duplicate();
+	}
+
+
+	/**
+	 * Appends the remaining bytes of the buffer and moves its position to the
+	 * limit. Only to be called by the writing thread.
+	 *
+	 * @return false if they did not fit and were dropped
+	 */
+	public boolean write(ByteBuffer data)
+	{
+		int length = data.remaining();
+		long position = writePosition;
+
+		if (length > capacity - (int) (position - readPosition))
+		{
+			numberOfOverruns++;
+			numberOfBytesDropped += length;
+			data.position(data.limit());
+			return false;
+		}
+
+		int savedLimit = data.limit();
+		int index = (int) (position % capacity);
+		int firstPart = Math.min(length, capacity - index);
+
+		data.limit(data.position() + firstPart);
+		writeView.limit(index + firstPart);
+		writeView.position(index);
+		writeView.put(data);
+
+		// wrap around to the start of the ring
+		if (firstPart < length)
+		{
+			data.limit(savedLimit);
+			writeView.limit(length - firstPart);
+			writeView.position(0);
+			writeView.put(data);
+		}
+
+		data.limit(savedLimit);
+
+		// publishes the bytes to the reader
+		writePosition = position + length;
+
+		return true;
+	}
+
+
+	/**
+	 * Moves as many bytes as are buffered, up to the remaining space of the
+	 * given buffer, into it. Only to be called by the reading thread.
+	 *
+	 * @return Number of bytes read
+	 */
+	public int read(ByteBuffer buffer)
+	{
+		int wanted = buffer.remaining();
+		long position = readPosition;
+		int length = Math.min(wanted, (int) (writePosition - position));
+
+		if (length < wanted)
+		{
+			numberOfUnderruns++;
+		}
+
+		if (length == 0)
+		{
+			return 0;
+		}
+
+		int index = (int) (position % capacity);
+		int firstPart = Math.min(length, capacity - index);
+
+		readView.limit(index + firstPart);
+		readView.position(index);
+		buffer.put(readView);
+
+		// wrap around to the start of the ring
+		if (firstPart < length)
+		{
+			readView.limit(length - firstPart);
+			readView.position(0);
+			buffer.put(readView);
+		}
+
+		// hands the space back to the writer
+		readPosition = position + length;
+
+		return length;
+	}
+
+
+	/**
+	 * Drops everything buffered. Only to be called by the reading thread.
+	 */
+	public void clear()
+	{
+		readPosition = writePosition;
+	}
+
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+
+	/**
+	 * Number of bytes which can be read right now.
+	 */
+	public int getAvailable()
+	{
+		return (int) (writePosition - readPosition);
+	}
+
+
+	/**
+	 * Writes which were dropped because the ring was full.
+	 */
+	public long getNumberOfOverruns()
+	{
+		return numberOfOverruns;
+	}
+
+
+	/**
+	 * Number of bytes dropped by overruns.
+	 */
+	public long getNumberOfBytesDropped()
+	{
+		return numberOfBytesDropped;
+	}
+
+
+	/**
+	 * Reads which got less than they asked for.
+	 */
+	public long getNumberOfUnderruns()
+	{
+		return numberOfUnderruns;
+	}
+
+}
@@ -0,0 +1,182 @@
+package com.misternerd.djiax.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hands out slots of a fixed range without locking, backed by a bitmap with
+ * one set bit per free slot. An acquire clears a bit with a CAS, starting at
+ * the word the last acquire succeeded in, so it usually finds a free slot in
+ * the first word it looks at. A release doesn't free the slot right away but
+ * puts it into quarantine first, so frames still in flight for the old owner
+ * can't reach a new one. Expired slots are freed by the following acquires.
+ */
+public class CallNumberAllocator
+{
+
+	private final int capacity;
+
+	private final long quarantineMillis;
+
+	private final AtomicLongArray freeSlots;
+
+	private final AtomicInteger nextWord = new AtomicInteger();
+
+	/**
+	 * Released slots, oldest first, as they all stay for the same period.
+	 */
+	private final ConcurrentLinkedQueue<QuarantinedSlot> quarantine = new ConcurrentLinkedQueue<>();
+
+
+	/**
+	 * @param capacity Number of slots, numbered from 0
+	 * @param quarantineMillis How long a released slot can't be acquired again
+	 */
+	public CallNumberAllocator(int capacity, long quarantineMillis)
+	{
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("Capacity must be positive, capacity=" + capacity);
+		}
+
+		this.capacity = capacity;
+		this.quarantineMillis = quarantineMillis;
+		this.freeSlots = new AtomicLongArray((capacity + 63) >>> 6);
+
+		for (int i = 0; i < freeSlots.length(); i++)
+		{
+			int slotsInWord = Math.min(64, capacity - (i << 6));
+			freeSlots.set(i, slotsInWord == 64 ? -1L : (1L << slotsInWord) - 1);
+		}
+	}
+
+
+	/**
+	 * Takes a free slot.
+	 *
+	 * @return the slot, -1 if all are taken or in quarantine
+	 */
+	public int acquire()
+	{
+		freeExpiredSlots();
+
+		int words = freeSlots.length();
+		int start = nextWord.get();
+
+		for (int i = 0; i < words; i++)
+		{
+			int wordIndex = (start + i) % words;
+			long word;
+
+			while ((word = freeSlots.get(wordIndex)) != 0)
+			{
+				long lowestFree = word & -word;
+
+				if (freeSlots.compareAndSet(wordIndex, word, word & ~lowestFree))
+				{
+					if (wordIndex != start)
+					{
+						nextWord.lazySet(wordIndex);
+					}
+
+					return (wordIndex << 6) + Long.numberOfTrailingZeros(lowestFree);
+				}
+			}
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Gives a slot back, it can be acquired again after the quarantine.
+	 */
+	public void release(int slot)
+	{
+		if (slot < 0 || slot >= capacity)
+		{
+			throw new IllegalArgumentException("Slot out of range, slot=" + slot);
+		}
+
+		if (quarantineMillis <= 0)
+		{
+			free(slot);
+		}
+		else
+		{
+			quarantine.add(new QuarantinedSlot(slot, System.currentTimeMillis() + quarantineMillis));
+		}
+	}
+
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+
+	/**
+	 * Number of released slots still waiting out their quarantine.
+	 */
+	public int getNumberOfQuarantinedSlots()
+	{
+		return quarantine.size();
+	}
+
+
+	private void freeExpiredSlots()
+	{
+		QuarantinedSlot head = quarantine.peek();
+
+		if (head == null)
+		{
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+
+		while (head != null && head.releaseTime <= now)
+		{
+			// only the thread that actually unlinks the head frees its slot
+			if (quarantine.remove(head))
+			{
+				free(head.slot);
+			}
+
+			head = quarantine.peek();
+		}
+	}
+
+
+	private void free(int slot)
+	{
+		int wordIndex = slot >>> 6;
+		long bit = 1L << (slot & 63);
+		long word;
+
+		do
+		{
+			word = freeSlots.get(wordIndex);
+		}
+		while (!freeSlots.compareAndSet(wordIndex, word, word | bit));
+	}
+
+
+	private static class QuarantinedSlot
+	{
+
+		final int slot;
+
+		final long releaseTime;
+
+
+		QuarantinedSlot(int slot, long releaseTime)
+		{
+			this.slot = slot;
+			this.releaseTime = releaseTime;
+		}
+
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.misternerd.djiax.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Maps the 15 bit call numbers of IAX2 to objects, one slot per possible
+ * number. A lookup is a single volatile read without boxing or locking, which
+ * makes it cheap enough for every received MiniFrame. Writes are volatile as
+ * well, so an object put into the table is safely published to the readers.
+ */
+public class CallNumberTable<T>
+{
+
+	public static final int SIZE = 1 << 15;
+
+	private static final int MASK = SIZE - 1;
+
+	private final AtomicReferenceArray<T> slots = new AtomicReferenceArray<>(SIZE);
+
+
+	/**
+	 * The object of a call number, null if there is none. Only the lower 15
+	 * bits are used, as in the frames.
+	 */
+	public T get(int callNumber)
+	{
+		return slots.get(callNumber & MASK);
+	}
+
+
+	/**
+	 * Maps the call number to the value, replacing any previous one.
+	 */
+	public void put(int callNumber, T value)
+	{
+		slots.set(callNumber & MASK, value);
+	}
+
+
+	/**
+	 * Removes the value of the call number, but only if it is still mapped to
+	 * it, so a late remove can't unmap a number already taken over.
+	 *
+	 * @return true if the value has been removed
+	 */
+	public boolean remove(int callNumber, T value)
+	{
+		return slots.compareAndSet(callNumber & MASK, value, null);
+	}
+
+}
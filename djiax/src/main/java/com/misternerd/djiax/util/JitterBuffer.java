@@ -0,0 +1,356 @@
+package com.misternerd.djiax.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An adaptive jitter buffer for the media of a single call. Received payloads
+ * are sorted into a ring by their reconstructed 32 bit timestamp, one slot per
+ * packetization interval, and released in timestamp order by poll(), which
+ * needs to be called exactly once per interval.
+ *
+ * The delay between receiving a frame and playing it out follows the measured
+ * interarrival jitter (RFC 3550): when the buffer runs empty, playout holds
+ * for an interval and so grows the delay, when more than the target delay is
+ * buffered the oldest frame is skipped. After a gap in the stream, e.g. from
+ * silence suppression, playout restarts with the target delay.
+ *
+ * Not thread safe, all methods except the getters are meant to be called by
+ * the call's thread.
+ */
+public class JitterBuffer
+{
+
+	private final int interval;
+
+	private final int minDelay;
+
+	private final int maxDelay;
+
+	private final int mask;
+
+	private final ByteBuffer[] payloads;
+
+	private final long[] timestamps;
+
+	private final boolean[] occupied;
+
+	private long lastTransit;
+
+	private boolean hasTransit;
+
+	/**
+	 * Interarrival jitter in msecs, smoothed by 1/16 per frame.
+	 */
+	private volatile double jitter;
+
+	private volatile int targetDelay;
+
+	private boolean started;
+
+	private boolean underrun;
+
+	/**
+	 * Number (timestamp / interval) of the frame to be played out next.
+	 */
+	private long playoutFrame;
+
+	/**
+	 * The frame playout was (re)started with, intervals before it are not
+	 * counted as lost.
+	 */
+	private long startFrame;
+
+	private long newestFrame;
+
+	private volatile long numberOfFramesPlayed;
+
+	private volatile long numberOfFramesLate;
+
+	private volatile long numberOfFramesLost;
+
+	private volatile long numberOfFramesSkipped;
+
+
+	/**
+	 * @param capacity Number of intervals the buffer can hold, rounded up to a
+	 *            power of two. Needs to cover maxDelay.
+	 * @param interval The packetization interval in msecs
+	 * @param minDelay Lower bound of the playout delay in msecs
+	 * @param maxDelay Upper bound of the playout delay in msecs
+	 */
+	public JitterBuffer(int capacity, int interval, int minDelay, int maxDelay)
+	{
+		if (interval <= 0 || minDelay > maxDelay)
+		{
+			throw new IllegalArgumentException("Invalid interval or delay bounds");
+		}
+
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+
+		if ((long) size * interval <= maxDelay)
+		{
+			throw new IllegalArgumentException("Capacity " + capacity + " does not cover maxDelay " + maxDelay);
+		}
+
+		this.interval = interval;
+		this.minDelay = minDelay;
+		this.maxDelay = maxDelay;
+		this.mask = size - 1;
+		this.payloads = new ByteBuffer[size];
+		this.timestamps = new long[size];
+		this.occupied = new boolean[size];
+		this.targetDelay = minDelay;
+	}
+
+
+	/**
+	 * Queues a payload with its 32 bit timestamp. The payload is copied into a
+	 * slot owned by the buffer.
+	 *
+	 * @param arrivalTime Local time of arrival in msecs
+	 * @return false if the frame came too late or was a duplicate
+	 */
+	public boolean put(long timestamp, long arrivalTime, byte[] data, int offset, int length)
+	{
+		ByteBuffer payload = reserve(timestamp, arrivalTime, length);
+
+		if (payload == null)
+		{
+			return false;
+		}
+
+		System.arraycopy(data, offset, payload.array(), 0, length);
+
+		return true;
+	}
+
+
+	/**
+	 * Queues the remaining bytes of a buffer with its 32 bit timestamp. They
+	 * are copied into a slot owned by the buffer, the position of the given
+	 * buffer is left unchanged.
+	 *
+	 * @param arrivalTime Local time of arrival in msecs
+	 * @return false if the frame came too late or was a duplicate
+	 */
+	public boolean put(long timestamp, long arrivalTime, ByteBuffer data)
+	{
+		ByteBuffer payload = reserve(timestamp, arrivalTime, data.remaining());
+
+		if (payload == null)
+		{
+			return false;
+		}
+
+		data.get(payload.array(), 0, payload.limit());
+		data.position(data.position() - payload.limit());
+
+		return true;
+	}
+
+
+	/**
+	 * Plays out the current interval. Passes the frame due to the handler,
+	 * returns false if there is none, because it was lost or playout is
+	 * holding to grow the delay.
+	 */
+	public boolean poll(MediaRingQueue.Handler handler)
+	{
+		if (!started)
+		{
+			return false;
+		}
+
+		int index = (int) (playoutFrame & mask);
+
+		if (occupied[index] && getFrameNumber(timestamps[index]) == playoutFrame)
+		{
+			occupied[index] = false;
+			underrun = false;
+			playoutFrame++;
+			numberOfFramesPlayed++;
+
+			handler.handleMedia(payloads[index], (int) (timestamps[index] & 0xFFFF));
+
+			// more buffered than needed: shrink the delay by skipping the oldest frame
+			if (newestFrame - playoutFrame > getTargetFrames())
+			{
+				occupied[(int) (playoutFrame & mask)] = false;
+				playoutFrame++;
+				numberOfFramesSkipped++;
+			}
+
+			return true;
+		}
+
+		if (playoutFrame < startFrame)
+		{
+			// still building up the initial delay
+			playoutFrame++;
+			return false;
+		}
+
+		if (newestFrame < playoutFrame)
+		{
+			// nothing newer buffered: hold playout, which grows the delay
+			underrun = true;
+			return false;
+		}
+
+		numberOfFramesLost++;
+		playoutFrame++;
+
+		return false;
+	}
+
+
+	/**
+	 * Drops all buffered frames, playout restarts with the next frame.
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < occupied.length; i++)
+		{
+			occupied[i] = false;
+		}
+
+		this.started = false;
+		this.underrun = false;
+	}
+
+
+	public int getInterval()
+	{
+		return interval;
+	}
+
+
+	public double getJitter()
+	{
+		return jitter;
+	}
+
+
+	/**
+	 * The current playout delay the buffer aims for in msecs.
+	 */
+	public int getTargetDelay()
+	{
+		return targetDelay;
+	}
+
+
+	public long getNumberOfFramesPlayed()
+	{
+		return numberOfFramesPlayed;
+	}
+
+
+	/**
+	 * Frames which arrived after their playout time.
+	 */
+	public long getNumberOfFramesLate()
+	{
+		return numberOfFramesLate;
+	}
+
+
+	/**
+	 * Frames which had not arrived at their playout time.
+	 */
+	public long getNumberOfFramesLost()
+	{
+		return numberOfFramesLost;
+	}
+
+
+	/**
+	 * Frames dropped to shrink the delay.
+	 */
+	public long getNumberOfFramesSkipped()
+	{
+		return numberOfFramesSkipped;
+	}
+
+
+	/**
+	 * Sorts a frame into its slot and returns the slot's buffer, limited to
+	 * length, or null if the frame is dropped.
+	 */
+	private ByteBuffer reserve(long timestamp, long arrivalTime, int length)
+	{
+		updateJitter(timestamp, arrivalTime);
+
+		long frame = getFrameNumber(timestamp);
+		int targetFrames = getTargetFrames();
+
+		if (!started || (underrun && frame > playoutFrame + targetFrames) || frame - playoutFrame > mask)
+		{
+			// (re)start playout, so this frame is played after the target delay
+			clear();
+			this.started = true;
+			this.playoutFrame = frame - targetFrames;
+			this.startFrame = frame;
+			this.newestFrame = frame;
+		}
+		else if (frame < playoutFrame)
+		{
+			numberOfFramesLate++;
+			return null;
+		}
+
+		int index = (int) (frame & mask);
+
+		if (occupied[index] && getFrameNumber(timestamps[index]) == frame)
+		{
+			return null;
+		}
+
+		if (payloads[index] == null || payloads[index].capacity() < length)
+		{
+			payloads[index] = ByteBuffer.allocate(length);
+		}
+
+		ByteBuffer payload = payloads[index];
+		payload.clear();
+		payload.limit(length);
+		timestamps[index] = timestamp;
+		occupied[index] = true;
+
+		if (frame > newestFrame)
+		{
+			newestFrame = frame;
+		}
+
+		return payload;
+	}
+
+
+	private void updateJitter(long timestamp, long arrivalTime)
+	{
+		long transit = arrivalTime - timestamp;
+
+		if (hasTransit)
+		{
+			long difference = Math.abs(transit - lastTransit);
+			jitter += (difference - jitter) / 16.0;
+		}
+
+		this.lastTransit = transit;
+		this.hasTransit = true;
+		this.targetDelay = (int) Math.min(maxDelay, Math.max(minDelay, interval + 3 * jitter));
+	}
+
+
+	private long getFrameNumber(long timestamp)
+	{
+		return (timestamp + interval / 2) / interval;
+	}
+
+
+	private int getTargetFrames()
+	{
+		return (targetDelay + interval - 1) / interval;
+	}
+
+}
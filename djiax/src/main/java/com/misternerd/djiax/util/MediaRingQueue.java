@@ -0,0 +1,197 @@
+package com.misternerd.djiax.util;
+
+import java.nio.ByteBuffer;
+
+import com.misternerd.djiax.io.frame.FrameDecoder;
+
+/**
+ * A bounded, lock-free multi-producer queue for media payloads. Instead of
+ * frame objects, every slot owns a buffer the payload gets copied into, so
+ * queueing media does not allocate once each slot has seen a frame of the
+ * usual size. The consumer reads the payload in place while it holds the slot.
+ */
+public class MediaRingQueue extends AbstractRingQueue
+{
+
+	/**
+	 * Receives the queued media. The payload lies between position and limit
+	 * of the buffer, which belongs to the queue and must not be used after the
+	 * call returns.
+	 */
+	public interface Handler
+	{
+
+		public void handleMedia(ByteBuffer media, int timestamp);
+
+	}
+
+	private final ByteBuffer[] payloads;
+
+	private final int[] timestamps;
+
+	private final OverflowPolicy overflowPolicy;
+
+
+	public MediaRingQueue(int capacity, OverflowPolicy overflowPolicy)
+	{
+		super(capacity);
+
+		if (overflowPolicy == OverflowPolicy.SPILL)
+		{
+			throw new IllegalArgumentException("Media queues are bounded and cannot spill");
+		}
+
+		this.payloads = new ByteBuffer[getCapacity()];
+		this.timestamps = new int[getCapacity()];
+		this.overflowPolicy = overflowPolicy;
+	}
+
+
+	/**
+	 * Copies the payload of the MiniFrame a decoder points to into the queue.
+	 * Returns false if the frame was dropped.
+	 */
+	public boolean offer(FrameDecoder decoder)
+	{
+		return offer(decoder.getMiniTimestamp(), decoder.getBuffer(), decoder.getPayloadOffset(), decoder.getPayloadLength());
+	}
+
+
+	/**
+	 * Copies length bytes of media at offset in buffer into the queue, e.g. an
+	 * entry of a received trunk frame. Position and limit of the buffer are
+	 * restored afterwards. Returns false if the payload was dropped.
+	 */
+	public boolean offer(int timestamp, ByteBuffer buffer, int offset, int length)
+	{
+		long position = claim();
+
+		if (position < 0)
+		{
+			return false;
+		}
+
+		int index = index(position);
+		ByteBuffer payload = reserve(index, length);
+		int savedPosition = buffer.position();
+		int savedLimit = buffer.limit();
+
+		buffer.limit(offset + length);
+		buffer.position(offset);
+		buffer.get(payload.array(), 0, length);
+
+		buffer.limit(savedLimit);
+		buffer.position(savedPosition);
+
+		timestamps[index] = timestamp;
+
+		publish(position);
+
+		return true;
+	}
+
+
+	/**
+	 * Copies a media payload into the queue. Returns false if the payload was
+	 * dropped.
+	 */
+	public boolean offer(int timestamp, byte[] data, int offset, int length)
+	{
+		long position = claim();
+
+		if (position < 0)
+		{
+			return false;
+		}
+
+		int index = index(position);
+		ByteBuffer payload = reserve(index, length);
+		System.arraycopy(data, offset, payload.array(), 0, length);
+		timestamps[index] = timestamp;
+
+		publish(position);
+
+		return true;
+	}
+
+
+	/**
+	 * Passes the oldest payload to the handler and removes it afterwards.
+	 * Returns false if the queue was empty.
+	 */
+	public boolean poll(Handler handler)
+	{
+		long position = claimHead();
+
+		if (position < 0)
+		{
+			return false;
+		}
+
+		int index = index(position);
+
+		try
+		{
+			handler.handleMedia(payloads[index], timestamps[index]);
+		}
+		finally
+		{
+			releaseHead(position);
+		}
+
+		return true;
+	}
+
+
+	public OverflowPolicy getOverflowPolicy()
+	{
+		return overflowPolicy;
+	}
+
+
+	private long claim()
+	{
+		long position = claimTail();
+
+		if (position < 0 && overflowPolicy == OverflowPolicy.DROP_OLDEST && discardHead())
+		{
+			position = claimTail();
+		}
+
+		if (position < 0)
+		{
+			countDropped();
+		}
+
+		return position;
+	}
+
+
+	private void publish(long position)
+	{
+		publishTail(position);
+		countEnqueued();
+	}
+
+
+	/**
+	 * Slots keep their buffer, it only gets replaced if a payload does not
+	 * fit. The buffer's limit marks the end of the payload.
+	 */
+	private ByteBuffer reserve(int index, int length)
+	{
+		ByteBuffer payload = payloads[index];
+
+		if (payload == null || payload.capacity() < length)
+		{
+			payload = ByteBuffer.allocate(length);
+			payloads[index] = payload;
+		}
+
+		payload.clear();
+		payload.limit(length);
+
+		return payload;
+	}
+
+}
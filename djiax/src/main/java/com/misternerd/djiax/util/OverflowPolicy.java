@@ -0,0 +1,24 @@
+package com.misternerd.djiax.util;
+
+/**
+ * Defines what a bounded queue does with a new element when it is full.
+ */
+public enum OverflowPolicy
+{
+	/**
+	 * Discard the oldest queued element to make room for the new one. Suited
+	 * for media, where fresh frames are worth more than late ones.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Discard the new element and keep the queue as it is.
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * Never discard anything, elements exceeding the capacity are kept in an
+	 * unbounded overflow list. Used for signaling.
+	 */
+	SPILL
+}
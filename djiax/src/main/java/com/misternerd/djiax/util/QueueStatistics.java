@@ -0,0 +1,36 @@
+package com.misternerd.djiax.util;
+
+/**
+ * Read-only counters of a bounded queue. All values are read without locking,
+ * so they might be slightly out of sync with each other.
+ */
+public interface QueueStatistics
+{
+
+	public int getCapacity();
+
+
+	/**
+	 * The number of elements currently waiting in the queue.
+	 */
+	public int size();
+
+
+	/**
+	 * Total number of elements that have been accepted by the queue.
+	 */
+	public long getEnqueuedCount();
+
+
+	/**
+	 * Total number of elements that got discarded because the queue was full.
+	 */
+	public long getDroppedCount();
+
+
+	/**
+	 * The highest number of elements that were waiting at the same time.
+	 */
+	public int getHighWaterMark();
+
+}
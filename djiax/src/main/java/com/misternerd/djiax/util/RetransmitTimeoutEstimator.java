@@ -0,0 +1,137 @@
+package com.misternerd.djiax.util;
+
+/**
+ * Estimates the retransmission timeout from measured round trip times as
+ * described in RFC 6298: a smoothed round trip time (SRTT) and its variation
+ * (RTTVAR) are updated with every sample, the timeout is SRTT + 4 * RTTVAR and
+ * doubles with every retransmission of the same frame.
+ *
+ * Samples must only be taken from frames that have not been retransmitted,
+ * otherwise it's unknown which transmission the answer belongs to (Karn's
+ * algorithm).
+ */
+public class RetransmitTimeoutEstimator
+{
+
+	private static final double ALPHA = 1.0 / 8;
+
+	private static final double BETA = 1.0 / 4;
+
+	private static final int K = 4;
+
+	private final long initialTimeout;
+
+	private final long minTimeout;
+
+	private final long maxTimeout;
+
+	/**
+	 * Resolution of the timer running the retransmissions.
+	 */
+	private final long clockGranularity;
+
+	private double smoothedRtt;
+
+	private double rttVariation;
+
+	private long retransmitTimeout;
+
+	private long numberOfSamples;
+
+
+	/**
+	 * All values are in milliseconds. Until the first sample arrives,
+	 * initialTimeout is used.
+	 */
+	public RetransmitTimeoutEstimator(long initialTimeout, long minTimeout, long maxTimeout, long clockGranularity)
+	{
+		this.initialTimeout = initialTimeout;
+		this.minTimeout = minTimeout;
+		this.maxTimeout = maxTimeout;
+		this.clockGranularity = clockGranularity;
+		this.retransmitTimeout = initialTimeout;
+	}
+
+
+	/**
+	 * Creates an estimator starting from the current estimate of another one,
+	 * e.g. a new call starting with what its peer has measured so far.
+	 */
+	public RetransmitTimeoutEstimator(RetransmitTimeoutEstimator template)
+	{
+		this(template.initialTimeout, template.minTimeout, template.maxTimeout, template.clockGranularity);
+
+		synchronized (template)
+		{
+			this.smoothedRtt = template.smoothedRtt;
+			this.rttVariation = template.rttVariation;
+			this.retransmitTimeout = template.retransmitTimeout;
+			this.numberOfSamples = template.numberOfSamples;
+		}
+	}
+
+
+	/**
+	 * Feeds a measured round trip time in milliseconds.
+	 */
+	public synchronized void addSample(double rtt)
+	{
+		if (rtt < 0)
+		{
+			return;
+		}
+
+		if (numberOfSamples == 0)
+		{
+			smoothedRtt = rtt;
+			rttVariation = rtt / 2;
+		}
+		else
+		{
+			rttVariation = (1 - BETA) * rttVariation + BETA * Math.abs(smoothedRtt - rtt);
+			smoothedRtt = (1 - ALPHA) * smoothedRtt + ALPHA * rtt;
+		}
+
+		numberOfSamples++;
+
+		long timeout = (long) Math.ceil(smoothedRtt + Math.max(clockGranularity, K * rttVariation));
+		retransmitTimeout = Math.min(maxTimeout, Math.max(minTimeout, timeout));
+	}
+
+
+	/**
+	 * The timeout for the next transmission of a frame that has already been
+	 * retransmitted retransmitCount times, i.e. the current RTO with
+	 * exponential backoff.
+	 */
+	public synchronized long getRetransmitTimeout(int retransmitCount)
+	{
+		long timeout = retransmitTimeout;
+
+		for (int i = 0; i < retransmitCount && timeout < maxTimeout; i++)
+		{
+			timeout <<= 1;
+		}
+
+		return Math.min(maxTimeout, timeout);
+	}
+
+
+	public synchronized double getSmoothedRtt()
+	{
+		return smoothedRtt;
+	}
+
+
+	public synchronized double getRttVariation()
+	{
+		return rttVariation;
+	}
+
+
+	public synchronized long getNumberOfSamples()
+	{
+		return numberOfSamples;
+	}
+
+}
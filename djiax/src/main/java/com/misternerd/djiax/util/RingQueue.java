@@ -0,0 +1,151 @@
+package com.misternerd.djiax.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded, lock-free multi-producer queue of object references. What happens
+ * when the queue is full is defined by its OverflowPolicy. With SPILL, elements
+ * beyond the capacity go to an unbounded overflow list, which is only used (and
+ * only allocates) while the ring is full.
+ */
+public class RingQueue<E> extends AbstractRingQueue
+{
+
+	private final Object[] elements;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final ConcurrentLinkedQueue<E> spill;
+
+	private final AtomicInteger spillSize;
+
+
+	public RingQueue(int capacity, OverflowPolicy overflowPolicy)
+	{
+		super(capacity);
+
+		this.elements = new Object[getCapacity()];
+		this.overflowPolicy = overflowPolicy;
+
+		if (overflowPolicy == OverflowPolicy.SPILL)
+		{
+			this.spill = new ConcurrentLinkedQueue<>();
+			this.spillSize = new AtomicInteger();
+		}
+		else
+		{
+			this.spill = null;
+			this.spillSize = null;
+		}
+	}
+
+
+	/**
+	 * Adds an element to the queue. Returns false if the element was dropped.
+	 */
+	public boolean offer(E element)
+	{
+		// once we spill, keep spilling until the consumer caught up to preserve the order
+		if (spill != null && spillSize.get() > 0)
+		{
+			return addToSpill(element);
+		}
+
+		long position = claimTail();
+
+		if (position < 0 && overflowPolicy == OverflowPolicy.DROP_OLDEST && discardHead())
+		{
+			position = claimTail();
+		}
+
+		if (position < 0)
+		{
+			if (spill != null)
+			{
+				return addToSpill(element);
+			}
+
+			countDropped();
+			return false;
+		}
+
+		elements[index(position)] = element;
+		publishTail(position);
+		countEnqueued();
+
+		return true;
+	}
+
+
+	/**
+	 * Retrieves and removes the oldest element, or returns null if the queue is
+	 * empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public E poll()
+	{
+		long position = claimHead();
+
+		if (position < 0)
+		{
+			return pollFromSpill();
+		}
+
+		int index = index(position);
+		E element = (E) elements[index];
+		elements[index] = null;
+		releaseHead(position);
+
+		return element;
+	}
+
+
+	@Override
+	protected void clearSlot(int index)
+	{
+		elements[index] = null;
+	}
+
+
+	@Override
+	public int size()
+	{
+		return super.size() + (spill != null ? spillSize.get() : 0);
+	}
+
+
+	public OverflowPolicy getOverflowPolicy()
+	{
+		return overflowPolicy;
+	}
+
+
+	private boolean addToSpill(E element)
+	{
+		spillSize.incrementAndGet();
+		spill.add(element);
+		countEnqueued();
+
+		return true;
+	}
+
+
+	private E pollFromSpill()
+	{
+		if (spill == null)
+		{
+			return null;
+		}
+
+		E element = spill.poll();
+
+		if (element != null)
+		{
+			spillSize.decrementAndGet();
+		}
+
+		return element;
+	}
+
+}
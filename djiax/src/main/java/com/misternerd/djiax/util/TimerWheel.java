@@ -0,0 +1,446 @@
+package com.misternerd.djiax.util;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timer wheel. Timeouts are put into one of ticksPerWheel buckets
+ * according to their deadline, deadlines further away than one revolution
+ * simply wait for additional rounds. Scheduling and cancelling are O(1) list
+ * operations, and each tick only looks at the bucket that is due, so the cost
+ * of the timer grows with the number of expiring timeouts and not with the
+ * number of outstanding ones.
+ *
+ * Tasks run on the wheel's own thread and should therefore be short. The
+ * thread is started with the first timeout and sleeps while nothing is
+ * scheduled. A periodic task goes back into the wheel after each run, until
+ * its timeout gets cancelled.
+ */
+public class TimerWheel
+{
+
+	/**
+	 * Handle of a scheduled task, can be used to cancel it.
+	 */
+	public static final class Timeout
+	{
+
+		private final TimerWheel wheel;
+
+		private final Runnable task;
+
+		/**
+		 * Nanos between the runs of a periodic task, 0 for a single run.
+		 */
+		private final long period;
+
+		private long deadline;
+
+		private long remainingRounds;
+
+		private int bucket;
+
+		private Timeout previous;
+
+		private Timeout next;
+
+		private volatile int state;
+
+
+		private Timeout(TimerWheel wheel, Runnable task, long deadline, long period)
+		{
+			this.wheel = wheel;
+			this.task = task;
+			this.deadline = deadline;
+			this.period = period;
+			this.bucket = -1;
+		}
+
+
+		/**
+		 * Removes the timeout from the wheel. Returns false if it has already
+		 * expired or been cancelled. A periodic timeout never expires, a run
+		 * that is in progress while it gets cancelled is its last.
+		 */
+		public boolean cancel()
+		{
+			return wheel.cancel(this);
+		}
+
+
+		public boolean isCancelled()
+		{
+			return state == STATE_CANCELLED;
+		}
+
+
+		public boolean isExpired()
+		{
+			return state == STATE_EXPIRED;
+		}
+
+
+		public Runnable getTask()
+		{
+			return task;
+		}
+
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+	private static final int STATE_PENDING = 0;
+
+	private static final int STATE_CANCELLED = 1;
+
+	private static final int STATE_EXPIRED = 2;
+
+	private final String name;
+
+	private final long tickDuration;
+
+	private final Timeout[] buckets;
+
+	private final int mask;
+
+	private final Object lock = new Object();
+
+	private final ArrayList<Timeout> expiredTimeouts = new ArrayList<>();
+
+	private final long startTime;
+
+	private long currentTick;
+
+	private int numberOfTimeouts;
+
+	private Thread workerThread;
+
+	private boolean running;
+
+
+	/**
+	 * @param tickDurationMillis The resolution of the timer
+	 * @param ticksPerWheel Number of buckets, gets rounded up to a power of 2
+	 */
+	public TimerWheel(String name, long tickDurationMillis, int ticksPerWheel)
+	{
+		if (tickDurationMillis < 1 || ticksPerWheel < 1)
+		{
+			throw new IllegalArgumentException("Tick duration and ticks per wheel must be positive");
+		}
+
+		int roundedTicks = 1;
+
+		while (roundedTicks < ticksPerWheel)
+		{
+			roundedTicks <<= 1;
+		}
+
+		this.name = name;
+		this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDurationMillis);
+		this.buckets = new Timeout[roundedTicks];
+		this.mask = roundedTicks - 1;
+		this.startTime = System.nanoTime();
+		this.running = true;
+	}
+
+
+	/**
+	 * Runs task once after delayMillis. The task is executed on the first tick
+	 * after the deadline, i.e. up to one tick late.
+	 */
+	public Timeout schedule(Runnable task, long delayMillis)
+	{
+		long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+
+		return add(new Timeout(this, task, deadline, 0));
+	}
+
+
+	/**
+	 * Runs task every periodMillis, the first time after one period, until the
+	 * returned timeout gets cancelled. Each run is due one period after the
+	 * previous one was due, not after it actually ran, so the lateness of the
+	 * wheel does not add up. A run that is more than a period late follows
+	 * right away.
+	 */
+	public Timeout scheduleAtFixedRate(Runnable task, long periodMillis)
+	{
+		if (periodMillis < 1)
+		{
+			throw new IllegalArgumentException("Period must be positive, periodMillis=" + periodMillis);
+		}
+
+		long period = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+
+		return add(new Timeout(this, task, System.nanoTime() - startTime + period, period));
+	}
+
+
+	/**
+	 * Stops the worker, pending timeouts will never run.
+	 */
+	public void stop()
+	{
+		synchronized (lock)
+		{
+			running = false;
+			lock.notifyAll();
+		}
+	}
+
+
+	public int getNumberOfTimeouts()
+	{
+		synchronized (lock)
+		{
+			return numberOfTimeouts;
+		}
+	}
+
+
+	private boolean cancel(Timeout timeout)
+	{
+		synchronized (lock)
+		{
+			if (timeout.state != STATE_PENDING)
+			{
+				return false;
+			}
+
+			timeout.state = STATE_CANCELLED;
+
+			// a periodic timeout is out of the wheel while it runs
+			if (timeout.bucket >= 0)
+			{
+				removeFromBucket(timeout);
+				numberOfTimeouts--;
+			}
+
+			return true;
+		}
+	}
+
+
+	private Timeout add(Timeout timeout)
+	{
+		synchronized (lock)
+		{
+			if (!running)
+			{
+				throw new IllegalStateException("TimerWheel " + name + " has been stopped");
+			}
+
+			insert(timeout);
+		}
+
+		return timeout;
+	}
+
+
+	/**
+	 * Puts the timeout into the bucket of its deadline. Must be called while
+	 * holding the lock.
+	 */
+	private void insert(Timeout timeout)
+	{
+		// an idle wheel does not tick, so catch up before using currentTick
+		if (numberOfTimeouts == 0)
+		{
+			currentTick = Math.max(currentTick, (System.nanoTime() - startTime) / tickDuration);
+		}
+
+		// round up so nothing runs early, and never use a tick that has already been processed
+		long deadlineTick = Math.max((timeout.deadline + tickDuration - 1) / tickDuration, currentTick);
+
+		timeout.remainingRounds = (deadlineTick - currentTick) / buckets.length;
+		timeout.bucket = (int) (deadlineTick & mask);
+		addToBucket(timeout);
+		numberOfTimeouts++;
+
+		startOrWakeWorker();
+	}
+
+
+	private void addToBucket(Timeout timeout)
+	{
+		Timeout first = buckets[timeout.bucket];
+
+		timeout.previous = null;
+		timeout.next = first;
+
+		if (first != null)
+		{
+			first.previous = timeout;
+		}
+
+		buckets[timeout.bucket] = timeout;
+	}
+
+
+	private void removeFromBucket(Timeout timeout)
+	{
+		if (timeout.previous != null)
+		{
+			timeout.previous.next = timeout.next;
+		}
+		else
+		{
+			buckets[timeout.bucket] = timeout.next;
+		}
+
+		if (timeout.next != null)
+		{
+			timeout.next.previous = timeout.previous;
+		}
+
+		timeout.previous = null;
+		timeout.next = null;
+		timeout.bucket = -1;
+	}
+
+
+	private void startOrWakeWorker()
+	{
+		if (workerThread == null)
+		{
+			workerThread = new Thread(new Worker(), name);
+			workerThread.setDaemon(true);
+			workerThread.start();
+		}
+		else if (numberOfTimeouts == 1)
+		{
+			lock.notifyAll();
+		}
+	}
+
+
+	/**
+	 * Moves the expired timeouts of all ticks up to now into expiredTimeouts.
+	 * Must be called while holding the lock.
+	 */
+	private void collectExpiredTimeouts()
+	{
+		long nowTick = (System.nanoTime() - startTime) / tickDuration;
+
+		for (; currentTick <= nowTick; currentTick++)
+		{
+			Timeout timeout = buckets[(int) (currentTick & mask)];
+
+			while (timeout != null)
+			{
+				Timeout next = timeout.next;
+
+				if (timeout.remainingRounds <= 0)
+				{
+					removeFromBucket(timeout);
+					numberOfTimeouts--;
+					expiredTimeouts.add(timeout);
+
+					if (timeout.period == 0)
+					{
+						timeout.state = STATE_EXPIRED;
+					}
+				}
+				else
+				{
+					timeout.remainingRounds--;
+				}
+
+				timeout = next;
+			}
+		}
+	}
+
+
+	private class Worker implements Runnable
+	{
+
+		@Override
+		public void run()
+		{
+			while (true)
+			{
+				synchronized (lock)
+				{
+					try
+					{
+						while (running && numberOfTimeouts == 0)
+						{
+							lock.wait();
+						}
+
+						if (!running)
+						{
+							break;
+						}
+
+						long sleepNanos = currentTick * tickDuration - (System.nanoTime() - startTime);
+
+						if (sleepNanos > 0)
+						{
+							TimeUnit.NANOSECONDS.timedWait(lock, sleepNanos);
+						}
+
+						collectExpiredTimeouts();
+					}
+					catch (InterruptedException e)
+					{
+						break;
+					}
+				}
+
+				runExpiredTimeouts();
+			}
+
+			logger.debug("TimerWheel {} exiting", name);
+		}
+
+
+		private void runExpiredTimeouts()
+		{
+			for (int i = 0, j = expiredTimeouts.size(); i < j; i++)
+			{
+				Timeout timeout = expiredTimeouts.get(i);
+
+				try
+				{
+					timeout.task.run();
+				}
+				catch (Throwable e)
+				{
+					logger.warn("Timer task threw exception:", e);
+				}
+
+				if (timeout.period > 0)
+				{
+					reschedule(timeout);
+				}
+			}
+
+			expiredTimeouts.clear();
+		}
+
+
+		/**
+		 * Puts a periodic timeout back for its next run, unless it got
+		 * cancelled in the meantime.
+		 */
+		private void reschedule(Timeout timeout)
+		{
+			synchronized (lock)
+			{
+				if (running && timeout.state == STATE_PENDING)
+				{
+					timeout.deadline += timeout.period;
+					insert(timeout);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,34 @@
+package com.misternerd.djiax.util;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to virtual threads without raising the Java baseline of the library.
+ * This is the baseline version, which reports virtual threads as unsupported.
+ * On Java 21 and later, the version from META-INF/versions/21 of the
+ * multi-release jar is used instead.
+ */
+public final class VirtualThreads
+{
+
+	private VirtualThreads()
+	{
+	}
+
+
+	public static boolean isSupported()
+	{
+		return false;
+	}
+
+
+	/**
+	 * Returns an executor starting a new virtual thread for every task, each
+	 * thread is named prefix followed by a counter.
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor(String prefix)
+	{
+		throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+	}
+
+}
@@ -0,0 +1,34 @@
+package com.misternerd.djiax.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads without raising the Java baseline of the library.
+ * This is the Java 21 version, which is picked from META-INF/versions/21 of
+ * the multi-release jar.
+ */
+public final class VirtualThreads
+{
+
+	private VirtualThreads()
+	{
+	}
+
+
+	public static boolean isSupported()
+	{
+		return true;
+	}
+
+
+	/**
+	 * Returns an executor starting a new virtual thread for every task, each
+	 * thread is named prefix followed by a counter.
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor(String prefix)
+	{
+		return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory());
+	}
+
+}